@@ -54,6 +54,7 @@ import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemText;
 import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.QuizEndedException;
+import org.cloudcoder.app.shared.model.ServerBusyException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
@@ -566,6 +567,11 @@ public class DevelopmentPage extends CloudCoderPage {
 					} else if (caught instanceof QuizEndedException) {
 						// Quiz ended
 						doEndQuiz();
+					} else if (caught instanceof ServerBusyException) {
+						// Too many submissions are waiting to be tested
+						int retryAfterSeconds = ((ServerBusyException) caught).getRetryAfterSeconds();
+						addSessionObject(StatusMessage.error("The server is busy testing other submissions: " +
+								"please submit again in " + retryAfterSeconds + " seconds"));
 					} else {
 					    //TODO: Is this where a better message should come if we can't
 					    // find a C/C++ compiler?
@@ -41,6 +41,8 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.cloudcoder.app.client.rpc.GetCoursesAndProblemsService;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
+import org.cloudcoder.app.server.submitsvc.ISubmitService;
 import org.cloudcoder.app.shared.dto.ShareExercisesResult;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
@@ -235,6 +237,13 @@ public class GetCoursesAndProblemsServiceImpl extends RemoteServiceServlet
 		
 		// Store in database
 		Database.getInstance().storeProblemAndTestCaseList(problemAndTestCaseList, course, user);
+		
+		// Results of submissions tested against the old version
+		// of the problem are no longer valid
+		ISubmitService submitService = DefaultSubmitService.getInstance();
+		if (submitService != null) {
+			submitService.invalidateCachedResults(problemAndTestCaseList.getProblem().getProblemId());
+		}
 
 		// Return updated object
 		return problemAndTestCaseList;
@@ -80,7 +80,7 @@ public class RunServiceImpl extends RemoteServiceServlet implements RunService
             listTestCases.add(tc);
         }
         
-        IFutureSubmissionResult future = submitService.submitAsync(problem, listTestCases, programText);
+        IFutureSubmissionResult future = submitService.submitAsync(problem, listTestCases, programText, user.getId());
 
         // put the future into the session
         session.setAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY, future);
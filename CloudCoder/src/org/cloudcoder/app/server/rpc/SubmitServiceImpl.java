@@ -33,6 +33,7 @@ import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Quiz;
 import org.cloudcoder.app.shared.model.QuizEndedException;
+import org.cloudcoder.app.shared.model.ServerBusyException;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.SubmissionResult;
@@ -99,7 +100,14 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 		ISubmitService submitService = DefaultSubmitService.getInstance();
 
 		logger.info("Passing submission to submit service...");
-		IFutureSubmissionResult future = submitService.submitAsync(problem, testCaseList, programText);
+		IFutureSubmissionResult future;
+		try {
+			future = submitService.submitAsync(problem, testCaseList, programText, user.getId());
+		} catch (ServerBusyException e) {
+			// The client will tell the user when to retry
+			logger.warn("Submit service busy: user {} should retry in {} seconds", user.getUsername(), e.getRetryAfterSeconds());
+			throw e;
+		}
 		
 		// Put the full-text Change and IFutureSubmissionResult in the user's session.
 		addSessionObjects(session, fullTextChange, future);
@@ -51,12 +51,6 @@ public class CommandExecutor implements Runnable {
 	private Thread thread;
 	private CommandResult commandResult;
 
-	/**
-	 * Number of milliseconds between polls to see if a test case
-	 * process has completed.
-	 */
-	public static final int POLL_INTERVAL_IN_MILLIS = 500;
-
 	/**
 	 * Maximum number of seconds (wall time) to allow a command process to run
 	 * by default.
@@ -119,21 +113,17 @@ public class CommandExecutor implements Runnable {
 		String[] cmd = ArrayUtil.toArray(command.getArgs(), String.class);
 		processRunner.runAsynchronous(command.getDir(), cmd);
 
-		int elapsed = 0;
-		while (processRunner.isRunning() && elapsed < maxWaitTimeSec * 1000) {
-			try {
-				Thread.sleep(CommandExecutor.POLL_INTERVAL_IN_MILLIS);
-			} catch (InterruptedException e) {
-				// can't happen
-			}
-
-			elapsed += CommandExecutor.POLL_INTERVAL_IN_MILLIS;
-		}
+		// Wait until the process completes (returning as soon as it does),
+		// or until the time limit is reached
+		boolean completed = processRunner.waitForCompletion(maxWaitTimeSec * 1000L);
 
-		if (processRunner.isRunning()) {
+		if (!completed) {
 			// timed out!
 			processRunner.killProcess();
 			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, processRunner.getStatusMessage());
+		} else if (!processRunner.isRunSuccessful()) {
+			// The process could not be executed, so there is no output to collect
+			commandResult = new CommandResult(ProcessStatus.COULD_NOT_START, processRunner.getStatusMessage());
 		} else {
 			// Either completed normally or killed by signal
 			commandResult = new CommandResult(
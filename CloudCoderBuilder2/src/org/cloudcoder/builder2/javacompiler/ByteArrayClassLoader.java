@@ -54,6 +54,9 @@ public class ByteArrayClassLoader extends ClassLoader {
             return super.loadClass(name);
         } catch (ClassNotFoundException e) {
             byte[] classData = classes.get(name);
+            if (classData == null) {
+                throw e;
+            }
             return defineClass(name, classData, 0, classData.length);
         }
     }
@@ -19,8 +19,8 @@
 package org.cloudcoder.builder2.javacompiler;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -29,6 +29,8 @@ import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
@@ -39,30 +41,78 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Compile Java source code into class files (bytecode) in memory.
+ * The {@link JavaCompiler} and its file manager are created once per thread
+ * and reused for every compilation done by that thread, so that the
+ * JDK's class indexes are opened and read only once.
+ * Unless {@link #setClasspath(List)} is called, source files are compiled
+ * against the classpath of the JVM doing the compiling.
  * 
  * @author Jaime Spacco
  */
 public class InMemoryJavaCompiler
 {
 	private static final Logger logger=LoggerFactory.getLogger(InMemoryJavaCompiler.class);
+	
+	/**
+	 * The compiler and file managers used by one thread.
+	 * Neither javac nor its file managers are thread-safe,
+	 * so they can't be shared between threads.
+	 */
+	private static class PerThreadCompiler {
+		final JavaCompiler compiler;
+		final StandardJavaFileManager standardFileManager;
+		final MemoryFileManager fm;
+		
+		PerThreadCompiler() {
+			compiler = ToolProvider.getSystemJavaCompiler();
+			standardFileManager = compiler.getStandardFileManager(null, null, null);
+			fm = new MemoryFileManager(standardFileManager);
+		}
+	}
+	
+	private static final ThreadLocal<PerThreadCompiler> perThreadCompiler = new ThreadLocal<PerThreadCompiler>() {
+		@Override
+		protected PerThreadCompiler initialValue() {
+			return new PerThreadCompiler();
+		}
+	};
 
 	private MemoryFileManager fm;
+	private StandardJavaFileManager standardFileManager;
 	private JavaCompiler compiler;
 	private CompilationResult compileResult;
 	private List<JavaFileObject> sources;
+	private List<File> classpath;
 	private String extraClasspath;
 
 	/**
-	 * Constructor.
+	 * Constructor.  Note that the {@link MemoryFileManager} returned by
+	 * {@link #getFileManager()} is reset when another InMemoryJavaCompiler
+	 * is created by the same thread, so the compiled classes must be retrieved
+	 * (using {@link MemoryFileManager#getClasses()}) before then.
 	 */
 	public InMemoryJavaCompiler() {
-		compiler = ToolProvider.getSystemJavaCompiler();
-		fm = new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+		PerThreadCompiler ptc = perThreadCompiler.get();
+		compiler = ptc.compiler;
+		standardFileManager = ptc.standardFileManager;
+		fm = ptc.fm;
+		fm.reset();
 		sources = new ArrayList<JavaFileObject>();
 	}
 	
 	/**
-	 * Set extra classpath entries to be added to the system classpath
+	 * Set the classpath to compile against, in place of the classpath
+	 * of the JVM doing the compiling.  An empty list means that
+	 * only the JDK's own classes are visible to the compiled code.
+	 * 
+	 * @param classpath the classpath entries (directories and jar files)
+	 */
+	public void setClasspath(List<File> classpath) {
+		this.classpath = classpath;
+	}
+	
+	/**
+	 * Set extra classpath entries to be added to the classpath
 	 * when compiling.
 	 * 
 	 * @param extraClasspath extra classpath entries
@@ -91,17 +141,26 @@ public class InMemoryJavaCompiler
 	public boolean compile() {
 		DiagnosticCollector<JavaFileObject> collector= new DiagnosticCollector<JavaFileObject>();
 		
-		// Prepare compiler options.
-		// We use this opportunity to set the classpath.
-		StringBuilder fullClasspath = new StringBuilder();
-		fullClasspath.append(System.getProperty("java.class.path"));
+		// Set the classpath.  The standard file manager is reused by
+		// later compilations on this thread, so it must be set every time.
+		List<File> fullClasspath = new ArrayList<File>();
+		if (classpath != null) {
+			fullClasspath.addAll(classpath);
+		} else {
+			addClasspathEntries(fullClasspath, System.getProperty("java.class.path"));
+		}
 		if (extraClasspath != null) {
-			fullClasspath.append(File.pathSeparatorChar);
-			fullClasspath.append(extraClasspath);
+			addClasspathEntries(fullClasspath, extraClasspath);
+		}
+		try {
+			standardFileManager.setLocation(StandardLocation.CLASS_PATH, fullClasspath);
+		} catch (IOException e) {
+			logger.error("Could not set compiler classpath", e);
+			compileResult=new CompilationResult(CompilationOutcome.UNEXPECTED_COMPILER_ERROR);
+			return false;
 		}
-		List<String> options = Arrays.asList("-classpath", fullClasspath.toString());
 		
-		CompilationTask task = compiler.getTask(null, fm, collector, options, null, sources);
+		CompilationTask task = compiler.getTask(null, fm, collector, null, null, sources);
 		
 		if (!task.call()) {
 			// Compiler error
@@ -124,6 +183,14 @@ public class InMemoryJavaCompiler
 		}
 	}
 
+	private static void addClasspathEntries(List<File> fullClasspath, String entries) {
+		for (String entry : entries.split(File.pathSeparator)) {
+			if (!entry.equals("")) {
+				fullClasspath.add(new File(entry));
+			}
+		}
+	}
+
 	/**
 	 * Get the {@link MemoryFileManager} that is keeping track of sources
 	 * and compiled classes.
@@ -0,0 +1,75 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javacompiler;
+
+import java.util.Properties;
+
+import org.cloudcoder.builder2.javasandbox.InstructionBudget;
+import org.cloudcoder.builder2.javasandbox.InstructionBudgetInstrumenter;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Bytecode;
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optionally instrument the {@link Bytecode} objects produced by an
+ * earlier {@link JavaCompilerBuildStep} so that each test may only
+ * execute a fixed number of instructions (see {@link InstructionBudgetInstrumenter}).
+ * The budget is set by the {@link #INSTRUCTION_BUDGET_PROPERTY}
+ * configuration property: if it is not set (or is 0), this build step
+ * does nothing, and tests are limited only by the wall-clock timeout.
+ * Replaces the {@link Bytecode} array artifact with the instrumented classes.
+ * 
+ * @author David Hovemeyer
+ */
+public class InstrumentInstructionBudgetBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(InstrumentInstructionBudgetBuildStep.class);
+	
+	/** Property specifying the number of instructions each test may execute: 0 disables the budget. */
+	public static final String INSTRUCTION_BUDGET_PROPERTY = "cloudcoder.builder2.java.instructionBudget";
+
+	@Override
+	public void execute(BuilderSubmission submission, Properties config) {
+		long budget = Long.parseLong(config.getProperty(INSTRUCTION_BUDGET_PROPERTY, "0"));
+		if (budget <= 0L) {
+			return;
+		}
+		
+		Bytecode[] bytecodeList = submission.requireArtifact(this.getClass(), Bytecode[].class);
+		
+		// Instrumented code will call InstructionBudget from the test threads,
+		// which can't load it themselves
+		InstructionBudget.initialize();
+		
+		InstructionBudgetInstrumenter instrumenter = new InstructionBudgetInstrumenter(budget);
+		Bytecode[] instrumented = new Bytecode[bytecodeList.length];
+		for (int i = 0; i < bytecodeList.length; i++) {
+			Bytecode bytecode = bytecodeList[i];
+			try {
+				instrumented[i] = new Bytecode(bytecode.getClassName(), instrumenter.instrument(bytecode.getCode()));
+			} catch (RuntimeException e) {
+				// The wall-clock timeout still applies, so the class can be
+				// tested without instrumentation
+				logger.warn("Could not instrument class " + bytecode.getClassName(), e);
+				instrumented[i] = bytecode;
+			}
+		}
+		submission.addArtifact(instrumented);
+	}
+}
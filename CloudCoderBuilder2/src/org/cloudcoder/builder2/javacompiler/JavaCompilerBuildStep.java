@@ -17,6 +17,7 @@
 
 package org.cloudcoder.builder2.javacompiler;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -39,11 +40,26 @@ import org.cloudcoder.builder2.util.SubmissionResultUtil;
  * artifact.  Also produces an array of {@link FindJavaPackageAndClassNames} objects
  * that record the name of the package and class name in the
  * source file(s), one for each {@link ProgramSource}.
+ * The source files are compiled against an explicit classpath
+ * (plus the {@link ExternalLibrary}, if any), not the Builder's own
+ * classpath, so that submissions can't see the Builder's classes
+ * or the libraries it uses.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class JavaCompilerBuildStep implements IBuildStep {
+	private final List<File> compileClasspath;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param compileClasspath the classpath to compile against: an empty list
+	 *                         means that only the JDK's classes are visible
+	 */
+	public JavaCompilerBuildStep(List<File> compileClasspath) {
+		this.compileClasspath = compileClasspath;
+	}
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
@@ -94,7 +110,20 @@ public class JavaCompilerBuildStep implements IBuildStep {
 	}
 
 	public InMemoryJavaCompiler getJavaCompiler(BuilderSubmission submission) {
+		return createJavaCompiler(submission, compileClasspath);
+	}
+
+	/**
+	 * Create an {@link InMemoryJavaCompiler} to compile code for a submission.
+	 * 
+	 * @param submission        the {@link BuilderSubmission}
+	 * @param compileClasspath  the classpath to compile against
+	 *                          (the submission's {@link ExternalLibrary}, if any, is added to it)
+	 * @return the {@link InMemoryJavaCompiler}
+	 */
+	public static InMemoryJavaCompiler createJavaCompiler(BuilderSubmission submission, List<File> compileClasspath) {
 		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+		compiler.setClasspath(compileClasspath);
 		
 		// If an ExternalLibrary is required, then make sure it's on the classpath
 		ExternalLibrary extlib = submission.getArtifact(ExternalLibrary.class);
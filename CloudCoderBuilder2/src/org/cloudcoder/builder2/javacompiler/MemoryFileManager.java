@@ -76,6 +76,15 @@ public final class MemoryFileManager extends ForwardingJavaFileManager<JavaFileM
 		classes = new HashMap<String, byte[]>();
 	}
 	
+	/**
+	 * Forget all classes compiled so far, so that the file manager
+	 * can be used for another compilation.  The map returned by
+	 * earlier calls to {@link #getClasses()} is not modified.
+	 */
+	public void reset() {
+		classes = new HashMap<String, byte[]>();
+	}
+	
 	public int getNumClassesCreated() {
 		return classes.size();
 	}
@@ -14,36 +14,111 @@
 //
 // You should have received a copy of the GNU Affero General Public License
 // along with this program.  If not, see <http://www.gnu.org/licenses/>.
-
 package org.cloudcoder.builder2.javamethod;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.javacompiler.ByteArrayClassLoader;
+import org.cloudcoder.builder2.javacompiler.FindJavaPackageAndClassNames;
+import org.cloudcoder.builder2.javacompiler.InMemoryJavaCompiler;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
 import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Bytecode;
 import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.ArrayUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Add a test driver class to execute all {@link TestCase}s against
+ * Add a compiled test driver class to execute all {@link TestCase}s against
  * a scaffolded JAVA_METHOD submission.  This step should be
- * executed <em>after</em> {@link AddJavaMethodScaffoldingBuildStep}.
+ * executed <em>after</em> {@link AddJavaMethodScaffoldingBuildStep}
+ * and {@link JavaCompilerBuildStep}, and adds the test driver's classes
+ * to the submission's {@link Bytecode} array.
+ * 
+ * <p>The test driver only depends on the problem, its test cases,
+ * and the declarations (not the method bodies) in the submission's classes,
+ * so the compiled test driver is cached in a {@link JavaMethodTestDriverCache}
+ * using a key derived from those, and only needs to be compiled
+ * for the first matching submission.</p>
  * 
  * @author David Hovemeyer
  *
  */
 public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(AddJavaMethodTestDriverBuildStep.class);
+	
+	private final List<File> compileClasspath;
+	private final JavaMethodTestDriverCache cache;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param compileClasspath the classpath to compile the test driver against
+	 * @param cache            the {@link JavaMethodTestDriverCache} to use
+	 */
+	public AddJavaMethodTestDriverBuildStep(List<File> compileClasspath, JavaMethodTestDriverCache cache) {
+		this.compileClasspath = compileClasspath;
+		this.cache = cache;
+	}
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
 		TestCase[] testCaseList = submission.requireArtifact(this.getClass(), TestCase[].class);
 		Problem problem = submission.requireArtifact(this.getClass(), Problem.class);
+		Bytecode[] bytecodeList = submission.requireArtifact(this.getClass(), Bytecode[].class);
+
+		String key = getCacheKey(problem, testCaseList, bytecodeList);
+		Bytecode[] testDriverBytecodeList = (key != null) ? cache.get(key) : null;
+		if (testDriverBytecodeList == null) {
+			testDriverBytecodeList = compileTestDriver(submission, problem, testCaseList, bytecodeList);
+			if (testDriverBytecodeList == null) {
+				// Compilation failed, and a SubmissionResult was added
+				return;
+			}
+			if (key != null) {
+				cache.put(key, testDriverBytecodeList);
+			}
+		}
+		
+		// Add updated Bytecode array to submission
+		List<Bytecode> allBytecodeList = new ArrayList<Bytecode>();
+		allBytecodeList.addAll(Arrays.asList(bytecodeList));
+		allBytecodeList.addAll(Arrays.asList(testDriverBytecodeList));
+		submission.addArtifact(ArrayUtil.toArray(allBytecodeList, Bytecode.class));
+	}
 
+	/**
+	 * Generate the source code of the test driver class.
+	 * 
+	 * @param problem      the {@link Problem}
+	 * @param testCaseList the {@link TestCase}s
+	 * @return the source code of the test driver class
+	 */
+	private static String generateTestDriver(Problem problem, TestCase[] testCaseList) {
         StringBuilder tester = new StringBuilder();
         tester.append("public class Tester {\n");
         tester.append("\tpublic static boolean eq(Object o1, Object o2) { return o1.equals(o2); }\n");
@@ -62,21 +137,105 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
             tester.append("\t\t}\n");
         }
         tester.append("}");
-        String testerCode = tester.toString();
-
-        // Create ProgramSource for test driver
-        ProgramSource testerProgramSource = new ProgramSource(testerCode);
+        return tester.toString();
+	}
 
-        // Get existing ProgramSource objects
-        ProgramSource[] programSourceList = submission.requireArtifact(this.getClass(), ProgramSource[].class);
+	/**
+	 * Compile the test driver together with the submission's source code.
+	 * 
+	 * @return the test driver's {@link Bytecode}s, or null if the compilation
+	 *         failed (in which case a {@link SubmissionResult} is added to the submission)
+	 */
+	private Bytecode[] compileTestDriver(BuilderSubmission submission, Problem problem, TestCase[] testCaseList, Bytecode[] bytecodeList) {
+		ProgramSource[] programSourceList = submission.requireArtifact(this.getClass(), ProgramSource[].class);
+		FindJavaPackageAndClassNames[] packageAndClassNamesList =
+				submission.requireArtifact(this.getClass(), FindJavaPackageAndClassNames[].class);
+		
+		InMemoryJavaCompiler compiler = JavaCompilerBuildStep.createJavaCompiler(submission, compileClasspath);
+		compiler.addSourceFile("Tester", generateTestDriver(problem, testCaseList));
+		for (int i = 0; i < programSourceList.length; i++) {
+			compiler.addSourceFile(packageAndClassNamesList[i].getFullyQualifiedClassName(), programSourceList[i].getProgramText());
+		}
+		if (!compiler.compile()) {
+			submission.addArtifact(new SubmissionResult(compiler.getCompileResult()));
+			return null;
+		}
+		
+		// Keep only the classes that weren't already compiled from the submission
+		Set<String> submissionClassNames = new HashSet<String>();
+		for (Bytecode bytecode : bytecodeList) {
+			submissionClassNames.add(bytecode.getClassName());
+		}
+		List<Bytecode> testDriverBytecodeList = new ArrayList<Bytecode>();
+		for (Map.Entry<String, byte[]> entry : compiler.getFileManager().getClasses().entrySet()) {
+			if (!submissionClassNames.contains(entry.getKey())) {
+				testDriverBytecodeList.add(new Bytecode(entry.getKey(), entry.getValue()));
+			}
+		}
+		return ArrayUtil.toArray(testDriverBytecodeList, Bytecode.class);
+	}
 
-		// Build array of all ProgramSource
-		List<ProgramSource> allProgramSourceList = new ArrayList<ProgramSource>();
-		allProgramSourceList.add(testerProgramSource);
-		allProgramSourceList.addAll(Arrays.asList(programSourceList));
+	/**
+	 * Get the key identifying the compiled test driver for a submission.
+	 * The key combines the exact content hash of the problem and its test cases
+	 * with a hash of the declarations of the submission's classes,
+	 * since the test driver's bytecode depends on (for example)
+	 * the parameter types of the method being tested.
+	 * 
+	 * @return the key, or null if the submission's classes can't be
+	 *         inspected (in which case the test driver isn't cached)
+	 */
+	private static String getCacheKey(Problem problem, TestCase[] testCaseList, Bytecode[] bytecodeList) {
+		ProblemAndTestCaseList problemAndTestCaseList = new ProblemAndTestCaseList();
+		problemAndTestCaseList.setProblem(problem);
+		problemAndTestCaseList.setTestCaseList(testCaseList);
+		String problemHash = new HashProblemAndTestCaseData<ProblemAndTestCaseList>(problemAndTestCaseList).computeExact();
+		
+		// Load the submission's classes (without initializing them) in a
+		// throwaway class loader, and describe their declarations.
+		// Classes that refer to an external library can't be loaded this way,
+		// so their test drivers aren't cached.
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		for (Bytecode bytecode : bytecodeList) {
+			classes.put(bytecode.getClassName(), bytecode.getCode());
+		}
+		ClassLoader classLoader = new ByteArrayClassLoader(classes);
+		List<String> declarations = new ArrayList<String>();
+		try {
+			for (Bytecode bytecode : bytecodeList) {
+				Class<?> cls = Class.forName(bytecode.getClassName(), false, classLoader);
+				declarations.add(cls.toString() + " " + cls.getModifiers());
+				for (Field field : cls.getDeclaredFields()) {
+					declarations.add(field.toGenericString());
+				}
+				for (Constructor<?> ctor : cls.getDeclaredConstructors()) {
+					declarations.add(ctor.toGenericString());
+				}
+				for (Method method : cls.getDeclaredMethods()) {
+					declarations.add(method.toGenericString());
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			logger.debug("Could not inspect submission classes", e);
+			return null;
+		} catch (LinkageError e) {
+			logger.debug("Could not inspect submission classes", e);
+			return null;
+		}
+		Collections.sort(declarations);
 		
-		// Add updated ProgramSource array to submission
-		submission.addArtifact(ArrayUtil.toArray(allProgramSourceList, ProgramSource.class));
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (String declaration : declarations) {
+				digest.update(declaration.getBytes("UTF-8"));
+				digest.update((byte) '\n');
+			}
+			return problemHash + ":" + new ConvertBytesToHex(digest.digest()).convert();
+		} catch (NoSuchAlgorithmException e) {
+			throw new InternalBuilderException(AddJavaMethodTestDriverBuildStep.class, "SHA-1 not supported", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new InternalBuilderException(AddJavaMethodTestDriverBuildStep.class, "UTF-8 not supported", e);
+		}
 	}
 
 }
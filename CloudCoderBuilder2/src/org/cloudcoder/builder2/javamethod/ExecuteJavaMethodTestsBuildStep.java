@@ -20,6 +20,7 @@ package org.cloudcoder.builder2.javamethod;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
@@ -35,19 +36,58 @@ import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
 import org.cloudcoder.builder2.javasandbox.SandboxUtil;
 import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
 import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Bytecode;
+import org.cloudcoder.builder2.model.ExternalLibrary;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.LoadedClasses;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Execute {@link ProblemType#JAVA_METHOD} tests and create a
- * {@link SubmissionResult}.
+ * {@link SubmissionResult}.  By default, each test case runs in a thread
+ * in the Builder's JVM.  If child JVMs are enabled (see
+ * {@link ForkedJavaMethodTestExecutor}), the test cases run in
+ * a pre-forked child JVM instead.
+ * 
+ * When test cases run in the Builder's JVM, at most
+ * {@link #MAX_PARALLEL_TESTS_PER_SUBMISSION_PROPERTY} test cases of a
+ * submission run at the same time, and at most {@link #MAX_TEST_THREADS_PROPERTY}
+ * test cases run at the same time across all of the submissions being
+ * tested.  Both default to the number of available processors.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class ExecuteJavaMethodTestsBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(ExecuteJavaMethodTestsBuildStep.class);
+	
     public static final long TIMEOUT_LIMIT = 2000;
+    
+	/** Property specifying how many test cases of one submission may run at the same time. */
+	public static final String MAX_PARALLEL_TESTS_PER_SUBMISSION_PROPERTY = "cloudcoder.builder2.java.maxParallelTestsPerSubmission";
+	
+	/** Property specifying how many test cases may run at the same time in the Builder. */
+	public static final String MAX_TEST_THREADS_PROPERTY = "cloudcoder.builder2.java.maxTestThreads";
+	
+	private static final SingletonHolder<Semaphore, Properties> testThreadSlotsHolder = new SingletonHolder<Semaphore, Properties>() {
+		@Override
+		protected Semaphore onCreate(Properties config) {
+			int maxTestThreads = getIntProperty(config, MAX_TEST_THREADS_PROPERTY);
+			logger.info("Running at most {} Java test cases at the same time", maxTestThreads);
+			return new Semaphore(maxTestThreads);
+		}
+	};
+    
+    private static final TimeoutHandler<TestResult> TIMEOUT_HANDLER = new TimeoutHandler<TestResult>() {
+        @Override
+        public TestResult handleTimeout() {
+            return new TestResult(TestOutcome.FAILED_FROM_TIMEOUT, 
+                    "Took too long!  Check for infinite loops, or recursion without a proper base case");
+        }
+    };
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
@@ -55,6 +95,18 @@ public class ExecuteJavaMethodTestsBuildStep implements IBuildStep {
 		LoadedClasses loadedClasses = submission.requireArtifact(this.getClass(), LoadedClasses.class);
 		TestCase[] testCaseList = submission.requireArtifact(this.getClass(), TestCase[].class);
 		
+		// If child JVMs are enabled, execute the tests there
+		if (ForkedJavaMethodTestExecutor.isEnabled(config)) {
+			Bytecode[] bytecodeList = submission.requireArtifact(this.getClass(), Bytecode[].class);
+			ExternalLibrary extlib = submission.getArtifact(ExternalLibrary.class);
+			ForkedJavaMethodTestExecutor executor = new ForkedJavaMethodTestExecutor(
+					ForkedJavaMethodTestExecutor.getPool(config), TIMEOUT_LIMIT, TIMEOUT_HANDLER);
+			List<TestResult> outcomes = executor.execute(
+					bytecodeList, extlib != null ? extlib.getFileName() : null, problem, testCaseList);
+			addSubmissionResult(submission, outcomes);
+			return;
+		}
+		
 		// Get the loaded Class for the Tester class
 		Class<?> testerCls_;
 		try {
@@ -75,19 +127,27 @@ public class ExecuteJavaMethodTestsBuildStep implements IBuildStep {
         AbstractKillableTaskManager<TestResult> pool = new JVMKillableTaskManager<TestResult>(
                 tasks, 
                 TIMEOUT_LIMIT,
-                new TimeoutHandler<TestResult>() {
-                    @Override
-                    public TestResult handleTimeout() {
-                        return new TestResult(TestOutcome.FAILED_FROM_TIMEOUT, 
-                                "Took too long!  Check for infinite loops, or recursion without a proper base case");
-                    }
-                });
+                TIMEOUT_HANDLER);
+
+        pool.setMaxParallelism(getIntProperty(config, MAX_PARALLEL_TESTS_PER_SUBMISSION_PROPERTY));
+        pool.setSlots(testThreadSlotsHolder.get(config));
 
         // run each task in a separate thread
         pool.run();
+        logger.debug("Ran {} test cases using {} ms of CPU time",
+                tasks.size(), pool.getTotalCpuTimeNanos() / 1000000L);
 
         // merge outcomes with their buffered inputs for stdout/stderr
         List<TestResult> outcomes = SandboxUtil.getStdoutStderr(pool);
+        addSubmissionResult(submission, outcomes);
+	}
+
+	private static int getIntProperty(Properties config, String propName) {
+		String value = config.getProperty(propName);
+		return value != null ? Integer.parseInt(value) : Runtime.getRuntime().availableProcessors();
+	}
+
+	private static void addSubmissionResult(BuilderSubmission submission, List<TestResult> outcomes) {
         SubmissionResult result=new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
         result.setTestResults(outcomes.toArray(new TestResult[outcomes.size()]));
         
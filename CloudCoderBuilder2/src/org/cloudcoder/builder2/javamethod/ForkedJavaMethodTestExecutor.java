@@ -0,0 +1,186 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.builder2.javamethod;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.builder2.javasandbox.ForkedJVM;
+import org.cloudcoder.builder2.javasandbox.ForkedJVMPool;
+import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
+import org.cloudcoder.builder2.model.Bytecode;
+import org.cloudcoder.builder2.model.InternalBuilderException;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execute {@link ProblemType#JAVA_METHOD} tests in pre-forked child JVMs
+ * (see {@link ForkedJVMPool} and {@link ForkedJavaMethodTestRunner}),
+ * as an alternative to running them in threads in the Builder's own JVM.
+ * The test cases for a submission are executed one at a time
+ * in a borrowed child JVM, which is always ready to receive them,
+ * so the time limit of each test doesn't include JVM startup.  If a test case times out, the child JVM
+ * is killed, and the remaining test cases are executed in another one.
+ * The pool is enabled by setting the
+ * <code>cloudcoder.builder2.java.numForkedJVMs</code> property
+ * to the number of child JVMs to keep ready.
+ * 
+ * @author David Hovemeyer
+ */
+public class ForkedJavaMethodTestExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(ForkedJavaMethodTestExecutor.class);
+	
+	/** Property specifying the number of idle child JVMs: 0 disables the pool. */
+	public static final String NUM_FORKED_JVMS_PROPERTY = "cloudcoder.builder2.java.numForkedJVMs";
+	
+	/** Property specifying how many submissions a child JVM tests before it is replaced. */
+	public static final String FORKED_JVM_MAX_USES_PROPERTY = "cloudcoder.builder2.java.forkedJVMMaxUses";
+	
+	/** Property specifying JVM arguments for the child JVMs. */
+	public static final String FORKED_JVM_ARGS_PROPERTY = "cloudcoder.builder2.java.forkedJVMArgs";
+	
+	private static final SingletonHolder<ForkedJVMPool, Properties> holder = new SingletonHolder<ForkedJVMPool, Properties>() {
+		@Override
+		protected ForkedJVMPool onCreate(Properties config) {
+			int size = Integer.parseInt(config.getProperty(NUM_FORKED_JVMS_PROPERTY, "0"));
+			int maxUses = Integer.parseInt(config.getProperty(FORKED_JVM_MAX_USES_PROPERTY, "100"));
+			List<String> jvmArgs = new ArrayList<String>();
+			jvmArgs.add("-Dlog4j.configuration=org/cloudcoder/builder2/javasandbox/res/forkedJVM-log4j.properties");
+			for (String arg : config.getProperty(FORKED_JVM_ARGS_PROPERTY, "-Xmx256m").trim().split("\\s+")) {
+				if (!arg.equals("")) {
+					jvmArgs.add(arg);
+				}
+			}
+			logger.info("Starting {} child JVMs for testing Java submissions", size);
+			return new ForkedJVMPool(
+					ForkedJVMPool.createJavaCommand(ForkedJavaMethodTestRunner.class.getName(), jvmArgs), size, maxUses);
+		}
+	};
+	
+	/**
+	 * Check whether tests should be executed in child JVMs.
+	 * 
+	 * @param config configuration properties
+	 * @return true if tests should be executed in child JVMs,
+	 *         false if they should be executed in the Builder's JVM
+	 */
+	public static boolean isEnabled(Properties config) {
+		return Integer.parseInt(config.getProperty(NUM_FORKED_JVMS_PROPERTY, "0")) > 0;
+	}
+	
+	/**
+	 * Get the singleton {@link ForkedJVMPool}, starting it if necessary.
+	 * 
+	 * @param config configuration properties
+	 * @return the {@link ForkedJVMPool}
+	 */
+	public static ForkedJVMPool getPool(Properties config) {
+		return holder.get(config);
+	}
+	
+	/**
+	 * @return true if the singleton {@link ForkedJVMPool} has been started
+	 */
+	public static boolean isPoolCreated() {
+		return holder.isCreated();
+	}
+	
+	private final ForkedJVMPool pool;
+	private final long timeoutMs;
+	private final TimeoutHandler<TestResult> timeoutHandler;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param pool           the {@link ForkedJVMPool} to borrow child JVMs from
+	 * @param timeoutMs      maximum time in milliseconds to let one test case run
+	 * @param timeoutHandler callback to create the {@link TestResult} for a test case that times out
+	 */
+	public ForkedJavaMethodTestExecutor(ForkedJVMPool pool, long timeoutMs, TimeoutHandler<TestResult> timeoutHandler) {
+		this.pool = pool;
+		this.timeoutMs = timeoutMs;
+		this.timeoutHandler = timeoutHandler;
+	}
+	
+	/**
+	 * Execute test cases.
+	 * 
+	 * @param bytecodeList            compiled classes (including the test driver)
+	 * @param externalLibraryFileName filename of the external library jar file, or null if none
+	 * @param problem                 the {@link Problem}
+	 * @param testCaseList            the {@link TestCase}s
+	 * @return list of {@link TestResult}s, one per test case
+	 */
+	public List<TestResult> execute(Bytecode[] bytecodeList, String externalLibraryFileName, Problem problem, TestCase[] testCaseList) {
+		TestResult[] results = new TestResult[testCaseList.length];
+		int next = 0;
+		while (next < testCaseList.length) {
+			ForkedJVM jvm;
+			try {
+				jvm = pool.borrow();
+			} catch (IOException e) {
+				throw new InternalBuilderException(this.getClass(), "Could not start child JVM", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalBuilderException(this.getClass(), "Interrupted while waiting for child JVM", e);
+			}
+			
+			boolean reusable = false;
+			try {
+				List<TestCase> remaining = Arrays.asList(testCaseList).subList(next, testCaseList.length);
+				jvm.send(ForkedJavaMethodTestRunner.encodeRequest(bytecodeList, externalLibraryFileName, problem, remaining));
+				while (next < testCaseList.length) {
+					byte[] frame = jvm.receive(timeoutMs);
+					if (frame == null) {
+						break;
+					}
+					results[next++] = ForkedJavaMethodTestRunner.decodeResult(frame);
+				}
+				if (next < testCaseList.length) {
+					// Timeout: the child JVM will be killed
+					results[next++] = timeoutHandler.handleTimeout();
+				} else {
+					reusable = true;
+				}
+			} catch (IOException e) {
+				logger.warn("Child JVM failed while testing submission", e);
+				results[next++] = new TestResult(TestOutcome.INTERNAL_ERROR, "Test process exited unexpectedly");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalBuilderException(this.getClass(), "Interrupted while waiting for child JVM", e);
+			} finally {
+				if (reusable) {
+					pool.release(jvm);
+				} else {
+					pool.discard(jvm);
+				}
+			}
+		}
+		return new ArrayList<TestResult>(Arrays.asList(results));
+	}
+}
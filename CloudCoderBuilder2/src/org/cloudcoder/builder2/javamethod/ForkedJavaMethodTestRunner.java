@@ -0,0 +1,270 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.builder2.javamethod;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.cloudcoder.builder2.javacompiler.ByteArrayAndExternalLibraryClassLoader;
+import org.cloudcoder.builder2.javacompiler.ByteArrayClassLoader;
+import org.cloudcoder.builder2.javasandbox.AbstractKillableTaskManager;
+import org.cloudcoder.builder2.javasandbox.ForkedJVM;
+import org.cloudcoder.builder2.javasandbox.InstructionBudget;
+import org.cloudcoder.builder2.model.Bytecode;
+
+/**
+ * Main class of the child JVMs used by {@link ForkedJavaMethodTestExecutor}
+ * to test {@link ProblemType#JAVA_METHOD} submissions.
+ * Each request (a frame read from standard input) contains the compiled
+ * classes of a submission, the {@link Problem}, and the {@link TestCase}s
+ * to execute.  Once it has started up, the child JVM sends a ready frame
+ * before reading the first request.  The test cases are executed one at a time, and
+ * a {@link TestResult} frame is written to standard output as each
+ * one completes.  The parent JVM enforces the time limit
+ * by killing the child JVM.
+ * 
+ * @author David Hovemeyer
+ */
+public class ForkedJavaMethodTestRunner {
+	/** Maximum number of bytes of stdout or stderr output kept for each test case. */
+	public static final int MAX_OUTPUT_BYTES = 64*1024;
+	
+	/**
+	 * A decoded request.
+	 */
+	static class Request {
+		final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		String externalLibraryFileName;
+		final Problem problem = new Problem();
+		final List<TestCase> testCaseList = new ArrayList<TestCase>();
+	}
+	
+	/**
+	 * Output stream that discards output beyond {@link ForkedJavaMethodTestRunner#MAX_OUTPUT_BYTES}.
+	 */
+	private static class LimitedByteArrayOutputStream extends ByteArrayOutputStream {
+		@Override
+		public synchronized void write(int b) {
+			if (count < MAX_OUTPUT_BYTES) {
+				super.write(b);
+			}
+		}
+		
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			super.write(b, off, Math.min(len, MAX_OUTPUT_BYTES - count));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		
+		// Standard output is reserved for frames: anything else
+		// (such as log messages) goes to standard error
+		PrintStream stderr = System.err;
+		System.setOut(stderr);
+		
+		warmUp(stderr);
+		AbstractKillableTaskManager.installSecurityManager();
+		
+		// Let the parent know that we are ready: it won't start
+		// timing the first test until we are
+		ForkedJVM.writeReadyFrame(out);
+		
+		byte[] frame;
+		while ((frame = ForkedJVM.readFrame(in)) != null) {
+			Request request = decodeRequest(frame);
+			Class<?> testerCls = null;
+			try {
+				ClassLoader classLoader = (request.externalLibraryFileName != null)
+						? new ByteArrayAndExternalLibraryClassLoader(request.classes, request.externalLibraryFileName)
+						: new ByteArrayClassLoader(request.classes);
+				testerCls = classLoader.loadClass("Tester");
+			} catch (ClassNotFoundException e) {
+				e.printStackTrace(stderr);
+			} catch (IOException e) {
+				e.printStackTrace(stderr);
+			}
+			
+			for (TestCase testCase : request.testCaseList) {
+				TestResult result;
+				if (testerCls == null) {
+					result = new TestResult(TestOutcome.INTERNAL_ERROR, "Could not load compiled classes");
+				} else {
+					result = runTest(new IsolatedTaskRunner(testerCls, request.problem, testCase), stderr);
+				}
+				ForkedJVM.writeFrame(out, encodeResult(result));
+				out.flush();
+			}
+		}
+	}
+
+	/*
+	 * Test driver methods used by warmUp(). 
+	 */
+	public static Object[] warmUpPassed() { return new Object[]{Boolean.TRUE, "0"}; }
+	public static Object[] warmUpFailed() { return new Object[]{Boolean.FALSE, "1"}; }
+	public static Object[] warmUpException() { throw new IllegalStateException("warm up"); }
+	public static Object[] warmUpSecurityException() { throw new SecurityException("warm up"); }
+	public static Object[] warmUpInstructionBudget() { InstructionBudget.consume(1, 0L); return null; }
+	
+	/**
+	 * Produce each kind of {@link TestResult} once before the security manager
+	 * is installed.  Once it is installed, worker threads can't load classes
+	 * from the classpath, so any classes needed to create a {@link TestResult}
+	 * must already be loaded.
+	 */
+	private static void warmUp(PrintStream stderr) {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.JAVA_METHOD);
+		problem.setTestname("warmUp");
+		String[] testCaseNames = {"warmUpPassed", "warmUpFailed", "warmUpException", "warmUpSecurityException",
+				"warmUpInstructionBudget"};
+		for (String testCaseName : testCaseNames) {
+			TestCase testCase = new TestCase();
+			testCase.setTestCaseName(testCaseName);
+			testCase.setInput("");
+			testCase.setOutput("0");
+			runTest(new IsolatedTaskRunner(ForkedJavaMethodTestRunner.class, problem, testCase), stderr);
+		}
+	}
+
+	private static TestResult runTest(final IsolatedTaskRunner task, PrintStream stderr) {
+		LimitedByteArrayOutputStream testStdout = new LimitedByteArrayOutputStream();
+		LimitedByteArrayOutputStream testStderr = new LimitedByteArrayOutputStream();
+		final TestResult[] result = new TestResult[1];
+		
+		// The test runs in a worker thread, so that the security manager restricts it
+		Thread worker = new Thread(AbstractKillableTaskManager.WORKER_THREAD_GROUP, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result[0] = task.execute();
+				} catch (Throwable e) {
+					result[0] = new TestResult(TestOutcome.INTERNAL_ERROR, "Error while testing submission: " + e.toString());
+				}
+			}
+		}, "ForkedTestThread");
+		
+		System.setOut(new PrintStream(testStdout, true));
+		System.setErr(new PrintStream(testStderr, true));
+		try {
+			worker.start();
+			worker.join();
+		} catch (InterruptedException e) {
+			result[0] = new TestResult(TestOutcome.INTERNAL_ERROR, "Interrupted while testing submission");
+		} finally {
+			System.setOut(stderr);
+			System.setErr(stderr);
+		}
+		
+		if (result[0] == null) {
+			result[0] = new TestResult(TestOutcome.INTERNAL_ERROR, "Test thread exited unexpectedly");
+		}
+		result[0].setStdout(testStdout.toString());
+		result[0].setStderr(testStderr.toString());
+		return result[0];
+	}
+
+	/**
+	 * Encode a request.
+	 * 
+	 * @param bytecodeList            the compiled classes
+	 * @param externalLibraryFileName filename of the external library jar file, or null if none
+	 * @param problem                 the {@link Problem}
+	 * @param testCaseList            the {@link TestCase}s to execute
+	 * @return the encoded request
+	 */
+	static byte[] encodeRequest(Bytecode[] bytecodeList, String externalLibraryFileName, Problem problem, List<TestCase> testCaseList) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(bytecodeList.length);
+			for (Bytecode bytecode : bytecodeList) {
+				BinaryConversion.writeString(out, bytecode.getClassName());
+				out.writeInt(bytecode.getCode().length);
+				out.write(bytecode.getCode());
+			}
+			BinaryConversion.writeString(out, externalLibraryFileName);
+			BinaryConversion.writeProblem(out, problem);
+			out.writeInt(testCaseList.size());
+			for (TestCase testCase : testCaseList) {
+				BinaryConversion.writeTestCase(out, testCase);
+			}
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Should not happen: IOException writing to byte array", e);
+		}
+	}
+
+	static Request decodeRequest(byte[] frame) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+		Request request = new Request();
+		int numClasses = in.readInt();
+		for (int i = 0; i < numClasses; i++) {
+			String className = BinaryConversion.readString(in);
+			byte[] code = new byte[in.readInt()];
+			in.readFully(code);
+			request.classes.put(className, code);
+		}
+		request.externalLibraryFileName = BinaryConversion.readString(in);
+		BinaryConversion.readProblem(in, request.problem);
+		int numTestCases = in.readInt();
+		for (int i = 0; i < numTestCases; i++) {
+			TestCase testCase = new TestCase();
+			BinaryConversion.readTestCase(in, testCase);
+			request.testCaseList.add(testCase);
+		}
+		return request;
+	}
+
+	static byte[] encodeResult(TestResult result) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		BinaryConversion.writeModelObject(out, result, TestResult.SCHEMA);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	static TestResult decodeResult(byte[] frame) throws IOException {
+		TestResult result = new TestResult();
+		BinaryConversion.readModelObject(new DataInputStream(new ByteArrayInputStream(frame)), result, TestResult.SCHEMA);
+		return result;
+	}
+}
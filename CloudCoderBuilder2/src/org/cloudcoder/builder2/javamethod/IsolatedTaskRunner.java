@@ -25,6 +25,7 @@ import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestOutcome;
 import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.builder2.javasandbox.InstructionBudgetExceededError;
 import org.cloudcoder.builder2.javasandbox.IsolatedTask;
 import org.cloudcoder.builder2.util.TestResultUtil;
 import org.slf4j.Logger;
@@ -71,6 +72,9 @@ public class IsolatedTaskRunner implements IsolatedTask<TestResult>
                 logger.error("Security exception", e);
                 return new TestResult(TestOutcome.FAILED_BY_SECURITY_MANAGER, "Security exception while testing submission");
             } 
+            if (e.getCause() instanceof InstructionBudgetExceededError) {
+                return TestResultUtil.createResultForTimeout();
+            }
             logger.warn("InvocationTargetException", e);
             logger.trace("cause: "+e.getCause());
             logger.trace("target exception: "+e.getTargetException());
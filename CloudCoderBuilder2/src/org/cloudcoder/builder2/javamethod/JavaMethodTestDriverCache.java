@@ -0,0 +1,111 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.builder2.javamethod;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.builder2.model.Bytecode;
+
+/**
+ * Bounded LRU cache of compiled {@link ProblemType#JAVA_METHOD} test driver
+ * classes.  The test driver generated by {@link AddJavaMethodTestDriverBuildStep}
+ * is the same for every submission to a problem (as long as the submissions
+ * declare the same methods), so it only needs to be compiled once.
+ * The cache is shared by all of the threads testing submissions,
+ * and is thread-safe.
+ *
+ * @author David Hovemeyer
+ */
+public class JavaMethodTestDriverCache {
+	/** Default maximum number of cached test drivers. */
+	public static final int DEFAULT_MAX_SIZE = 64;
+
+	private final LinkedHashMap<String, Bytecode[]> map;
+	private int numHits;
+	private int numMisses;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize maximum number of test drivers to cache
+	 */
+	public JavaMethodTestDriverCache(final int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}
+		this.map = new LinkedHashMap<String, Bytecode[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Bytecode[]> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Look up compiled test driver classes.
+	 *
+	 * @param key the key (see {@link AddJavaMethodTestDriverBuildStep})
+	 * @return the compiled test driver classes, or null if they are not in the cache
+	 */
+	public synchronized Bytecode[] get(String key) {
+		Bytecode[] bytecodeList = map.get(key);
+		if (bytecodeList != null) {
+			numHits++;
+		} else {
+			numMisses++;
+		}
+		return bytecodeList;
+	}
+
+	/**
+	 * Add compiled test driver classes to the cache.
+	 * If the cache is full, the least-recently-used entry is evicted.
+	 *
+	 * @param key          the key
+	 * @param bytecodeList the compiled test driver classes
+	 */
+	public synchronized void put(String key, Bytecode[] bytecodeList) {
+		map.put(key, bytecodeList);
+	}
+
+	/**
+	 * @return number of test drivers currently in the cache
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return number of calls to {@link #get(String)} that found a cached test driver
+	 */
+	public synchronized int getNumHits() {
+		return numHits;
+	}
+
+	/**
+	 * @return number of calls to {@link #get(String)} that did not find a cached test driver
+	 */
+	public synchronized int getNumMisses() {
+		return numMisses;
+	}
+}
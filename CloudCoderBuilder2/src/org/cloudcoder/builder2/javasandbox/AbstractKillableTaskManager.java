@@ -22,6 +22,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,12 +53,18 @@ public abstract class AbstractKillableTaskManager<T>
 {
     protected static final Logger logger = LoggerFactory.getLogger(AbstractKillableTaskManager.class);
     protected static boolean securityManagerInstalled = false;
+    /** Used to measure the CPU time used by worker threads */
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    /** How long to wait before checking again for a free slot while tasks are running */
+    private static final long SLOT_POLL_INTERVAL_MS = 10L;
     /** list of "isolated tasks" to be executed */
     private List<? extends IsolatedTask<T>> tasks;
     /** List of Outcomes; essentially placeholders objects where tasks will put their results */
     private List<Outcome<T>> results;
     private long maxRunTime;
-    private int numPauses = 5;
+    private int maxParallelism;
+    private Semaphore slots;
+    private long totalCpuTimeNanos;
 
     protected ThreadedPrintStreamMonitor stdOutMonitor;
     protected ThreadedPrintStreamMonitor stdErrMonitor;
@@ -87,6 +99,7 @@ public abstract class AbstractKillableTaskManager<T>
         this.tasks=tasks;
         this.maxRunTime=maxRunTime;
         this.timeoutHandler=timeoutHandler;
+        this.maxParallelism=Integer.MAX_VALUE;
 
         this.results=new ArrayList<Outcome<T>>(tasks.size());
         for (int i=0; i<tasks.size(); i++) {
@@ -107,6 +120,40 @@ public abstract class AbstractKillableTaskManager<T>
         this.threadNamePrefix = threadNamePrefix;
     }
 
+    /**
+     * Set the maximum number of tasks that will be run at the same time.
+     * By default, all tasks are run at the same time.
+     * 
+     * @param maxParallelism maximum number of tasks to run at the same time
+     */
+    public void setMaxParallelism(int maxParallelism) {
+        this.maxParallelism=Math.max(1, maxParallelism);
+    }
+
+    /**
+     * Set a semaphore limiting the number of tasks, in all task managers
+     * sharing it, that may be run at the same time: each running task
+     * holds one permit.  A task manager with no running tasks
+     * waits for a permit like any other; since every running task
+     * releases its permit when it finishes, the task manager will
+     * eventually get one.  By default there is no such limit.
+     * 
+     * @param slots the semaphore
+     */
+    public void setSlots(Semaphore slots) {
+        this.slots=slots;
+    }
+
+    /**
+     * Get the total CPU time used by the worker threads.
+     * Only valid after {@link #run()} has returned.
+     * 
+     * @return the total CPU time in nanoseconds
+     */
+    public long getTotalCpuTimeNanos() {
+        return totalCpuTimeNanos;
+    }
+
     public boolean isFinished(int x) {
         return results.get(x).finished;
     }
@@ -128,33 +175,84 @@ public abstract class AbstractKillableTaskManager<T>
         // that will buffer the outputs for each thread
         redirectStandardOutputStreams();
 
-        Thread[] pool=new Thread[tasks.size()];
-        for (int i=0; i<tasks.size(); i++) {
-            IsolatedTask<T> task=tasks.get(i);
-            pool[i]=new WorkerThread<T>(task, results.get(i));
-            pool[i].setDaemon(true);
-            pool[i].start();
-        }
+        int numTasks=tasks.size();
+        long maxRunTimeNanos=TimeUnit.MILLISECONDS.toNanos(maxRunTime);
+
+        // each worker reports its index when it completes, so we can
+        // collect its result (and start another task) right away
+        BlockingQueue<Integer> completions=new LinkedBlockingQueue<Integer>();
+        Thread[] pool=new Thread[numTasks];
+        long[] deadlines=new long[numTasks];
+        boolean[] running=new boolean[numTasks];
+        boolean[] timedOut=new boolean[numTasks];
+        int next=0;
+        int numRunning=0;
+        totalCpuTimeNanos=0L;
 
-        // now pause a couple of times
-        for (int i=1; i<=numPauses; i++) {
-            if (!pauseAndPoll(maxRunTime/numPauses, pool)) {
-                // we can stop pausing
-                break;
+        while (next<numTasks || numRunning>0) {
+            // start as many tasks as the limits allow: each task's
+            // time limit starts when it is started
+            while (next<numTasks && numRunning<maxParallelism && acquireSlot(numRunning==0)) {
+                pool[next]=new WorkerThread<T>(tasks.get(next), results.get(next), next, completions);
+                pool[next].setDaemon(true);
+                deadlines[next]=System.nanoTime()+maxRunTimeNanos;
+                running[next]=true;
+                numRunning++;
+                pool[next].start();
+                next++;
+            }
+
+            // wait until a task completes or reaches its time limit
+            long now=System.nanoTime();
+            long wait=Long.MAX_VALUE;
+            for (int i=0; i<next; i++) {
+                if (running[i]) {
+                    wait=Math.min(wait, deadlines[i]-now);
+                }
+            }
+            if (next<numTasks) {
+                // waiting for a free slot
+                wait=Math.min(wait, TimeUnit.MILLISECONDS.toNanos(SLOT_POLL_INTERVAL_MS));
+            }
+            Integer completed=pollCompletion(completions, wait);
+            if (completed!=null) {
+                int i=completed.intValue();
+                if (!running[i]) {
+                    // a thread we already stopped
+                    continue;
+                }
+                running[i]=false;
+                numRunning--;
+                releaseSlot();
+                totalCpuTimeNanos+=results.get(i).cpuTimeNanos;
+                continue;
+            }
+
+            // Kill any threads that have reached their time limit
+            now=System.nanoTime();
+            for (int i=0; i<next; i++) {
+                if (running[i] && deadlines[i]-now<=0) {
+                    Thread t=pool[i];
+                    totalCpuTimeNanos+=getThreadCpuTime(t);
+
+                    //XXX Yes, I know that stop() is deprecated.  
+                    //But this is a necessary use of stop!
+                    t.stop();
+
+                    logger.info("Stopped thread {} after {} ms", t.getName(), maxRunTime);
+                    running[i]=false;
+                    timedOut[i]=true;
+                    numRunning--;
+                    releaseSlot();
+                }
             }
         }
 
-        // Go through and kill any threads that haven't finished yet
+        // Handle timeouts
         // Also put the buffered output from stdout/stderr into the map
         for (int i=0; i<pool.length; i++) {
             Thread t=pool[i];
-            if (t.isAlive()) {
-                //XXX Yes, I know that stop() is deprecated.  
-                //But this is a necessary use of stop!
-                t.stop();
-
-                //TODO Log that a thread is being stopped
-
+            if (timedOut[i]) {
                 // stop the monitors
                 stdOutMonitor.flush(t);
                 stdOutMonitor.close(t);
@@ -192,28 +290,58 @@ public abstract class AbstractKillableTaskManager<T>
     public abstract void redirectStandardOutputStreams();
 
     /**
-     * Pause for a certain amount of time.  Return true if any
-     * of the threads in the given threadpool are still alive,
-     * and false if they are all finished.
-     * @param time
-     * @param pool
-     * @return
+     * Acquire a slot for running a task, if there is a limit
+     * on the number of slots.
+     * 
+     * @param block true if we should wait for a slot to become free
+     * @return true if a slot was acquired
+     */
+    private boolean acquireSlot(boolean block) {
+        if (slots==null) {
+            return true;
+        }
+        if (block) {
+            slots.acquireUninterruptibly();
+            return true;
+        }
+        return slots.tryAcquire();
+    }
+
+    /**
+     * Release a slot acquired by {@link #acquireSlot(boolean)}.
      */
-    private boolean pauseAndPoll(long time, Thread[] pool) {
+    private void releaseSlot() {
+        if (slots!=null) {
+            slots.release();
+        }
+    }
+
+    /**
+     * Wait for a worker thread to complete.
+     * 
+     * @param completions queue of indices of completed tasks
+     * @param wait        maximum time to wait, in nanoseconds
+     * @return the index of the completed task, or null if no task
+     *         completed within the given time
+     */
+    private static Integer pollCompletion(BlockingQueue<Integer> completions, long wait) {
         try {
-            Thread.sleep(time);
-            for (Thread t : pool) {
-                if (t.isAlive()) {
-                    return true;
-                }
-            }
+            return completions.poll(Math.max(0L, wait), TimeUnit.NANOSECONDS);
         } catch (InterruptedException e) {
-            // should never happen; to be safe, assume a thread may
-            // still be running.
-            return true;
+            // should never happen; to be safe, check the time limits
+            return null;
         }
-        // no threads are alive, so we can stop waiting
-        return false;
+    }
+
+    /**
+     * Get the CPU time used so far by the given thread.
+     * 
+     * @param t the thread
+     * @return the CPU time in nanoseconds, or 0 if it can't be measured
+     */
+    private static long getThreadCpuTime(Thread t) {
+        long cpuTime=threadMXBean.isThreadCpuTimeSupported() ? threadMXBean.getThreadCpuTime(t.getId()) : -1L;
+        return Math.max(0L, cpuTime);
     }
 
     /**
@@ -255,6 +383,8 @@ public abstract class AbstractKillableTaskManager<T>
         //Outcome() {}
         boolean finished;
         T result;
+        /** CPU time used by the worker thread, in nanoseconds */
+        long cpuTimeNanos;
     }
     /**
      * Worker thread takes a given Task, calls its execute() method
@@ -273,6 +403,8 @@ public abstract class AbstractKillableTaskManager<T>
     {
         private IsolatedTask<E> task;
         private Outcome<E> out;
+        private int index;
+        private BlockingQueue<Integer> completions;
 
         /**
          * Create a thread that executes the given task and puts
@@ -280,12 +412,16 @@ public abstract class AbstractKillableTaskManager<T>
          * 
          * @param task The task to execute
          * @param out The container in which to put the result of the task
+         * @param index The index of the task
+         * @param completions The queue to which the index is added when the task completes
          */
-        public WorkerThread(IsolatedTask<E> task, Outcome<E> out)
+        public WorkerThread(IsolatedTask<E> task, Outcome<E> out, int index, BlockingQueue<Integer> completions)
         {
             super(WORKER_THREAD_GROUP, threadNamePrefix+(numThreads++));
             this.task=task;
             this.out=out;
+            this.index=index;
+            this.completions=completions;
         }
 
         /**
@@ -310,8 +446,10 @@ public abstract class AbstractKillableTaskManager<T>
                 // "Attaching an exception-catching silencer to my thread-killing gun"
                 logger.error("Killing test case thread for unknown reason", e);
             } finally {
-                //System.err.println(System.getSecurityManager());
-                //System.out.println(System.getSecurityManager());
+                if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+                    out.cpuTimeNanos=Math.max(0L, threadMXBean.getCurrentThreadCpuTime());
+                }
+                completions.add(Integer.valueOf(index));
             }
         }
     }
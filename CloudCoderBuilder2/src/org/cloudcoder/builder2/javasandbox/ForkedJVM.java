@@ -0,0 +1,265 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.builder2.javasandbox;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.shared.model.wire.MessageChannel;
+import org.cloudcoder.daemon.IOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A child JVM managed by a {@link ForkedJVMPool}.
+ * The parent and the child exchange length-prefixed frames over
+ * the child's standard input and standard output
+ * (see {@link #writeFrame(DataOutputStream, byte[])} and
+ * {@link #readFrame(DataInputStream)}).  Frames sent by the child
+ * are read by a background thread, so that the parent can wait
+ * for a frame with a timeout, and kill the child if it takes too long.
+ * Anything the child writes to standard error is logged.
+ * Once the child has finished starting up, it sends a "ready" frame
+ * (see {@link #writeReadyFrame(DataOutputStream)}), which the parent
+ * waits for using {@link #awaitReady(long)}.
+ * 
+ * @author David Hovemeyer
+ */
+public class ForkedJVM {
+	private static final Logger logger = LoggerFactory.getLogger(ForkedJVM.class);
+	
+	/** Marks the end of the frames sent by the child. */
+	private static final byte[] EOF = new byte[0];
+	
+	/** Frame sent by the child when it is ready to receive requests. */
+	private static final byte[] READY = { 'R', 'E', 'A', 'D', 'Y' };
+	
+	private final Process process;
+	private final DataOutputStream out;
+	private final LinkedBlockingQueue<byte[]> received;
+	private int numUses;
+	private volatile boolean destroyed;
+	
+	/**
+	 * Constructor: starts the child JVM.
+	 * 
+	 * @param command the command to run
+	 * @throws IOException if the child JVM can't be started
+	 */
+	ForkedJVM(List<String> command) throws IOException {
+		this.process = new ProcessBuilder(command).start();
+		this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		this.received = new LinkedBlockingQueue<byte[]>();
+		startReader(process.getInputStream());
+		startErrorLogger(process.getErrorStream());
+	}
+
+	private void startReader(final InputStream stdout) {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				DataInputStream in = new DataInputStream(stdout);
+				try {
+					byte[] frame;
+					while ((frame = readFrame(in)) != null) {
+						received.add(frame);
+					}
+				} catch (IOException e) {
+					if (!destroyed) {
+						logger.warn("Error reading from child JVM", e);
+					}
+				} finally {
+					received.add(EOF);
+					IOUtil.closeQuietly(in);
+				}
+			}
+		}, "ForkedJVM reader");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private void startErrorLogger(final InputStream stderr) {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(stderr));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						logger.debug("Child JVM: {}", line);
+					}
+				} catch (IOException e) {
+					// The child JVM was destroyed
+				} finally {
+					IOUtil.closeQuietly(reader);
+				}
+			}
+		}, "ForkedJVM stderr");
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	/**
+	 * Send a frame to the child JVM.
+	 * 
+	 * @param frame the frame
+	 * @throws IOException if the frame can't be sent
+	 */
+	public void send(byte[] frame) throws IOException {
+		writeFrame(out, frame);
+		out.flush();
+	}
+	
+	/**
+	 * Wait for the next frame sent by the child JVM.
+	 * 
+	 * @param timeoutMs maximum number of milliseconds to wait
+	 * @return the frame, or null if no frame arrived before the timeout
+	 * @throws EOFException if the child JVM exited
+	 * @throws InterruptedException
+	 */
+	public byte[] receive(long timeoutMs) throws EOFException, InterruptedException {
+		byte[] frame = received.poll(timeoutMs, TimeUnit.MILLISECONDS);
+		if (frame == EOF) {
+			// Leave the marker for the next caller
+			received.add(EOF);
+			throw new EOFException("Child JVM exited");
+		}
+		return frame;
+	}
+	
+	/**
+	 * Wait for the child JVM to send its ready frame.
+	 * This must be done before the first request is sent.
+	 * 
+	 * @param timeoutMs maximum number of milliseconds to wait
+	 * @return true if the child JVM is ready, false if it exited,
+	 *         sent something other than the ready frame, or did
+	 *         not become ready before the timeout
+	 * @throws InterruptedException
+	 */
+	boolean awaitReady(long timeoutMs) throws InterruptedException {
+		try {
+			byte[] frame = receive(timeoutMs);
+			if (frame == null) {
+				logger.warn("Child JVM did not become ready within {} ms", timeoutMs);
+				return false;
+			}
+			if (!Arrays.equals(frame, READY)) {
+				logger.warn("Child JVM sent unexpected frame instead of ready frame");
+				return false;
+			}
+			return true;
+		} catch (EOFException e) {
+			logger.warn("Child JVM exited before becoming ready");
+			return false;
+		}
+	}
+	
+	/**
+	 * @return true if the child JVM is still running
+	 */
+	public boolean isAlive() {
+		if (destroyed) {
+			return false;
+		}
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Kill the child JVM.
+	 */
+	public void destroy() {
+		destroyed = true;
+		IOUtil.closeQuietly(out);
+		process.destroy();
+	}
+	
+	/**
+	 * @return the number of times this child JVM has been borrowed from its pool
+	 */
+	int getNumUses() {
+		return numUses;
+	}
+	
+	void incrementNumUses() {
+		numUses++;
+	}
+
+	/**
+	 * Write a frame.
+	 * 
+	 * @param out   the DataOutputStream to write to
+	 * @param frame the frame
+	 * @throws IOException
+	 */
+	public static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+		out.writeInt(frame.length);
+		out.write(frame);
+	}
+	
+	/**
+	 * Write the ready frame: called by the child JVM once it has
+	 * finished starting up.
+	 * 
+	 * @param out the DataOutputStream to write to
+	 * @throws IOException
+	 */
+	public static void writeReadyFrame(DataOutputStream out) throws IOException {
+		writeFrame(out, READY);
+		out.flush();
+	}
+
+	/**
+	 * Read a frame.
+	 * 
+	 * @param in the DataInputStream to read from
+	 * @return the frame, or null if the end of the stream was reached
+	 * @throws IOException
+	 */
+	public static byte[] readFrame(DataInputStream in) throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (length < 0 || length > MessageChannel.MAX_PAYLOAD_SIZE) {
+			throw new IOException("Invalid frame length " + length);
+		}
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return frame;
+	}
+}
@@ -0,0 +1,254 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.builder2.javasandbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of pre-forked child JVMs ({@link ForkedJVM}s) used to execute
+ * tests on untrusted Java code with hard isolation from the Builder.
+ * The pool keeps a fixed number of idle child JVMs started in advance,
+ * so that the JVM startup cost isn't paid while testing a submission.
+ * A child JVM is only handed out once it has sent its ready frame
+ * (see {@link ForkedJVM#awaitReady(long)}), so its startup time
+ * never counts against the time limit of a test.
+ * A child JVM that is discarded (for example, because a test timed out),
+ * or that has been used the maximum number of times, is killed
+ * and replaced by a new one, which starts up in the background.
+ * The pool is thread-safe.
+ * 
+ * @author David Hovemeyer
+ */
+public class ForkedJVMPool {
+	private static final Logger logger = LoggerFactory.getLogger(ForkedJVMPool.class);
+	
+	/** Maximum time to wait for a new child JVM to become ready. */
+	private static final long STARTUP_TIMEOUT_MS = 60000L;
+	
+	private final List<String> command;
+	private final int size;
+	private final int maxUses;
+	private final LinkedList<ForkedJVM> idle;
+	private int numStarting;
+	private boolean shutdown;
+	
+	/**
+	 * Constructor.  Starts the idle child JVMs (in the background).
+	 * 
+	 * @param command  command used to start a child JVM
+	 *                 (see {@link #createJavaCommand(String, List)})
+	 * @param size     number of idle child JVMs to keep
+	 * @param maxUses  number of times a child JVM can be used before it is replaced
+	 */
+	public ForkedJVMPool(List<String> command, int size, int maxUses) {
+		if (size < 1 || maxUses < 1) {
+			throw new IllegalArgumentException("Pool size and maximum uses must be at least 1");
+		}
+		this.command = command;
+		this.size = size;
+		this.maxUses = maxUses;
+		this.idle = new LinkedList<ForkedJVM>();
+		for (int i = 0; i < size; i++) {
+			replenish();
+		}
+	}
+	
+	/**
+	 * Create a command to start a child JVM with the same
+	 * classpath as the current JVM.
+	 * 
+	 * @param mainClassName name of the child JVM's main class
+	 * @param jvmArgs       JVM arguments for the child JVM
+	 * @return the command
+	 */
+	public static List<String> createJavaCommand(String mainClassName, List<String> jvmArgs) {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(jvmArgs);
+		command.add("-classpath");
+		command.add(System.getProperty("java.class.path"));
+		command.add(mainClassName);
+		return command;
+	}
+	
+	/**
+	 * Borrow a child JVM.  If there are no idle child JVMs, but
+	 * some are starting, waits for one of them to become ready;
+	 * otherwise, a new one is started.  Either way, the child JVM
+	 * returned is ready to receive a request.  The child JVM must be returned
+	 * by calling either {@link #release(ForkedJVM)} or {@link #discard(ForkedJVM)}.
+	 * 
+	 * @return the child JVM
+	 * @throws IOException if a new child JVM is needed and can't be started
+	 * @throws InterruptedException
+	 */
+	public ForkedJVM borrow() throws IOException, InterruptedException {
+		synchronized (this) {
+			for (;;) {
+				if (shutdown) {
+					throw new IllegalStateException("Pool has been shut down");
+				}
+				while (!idle.isEmpty()) {
+					ForkedJVM jvm = idle.removeFirst();
+					if (jvm.isAlive()) {
+						jvm.incrementNumUses();
+						return jvm;
+					}
+					jvm.destroy();
+				}
+				if (numStarting == 0) {
+					break;
+				}
+				// Wait for a child JVM that is starting to become ready
+				wait();
+			}
+		}
+		
+		logger.info("No idle child JVMs, starting a new one");
+		ForkedJVM jvm = start();
+		jvm.incrementNumUses();
+		return jvm;
+	}
+	
+	/**
+	 * Return a child JVM that is in a good state (waiting for its next request).
+	 * 
+	 * @param jvm the child JVM
+	 */
+	public void release(ForkedJVM jvm) {
+		synchronized (this) {
+			if (!shutdown && jvm.getNumUses() < maxUses && idle.size() < size && jvm.isAlive()) {
+				idle.addLast(jvm);
+				return;
+			}
+		}
+		discard(jvm);
+	}
+	
+	/**
+	 * Kill a child JVM, and start a new one to replace it.
+	 * This must be used instead of {@link #release(ForkedJVM)} if the child
+	 * JVM might not be in a good state (for example, because it timed out).
+	 * 
+	 * @param jvm the child JVM
+	 */
+	public void discard(ForkedJVM jvm) {
+		jvm.destroy();
+		replenish();
+	}
+	
+	private void replenish() {
+		synchronized (this) {
+			if (shutdown || idle.size() + numStarting >= size) {
+				return;
+			}
+			numStarting++;
+		}
+		
+		// Wait for the new child JVM to become ready in the background,
+		// so that the thread that discarded a child JVM isn't delayed
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ForkedJVM jvm = null;
+				try {
+					jvm = start();
+				} catch (IOException e) {
+					logger.error("Could not start child JVM", e);
+				} catch (InterruptedException e) {
+					logger.error("Interrupted while starting child JVM", e);
+				}
+				synchronized (ForkedJVMPool.this) {
+					numStarting--;
+					ForkedJVMPool.this.notifyAll();
+					if (jvm != null && !shutdown && idle.size() < size) {
+						idle.addLast(jvm);
+						return;
+					}
+				}
+				if (jvm != null) {
+					jvm.destroy();
+				}
+			}
+		}, "ForkedJVMPool startup");
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	/**
+	 * Start a child JVM and wait for it to become ready.
+	 * 
+	 * @return the child JVM
+	 * @throws IOException if the child JVM can't be started or doesn't become ready
+	 * @throws InterruptedException
+	 */
+	private ForkedJVM start() throws IOException, InterruptedException {
+		ForkedJVM jvm = new ForkedJVM(command);
+		boolean ready = false;
+		try {
+			ready = jvm.awaitReady(STARTUP_TIMEOUT_MS);
+		} finally {
+			if (!ready) {
+				jvm.destroy();
+			}
+		}
+		if (!ready) {
+			throw new IOException("Child JVM did not become ready");
+		}
+		return jvm;
+	}
+	
+	/**
+	 * @return the number of idle child JVMs
+	 */
+	public synchronized int getNumIdle() {
+		return idle.size();
+	}
+	
+	/**
+	 * @return the number of child JVMs being started to replenish the idle child JVMs
+	 */
+	public synchronized int getNumStarting() {
+		return numStarting;
+	}
+	
+	/**
+	 * Kill all of the idle child JVMs.  Child JVMs that are
+	 * currently borrowed are killed when they are returned.
+	 */
+	public void shutdown() {
+		List<ForkedJVM> toDestroy;
+		synchronized (this) {
+			shutdown = true;
+			notifyAll();
+			toDestroy = new ArrayList<ForkedJVM>(idle);
+			idle.clear();
+		}
+		for (ForkedJVM jvm : toDestroy) {
+			jvm.destroy();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javasandbox;
+
+/**
+ * Per-thread instruction counter used by code instrumented by
+ * {@link InstructionBudgetInstrumenter}.  Each test is executed in
+ * its own thread, so each test starts with an empty count.
+ * Because the count depends only on the code executed, and not on
+ * how busy the machine is, a test that exceeds its budget
+ * does so reproducibly.
+ * 
+ * @author David Hovemeyer
+ */
+public class InstructionBudget {
+	private static final ThreadLocal<long[]> used = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	/**
+	 * Make sure that this class, and all of the classes it uses,
+	 * are loaded and initialized.  This must be done before
+	 * instrumented code runs in a thread which isn't allowed to
+	 * load classes from the classpath (see {@link ThreadGroupSecurityManager}).
+	 */
+	public static void initialize() {
+		used.get();
+		InstructionBudgetExceededError.class.getName();
+	}
+
+	/**
+	 * Called by instrumented code: charge the given number of
+	 * instructions to the current thread.
+	 * 
+	 * @param cost   number of instructions executed
+	 * @param budget maximum number of instructions the thread may execute
+	 * @throws InstructionBudgetExceededError if the budget has been exceeded
+	 */
+	public static void consume(int cost, long budget) {
+		long[] count = used.get();
+		count[0] += cost;
+		if (count[0] > budget) {
+			throw new InstructionBudgetExceededError(budget);
+		}
+	}
+
+	/**
+	 * @return number of instructions charged to the current thread
+	 */
+	public static long getUsed() {
+		return used.get()[0];
+	}
+
+	/**
+	 * Reset the current thread's instruction count to zero.
+	 */
+	public static void reset() {
+		used.get()[0] = 0L;
+	}
+}
@@ -0,0 +1,40 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javasandbox;
+
+/**
+ * Error thrown by instrumented submission code when the thread
+ * executing it has used up its {@link InstructionBudget}.
+ * It is an {@link Error} rather than an exception so that
+ * submission code which catches {@link Exception} won't
+ * accidentally swallow it.
+ * 
+ * @author David Hovemeyer
+ */
+public class InstructionBudgetExceededError extends Error {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param budget the budget that was exceeded
+	 */
+	public InstructionBudgetExceededError(long budget) {
+		super("Instruction budget of " + budget + " exceeded");
+	}
+}
@@ -0,0 +1,221 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javasandbox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Instrument compiled classes so that they charge the instructions
+ * they execute to the executing thread's {@link InstructionBudget}.
+ * A call to {@link InstructionBudget#consume(int, long)} is inserted
+ * at the entry of every method and before every backward branch
+ * (i.e., every loop back-edge), so a runaway loop or recursion
+ * will throw {@link InstructionBudgetExceededError} after executing
+ * a fixed amount of code, regardless of system load.
+ * The cost charged at a back-edge is the number of instructions
+ * between the branch target and the branch, which approximates the
+ * number of instructions executed in one iteration of the loop.
+ * 
+ * @author David Hovemeyer
+ */
+public class InstructionBudgetInstrumenter {
+	private static final String BUDGET_CLASS = Type.getInternalName(InstructionBudget.class);
+	private static final String CONSUME_DESC = "(IJ)V";
+
+	private final long budget;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param budget maximum number of instructions a test may execute
+	 */
+	public InstructionBudgetInstrumenter(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Instrument a class.
+	 * 
+	 * @param classBytes the class file
+	 * @return the instrumented class file
+	 * @throws IllegalArgumentException if the class file can't be parsed
+	 *         (e.g., because its version is not supported)
+	 */
+	public byte[] instrument(byte[] classBytes) {
+		ClassReader reader = new ClassReader(classBytes);
+		// Only method calls are inserted, and never at branch targets,
+		// so the existing stack map frames remain valid: only the
+		// maximum stack depth needs to be recomputed.
+		ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+		reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+				MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+				if (mv == null || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+					return mv;
+				}
+				return new BudgetMethodVisitor(mv);
+			}
+		}, 0);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Method visitor that inserts the budget checks.
+	 * It keeps a count of the instructions visited so far, and
+	 * records the count at each label: a branch to a label which
+	 * has already been visited is a backward branch.
+	 */
+	private class BudgetMethodVisitor extends MethodVisitor {
+		private final Map<Label, Integer> labelIndex;
+		private int insnCount;
+
+		public BudgetMethodVisitor(MethodVisitor mv) {
+			super(Opcodes.ASM5, mv);
+			this.labelIndex = new HashMap<Label, Integer>();
+		}
+
+		private void consume(int cost) {
+			super.visitLdcInsn(Integer.valueOf(cost));
+			super.visitLdcInsn(Long.valueOf(budget));
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, BUDGET_CLASS, "consume", CONSUME_DESC, false);
+		}
+
+		/**
+		 * Insert a check if any of the given branch targets is
+		 * a backward branch.
+		 */
+		private void checkBackwardBranch(Label... targets) {
+			int earliest = Integer.MAX_VALUE;
+			for (Label target : targets) {
+				Integer index = labelIndex.get(target);
+				if (index != null) {
+					earliest = Math.min(earliest, index);
+				}
+			}
+			if (earliest != Integer.MAX_VALUE) {
+				consume(insnCount - earliest + 1);
+			}
+		}
+
+		@Override
+		public void visitCode() {
+			super.visitCode();
+			consume(1);
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			labelIndex.put(label, insnCount);
+			super.visitLabel(label);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			checkBackwardBranch(label);
+			insnCount++;
+			super.visitJumpInsn(opcode, label);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			checkBackwardBranch(labels);
+			checkBackwardBranch(dflt);
+			insnCount++;
+			super.visitTableSwitchInsn(min, max, dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			checkBackwardBranch(labels);
+			checkBackwardBranch(dflt);
+			insnCount++;
+			super.visitLookupSwitchInsn(dflt, keys, labels);
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			insnCount++;
+			super.visitInsn(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			insnCount++;
+			super.visitIntInsn(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			insnCount++;
+			super.visitVarInsn(opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			insnCount++;
+			super.visitTypeInsn(opcode, type);
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			insnCount++;
+			super.visitFieldInsn(opcode, owner, name, desc);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			insnCount++;
+			super.visitMethodInsn(opcode, owner, name, desc, itf);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+			insnCount++;
+			super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			insnCount++;
+			super.visitLdcInsn(cst);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			insnCount++;
+			super.visitIincInsn(var, increment);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			insnCount++;
+			super.visitMultiANewArrayInsn(desc, dims);
+		}
+	}
+}
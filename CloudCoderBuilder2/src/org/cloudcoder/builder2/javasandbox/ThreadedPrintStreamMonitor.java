@@ -20,9 +20,9 @@ package org.cloudcoder.builder2.javasandbox;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * PrintStream that captures and buffers all output for however many
@@ -31,17 +31,84 @@ import java.util.Map;
  * Common case is to pass an instance of this stream to System.setOut
  * right before starting a bunch of threads that print to System.out.
  * 
+ * Each thread's output is kept in its own buffer, which is found
+ * through a ThreadLocal (so printing never contends with other threads)
+ * and registered in a concurrent map (so the output can be retrieved
+ * by the thread that started the printing threads).  Each buffer
+ * holds at most a fixed number of bytes: any further output is
+ * discarded, and the buffered output ends with {@link #TRUNCATION_MARKER}.
+ * 
  * @author jspacco
  *
  */
 public class ThreadedPrintStreamMonitor extends PrintStream
 {
-    /** Maps stdout and stderr for each thread */
-    private Map<String, PrintStream> printStreamMap=new HashMap<String, PrintStream>();
-    private Map<String, ByteArrayOutputStream> baosMap=
-        new HashMap<String, ByteArrayOutputStream>();
+    /** Default maximum number of bytes of output buffered for each thread. */
+    public static final int DEFAULT_MAX_BYTES_PER_THREAD = 64*1024;
+    
+    /** Appended to a thread's buffered output if some of its output was discarded. */
+    public static final String TRUNCATION_MARKER = "\n[Output truncated]\n";
+    
+    /**
+     * ByteArrayOutputStream that discards output beyond a fixed
+     * number of bytes, and records that it did so.
+     */
+    private static class CappedByteArrayOutputStream extends ByteArrayOutputStream {
+        private final int maxBytes;
+        private boolean truncated;
+        
+        public CappedByteArrayOutputStream(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+        
+        @Override
+        public synchronized void write(int b) {
+            if (count < maxBytes) {
+                super.write(b);
+            } else {
+                truncated = true;
+            }
+        }
+        
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int n = Math.min(len, maxBytes - count);
+            if (n > 0) {
+                super.write(b, off, n);
+            }
+            if (n < len) {
+                truncated = true;
+            }
+        }
+        
+        public synchronized boolean isTruncated() {
+            return truncated;
+        }
+    }
+    
+    /** The buffer for one thread's output, and the PrintStream writing to it. */
+    private static class ThreadOutput {
+        final CappedByteArrayOutputStream buffer;
+        final PrintStream printStream;
+        
+        ThreadOutput(int maxBytes) {
+            this.buffer = new CappedByteArrayOutputStream(maxBytes);
+            this.printStream = new PrintStream(buffer);
+        }
+    }
+    
+    private final int maxBytesPerThread;
+    /** Each thread's output */
+    private final ThreadLocal<ThreadOutput> threadOutput=new ThreadLocal<ThreadOutput>();
+    /** Registry of all threads' output, so it can be retrieved by other threads */
+    private final ConcurrentMap<Thread, ThreadOutput> threadOutputMap=
+        new ConcurrentHashMap<Thread, ThreadOutput>();
 
     public ThreadedPrintStreamMonitor(PrintStream stream) {
+        this(stream, DEFAULT_MAX_BYTES_PER_THREAD);
+    }
+    
+    public ThreadedPrintStreamMonitor(PrintStream stream, int maxBytesPerThread) {
         // XXX Is this a reasonable constructor?
         // I've intercepted just about every method call,
         // so nothing should actually be sent to super.
@@ -51,40 +118,70 @@ public class ThreadedPrintStreamMonitor extends PrintStream
         // get random method calls on whatever stream (probably stdout and stderr)
         // the constructor is called on.
         super(stream);
+        this.maxBytesPerThread=maxBytesPerThread;
+        
+        // The threads that print are typically worker threads,
+        // which the ThreadGroupSecurityManager won't allow to load
+        // classes from the classpath, so load the buffer classes now
+        new ThreadOutput(0);
     }
     
     public ThreadedPrintStreamMonitor() {
-        super(new ByteArrayOutputStream());
+        this(new PrintStream(new ByteArrayOutputStream()));
     }
     
     private PrintStream getPrintStream() {
-        return getPrintStream(Thread.currentThread());
+        ThreadOutput output=threadOutput.get();
+        if (output==null) {
+            output=new ThreadOutput(maxBytesPerThread);
+            threadOutput.set(output);
+            threadOutputMap.put(Thread.currentThread(), output);
+        }
+        return output.printStream;
     }
     
     private PrintStream getPrintStream(Thread t) {
-        String name=t.getName();
-        if (!baosMap.containsKey(name)) {
-            baosMap.put(name, new ByteArrayOutputStream());
-        }
-        if (!printStreamMap.containsKey(name)) {
-            printStreamMap.put(name, new PrintStream(baosMap.get(name)));
+        if (t==Thread.currentThread()) {
+            return getPrintStream();
         }
-        return printStreamMap.get(name);
+        ThreadOutput output=threadOutputMap.get(t);
+        return output!=null ? output.printStream : null;
     }
     
     /**
      * Given a thread, look up the backing ByteArrayOutputStream
      * that was used to buffer that thread's output, and return
-     * it as a String.
+     * it as a String.  If the thread's output exceeded the
+     * maximum number of bytes, the returned string ends with
+     * {@link #TRUNCATION_MARKER}.
      * 
      * @param t Thread
      * @return String containing that thread's buffered printing output.
      */
     public String getBufferedOutput(Thread t) {
-        PrintStream ps=getPrintStream(t);
-        ps.flush();
-        ps.close();
-        return baosMap.get(t.getName()).toString();
+        ThreadOutput output=threadOutputMap.get(t);
+        if (output==null) {
+            return "";
+        }
+        output.printStream.flush();
+        output.printStream.close();
+        String result=output.buffer.toString();
+        if (output.buffer.isTruncated()) {
+            result+=TRUNCATION_MARKER;
+        }
+        return result;
+    }
+    
+    /**
+     * Check whether any of the given thread's output was discarded
+     * because it exceeded the maximum number of bytes.
+     * 
+     * @param t Thread
+     * @return true if the thread's output was truncated
+     */
+    public boolean isTruncated(Thread t) {
+        ThreadOutput output=threadOutputMap.get(t);
+        return output!=null && output.buffer.isTruncated();
     }
     
     /* (non-Javadoc)
@@ -285,16 +382,19 @@ public class ThreadedPrintStreamMonitor extends PrintStream
         getPrintStream().flush();
     }
     public void flush(Thread t) {
-        getPrintStream(t).flush();
+        PrintStream ps=getPrintStream(t);
+        if (ps!=null) {
+            ps.flush();
+        }
     }
     public void flushAll() {
-        for (PrintStream ps : printStreamMap.values()) {
-            ps.flush();
+        for (ThreadOutput output : threadOutputMap.values()) {
+            output.printStream.flush();
         }
     }
     public void closeAll() {
-        for (PrintStream ps : printStreamMap.values()) {
-            ps.close();
+        for (ThreadOutput output : threadOutputMap.values()) {
+            output.printStream.close();
         }
     }
     /* (non-Javadoc)
@@ -305,7 +405,10 @@ public class ThreadedPrintStreamMonitor extends PrintStream
         getPrintStream().close();
     }
     public void close(Thread t) {
-        getPrintStream(t).close();
+        PrintStream ps=getPrintStream(t);
+        if (ps!=null) {
+            ps.close();
+        }
     }
     /* (non-Javadoc)
      * @see java.io.PrintStream#format(java.lang.String, java.lang.Object[])
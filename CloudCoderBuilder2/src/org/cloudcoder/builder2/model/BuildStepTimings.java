@@ -0,0 +1,105 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.BuildStepTiming;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+
+/**
+ * {@link BuilderSubmission} artifact recording the wall and CPU time
+ * taken by each {@link IBuildStep} executed by a {@link Tester}.
+ * CPU time is measured for the thread executing the build steps only:
+ * time spent in child processes or test threads is not included.
+ * 
+ * @author David Hovemeyer
+ */
+public class BuildStepTimings {
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	
+	private List<BuildStepTiming> timingList;
+	
+	/**
+	 * Constructor.
+	 */
+	public BuildStepTimings() {
+		timingList = new ArrayList<BuildStepTiming>();
+	}
+	
+	/**
+	 * Get the current time, for measuring the wall time of a step.
+	 * 
+	 * @return the current time in nanoseconds
+	 */
+	public static long getWallTimeNanos() {
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Get the CPU time of the current thread, for measuring the
+	 * CPU time of a step.
+	 * 
+	 * @return the CPU time in nanoseconds, or -1 if CPU time is not available
+	 */
+	public static long getCpuTimeNanos() {
+		return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1L;
+	}
+	
+	/**
+	 * Record the time taken by a step.
+	 * 
+	 * @param name            the name of the step
+	 * @param startWallNanos  the value of {@link #getWallTimeNanos()} when the step started
+	 * @param startCpuNanos   the value of {@link #getCpuTimeNanos()} when the step started
+	 */
+	public void record(String name, long startWallNanos, long startCpuNanos) {
+		long wallTimeMs = (getWallTimeNanos() - startWallNanos) / 1000000L;
+		long cpuTimeMs = -1L;
+		if (startCpuNanos >= 0L) {
+			long endCpuNanos = getCpuTimeNanos();
+			if (endCpuNanos >= 0L) {
+				cpuTimeMs = (endCpuNanos - startCpuNanos) / 1000000L;
+			}
+		}
+		timingList.add(new BuildStepTiming(name, wallTimeMs, cpuTimeMs));
+	}
+	
+	/**
+	 * @return the list of recorded timings
+	 */
+	public List<BuildStepTiming> getTimingList() {
+		return timingList;
+	}
+	
+	/**
+	 * Add the recorded timings to a {@link SubmissionResult} as an annotation.
+	 * Nothing is added if no timings were recorded.
+	 * 
+	 * @param result the {@link SubmissionResult}
+	 */
+	public void addToSubmissionResult(SubmissionResult result) {
+		if (!timingList.isEmpty()) {
+			result.addAnnotation(new SubmissionResultAnnotation(BuildStepTiming.ANNOTATION_KEY, BuildStepTiming.encode(timingList)));
+		}
+	}
+}
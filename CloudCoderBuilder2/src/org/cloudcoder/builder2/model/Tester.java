@@ -53,6 +53,8 @@ public class Tester {
 	
 	/**
 	 * Execute the Tester on a {@link BuilderSubmission}.
+	 * If the submission has a {@link BuildStepTimings} artifact,
+	 * the time taken by each build step is recorded in it.
 	 * 
 	 * @param submission the {@link BuilderSubmission} to build/test
      * @param config     configuration properties: i.e., properties from cloudcoder.properties file
@@ -60,9 +62,20 @@ public class Tester {
 	public void execute(BuilderSubmission submission, Properties config) {
 		logger.debug("Executing {} build step(s)", buildStepList.size());
 		
+		BuildStepTimings timings = submission.getArtifact(BuildStepTimings.class);
+		
 		for (IBuildStep buildStep : buildStepList) {
-			logger.debug("Executing build step: {}", buildStep.getClass().getSimpleName());
-			buildStep.execute(submission, config);
+			String name = buildStep.getClass().getSimpleName();
+			logger.debug("Executing build step: {}", name);
+			long startWallNanos = BuildStepTimings.getWallTimeNanos();
+			long startCpuNanos = BuildStepTimings.getCpuTimeNanos();
+			try {
+				buildStep.execute(submission, config);
+			} finally {
+				if (timings != null) {
+					timings.record(name, startWallNanos, startCpuNanos);
+				}
+			}
 			
 			// If a SubmissionResult was created, then we finish immediately,
 			// even if there are more steps remaining.  This handles, e.g.,
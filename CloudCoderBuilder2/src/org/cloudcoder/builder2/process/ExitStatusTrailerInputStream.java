@@ -0,0 +1,182 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.process;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Filter for a wrapped process's stderr which removes the exit status
+ * trailer written by the process wrapper (<code>runProcess3.sh</code> or
+ * <code>cRunProcess.exe</code>) after the process exits.  The trailer has
+ * the form
+ * <pre>
+ * \n<i>token</i> <i>how</i> <i>code</i>\n
+ * </pre>
+ * where <i>token</i> is a random string known only to the Builder and
+ * the wrapper (the wrapped process does not see it).  Everything before
+ * the trailer is passed through unchanged, and everything from the
+ * trailer onward is captured and made available by {@link #getTrailer()}.
+ * 
+ * @author David Hovemeyer
+ */
+public class ExitStatusTrailerInputStream extends FilterInputStream {
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	
+	private final byte[] marker;
+	
+	// Bytes which match a prefix of the marker, and are held back
+	// until we know whether or not they are the start of the trailer
+	private int numHeld;
+	
+	// Bytes ready to be returned to the reader
+	private final byte[] out;
+	private int outStart, outEnd;
+	
+	private final byte[] inBuf;
+	private ByteArrayOutputStream trailer;
+	private boolean eof;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param in    the process's stderr
+	 * @param token the token identifying the trailer: must not contain newlines
+	 */
+	public ExitStatusTrailerInputStream(InputStream in, String token) {
+		super(in);
+		this.marker = ("\n" + token).getBytes(ASCII);
+		this.inBuf = new byte[4096];
+		this.out = new byte[inBuf.length + marker.length];
+	}
+	
+	/**
+	 * Get the trailer (with the marker removed).
+	 * Should only be called once the stream has been read to EOF.
+	 * 
+	 * @return the trailer, or null if no trailer was found
+	 */
+	public String getTrailer() {
+		return trailer != null ? new String(trailer.toByteArray(), ASCII).trim() : null;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return out[outStart++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int n = Math.min(len, outEnd - outStart);
+		System.arraycopy(out, outStart, b, off, n);
+		outStart += n;
+		return n;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return outEnd - outStart;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0L;
+		while (skipped < n && read() >= 0) {
+			skipped++;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	/**
+	 * Make sure there are bytes ready to return to the reader.
+	 * 
+	 * @return true if there are bytes ready, false if the end of the
+	 *         output (or the start of the trailer) has been reached
+	 */
+	private boolean fill() throws IOException {
+		while (outStart == outEnd && !eof) {
+			outStart = outEnd = 0;
+			int n = in.read(inBuf);
+			if (n < 0) {
+				// End of stream without a trailer: held bytes are ordinary output
+				eof = true;
+				release();
+			} else {
+				scan(n);
+			}
+		}
+		return outStart < outEnd;
+	}
+	
+	private void scan(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			byte b = inBuf[i];
+			if (b == marker[numHeld]) {
+				numHeld++;
+				if (numHeld == marker.length) {
+					// Found the trailer: capture it (and anything after it)
+					numHeld = 0;
+					eof = true;
+					trailer = new ByteArrayOutputStream();
+					trailer.write(inBuf, i + 1, n - (i + 1));
+					drainTrailer();
+					return;
+				}
+			} else {
+				// The marker starts with the only newline it contains,
+				// so no suffix of the held bytes can start the marker
+				release();
+				if (b == marker[0]) {
+					numHeld = 1;
+				} else {
+					out[outEnd++] = b;
+				}
+			}
+		}
+	}
+	
+	private void release() {
+		System.arraycopy(marker, 0, out, outEnd, numHeld);
+		outEnd += numHeld;
+		numHeld = 0;
+	}
+	
+	private void drainTrailer() throws IOException {
+		int n;
+		while ((n = in.read(inBuf)) >= 0) {
+			trailer.write(inBuf, 0, n);
+		}
+	}
+}
@@ -18,9 +18,7 @@
 
 package org.cloudcoder.builder2.process;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -30,8 +28,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
 
-import org.apache.commons.io.IOUtils;
 import org.cloudcoder.builder2.model.ProcessStatus;
 import org.cloudcoder.builder2.model.WrapperMode;
 import org.cloudcoder.builder2.util.ProcessUtil;
@@ -60,6 +58,7 @@ public class ProcessRunner {
 	
 	private volatile Process process;
 	private Thread exitValueMonitor;
+	private volatile boolean runSuccessful;
 	private String stdin;
 	private IOutputCollector stdoutCollector;
 	private IOutputCollector stderrCollector;
@@ -146,23 +145,22 @@ public class ProcessRunner {
 		// exec command
 		logger.info("Running in {} the command: {}", workingDir.toString(), StringUtil.mergeOneLine(command));
 		try {
-			// Create a temp file in which the runProcess.sh script can save
-			// the exit status of the process.
-			File exitStatusFile = File.createTempFile("ccxs", ".txt", workingDir);
-			//logger.debug("Creating exit status file " + exitStatusFile.getPath());
-			exitStatusFile.deleteOnExit();
-
-			// Start process, setting CC_PROC_STAT_FILE env var
-			// to indicate where runProcess.sh should write the process's
-			// exit status information
+			// Start process, setting CC_PROC_STAT_TOKEN env var to a random
+			// token: the process wrapper will write the process's exit status
+			// information to stderr, in a trailer starting with the token,
+			// after the process exits
+			String exitStatusToken = UUID.randomUUID().toString().replace("-", "");
 			process = Runtime.getRuntime().exec(
 					command,
-					getEnvp("CC_PROC_STAT_FILE=" + exitStatusFile.getPath()),
+					getEnvp("CC_PROC_STAT_TOKEN=" + exitStatusToken),
 					workingDir);
 
-			// Collect process output
+			// Collect process output, separating the exit status
+			// trailer from the process's stderr
+			ExitStatusTrailerInputStream stderr =
+					new ExitStatusTrailerInputStream(process.getErrorStream(), exitStatusToken);
 			stdoutCollector = createOutputCollector(process.getInputStream());
-			stderrCollector = createOutputCollector(process.getErrorStream());
+			stderrCollector = createOutputCollector(stderr);
 			stdoutCollector.start();
 			stderrCollector.start();
 
@@ -182,7 +180,7 @@ public class ProcessRunner {
 			}
 			
 			// Read the process's exit status information
-			readProcessExitStatus(exitStatusFile);
+			readProcessExitStatus(stderr.getTrailer(), exitCode);
 			return true;
 		} catch (IOException e) {
 			statusMessage = "Could not execute process: " + e.getMessage();
@@ -234,78 +232,132 @@ public class ProcessRunner {
 	}
 	
 	/**
-	 * Read the file written by the runProcess.sh script
-	 * which contains information about the process's exit status.
+	 * Read the exit status trailer written to stderr by the process wrapper
+	 * (runProcess3.sh or the native exe wrapper).
+	 * If there is no trailer (for example, because the output collector
+	 * stopped reading stderr when the process exceeded its output limit),
+	 * the exit status is decoded from the wrapper's own exit code, which
+	 * follows the shell convention (127 for failure to execute,
+	 * 128+signal number for termination by a signal).
 	 * 
-	 * @param exitStatusFile file containing information about the process's exit status
+	 * @param trailer          the exit status trailer, or null if there was none
+	 * @param wrapperExitCode  the exit code of the process wrapper
 	 */
-	private void readProcessExitStatus(File exitStatusFile) {
-		BufferedReader reader = null;
+	private void readProcessExitStatus(String trailer, int wrapperExitCode) {
+		String status, exitCode;
+		if (trailer != null) {
+			logger.debug("Read process exit status trailer: {}", trailer);
+			String[] fields = trailer.split("\\s+");
+			status = fields[0];
+			exitCode = fields.length > 1 ? fields[1] : null;
+		} else {
+			logger.debug("No process exit status trailer, wrapper exit code is {}", wrapperExitCode);
+			if (wrapperExitCode == 127) {
+				status = "failed_to_execute";
+				exitCode = "-1";
+			} else if (wrapperExitCode < 128) {
+				status = "exited";
+				exitCode = String.valueOf(wrapperExitCode);
+			} else {
+				status = "terminated_by_signal";
+				exitCode = String.valueOf(wrapperExitCode - 128);
+			}
+		}
+		
 		try {
-			reader = new BufferedReader(new FileReader(exitStatusFile));
-			String status = reader.readLine();
-			String exitCode = reader.readLine();
-			if (status != null && exitCode != null) {
-				logger.debug("Read process exit status file: status={}, exitCode={}", status, exitCode);
-				
-				// Second line of file should be the exit code
-				this.exitCode = Integer.parseInt(exitCode);
+			if (exitCode == null) {
+				throw new NumberFormatException("Missing exit code");
+			}
+			
+			// Second field of trailer should be the exit code
+			this.exitCode = Integer.parseInt(exitCode);
+			
+			if (status.equals("failed_to_execute")) {
+				// The process could not be started
+				this.processStarted = false;
+				this.statusMessage = "Process could not be started";
+				this.status = ProcessStatus.COULD_NOT_START;
 				
-				if (status.equals("failed_to_execute")) {
-					// The process could not be started
-					this.processStarted = false;
-					this.statusMessage = "Process could not be started";
-					this.status = ProcessStatus.COULD_NOT_START;
-					
-					logger.debug("process stderr is {}", StringUtil.mergeOneLine(stderrCollector.getCollectedOutput()));
-				} else if (status.equals("exited")) {
-					// The process exited normally.
-					this.processStarted = true;
-					this.statusMessage = "Process exited";
-					this.status = ProcessStatus.EXITED;
-				} else if (status.equals("terminated_by_signal")) {
-					// The process was killed by a signal.
-					// The exit code is the signal that terminated the process.
-					this.processStarted = true;
-					this.statusMessage = "Process crashed (terminated by signal " + this.exitCode + ")";
-					this.status = ProcessStatus.KILLED_BY_SIGNAL;
-				} else {
-					// Should not happen.
-					logger.warn("Unknown process exit status " + status);
-					this.statusMessage = "Process status could not be determined";
-					this.status = ProcessStatus.COULD_NOT_START;
-				}
+				logger.debug("process stderr is {}", StringUtil.mergeOneLine(stderrCollector.getCollectedOutput()));
+			} else if (status.equals("exited")) {
+				// The process exited normally.
+				this.processStarted = true;
+				this.statusMessage = "Process exited";
+				this.status = ProcessStatus.EXITED;
+			} else if (status.equals("terminated_by_signal")) {
+				// The process was killed by a signal.
+				// The exit code is the signal that terminated the process.
+				this.processStarted = true;
+				this.statusMessage = "Process crashed (terminated by signal " + this.exitCode + ")";
+				this.status = ProcessStatus.KILLED_BY_SIGNAL;
+			} else {
+				// Should not happen.
+				logger.warn("Unknown process exit status " + status);
+				this.statusMessage = "Process status could not be determined";
+				this.status = ProcessStatus.COULD_NOT_START;
 			}
-		} catch (IOException e) {
-			logger.warn("IOException trying to read process status file");
-			this.statusMessage = "Process status could not be determined";
-			this.status = ProcessStatus.COULD_NOT_START;
 		} catch (NumberFormatException e) {
-			logger.warn("NumberFormatException trying to read process status file");
+			logger.warn("NumberFormatException trying to read process exit status trailer");
 			this.statusMessage = "Process status could not be determined";
 			this.status = ProcessStatus.COULD_NOT_START;
-		} finally {
-			IOUtils.closeQuietly(reader);
-			exitStatusFile.delete();
 		}
 	}
 
 	public void runAsynchronous(final File workingDir, final String... command) {
 	    exitValueMonitor=new Thread() {
 	        public void run() {
-	            runSynchronous(workingDir, command);
+	            runSuccessful = runSynchronous(workingDir, command);
 	        }
 	    };
 	    exitValueMonitor.start();
 	}
 	
+	/**
+	 * Wait for a process started by {@link #runAsynchronous(File, String...)}
+	 * to complete, up to a deadline.  Returns as soon as the process has
+	 * exited <em>and</em> its output and exit status have been collected,
+	 * so the results may be read immediately if this method returns true.
+	 * 
+	 * @param timeoutMs maximum time to wait, in milliseconds
+	 * @return true if the process completed, false if the deadline passed
+	 */
+	public boolean waitForCompletion(long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		for (;;) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (!exitValueMonitor.isAlive() || remaining <= 0L) {
+				return !exitValueMonitor.isAlive();
+			}
+			try {
+				exitValueMonitor.join(remaining);
+			} catch (InterruptedException e) {
+				// Keep waiting until the deadline
+			}
+		}
+	}
+	
+	/**
+	 * Find out whether a process started by {@link #runAsynchronous(File, String...)}
+	 * was run successfully, meaning that its output and exit status were collected.
+	 * If not (for example, because the process could not be executed),
+	 * {@link #getStatusMessage()} describes the problem, and the process's
+	 * output is not available.
+	 * <b>Important:</b> don't call this unless {@link #waitForCompletion(long)}
+	 * has returned true.
+	 * 
+	 * @return true if the process was run successfully, false otherwise
+	 */
+	public boolean isRunSuccessful() {
+		return runSuccessful;
+	}
+	
 	/**
 	 * Find out whether or not the exit status of this process is known.
 	 * Because in Java it's not directly possible to find out things about
 	 * how a process was terminated (such as whether it was killed by
 	 * a signal), we use a wrapper script to collect information about the
-	 * process's status and write this to a file that this class can read.
-	 * However, we can't rule out the possibility that this file wasn't
+	 * process's status and write this to a trailer on the process's stderr.
+	 * However, we can't rule out the possibility that this trailer wasn't
 	 * written or was corrupted in some way.  If this method returns true,
 	 * then the process's exit status information is definitely known.
 	 * <bImportant:</b> don't call this unless the process is definitely not running.
@@ -102,9 +102,12 @@ public class RunProcessNativeExe {
 	}
 
 	/**
-	 * Clean up.
+	 * Clean up.  Since the native exe process wrapper is deleted,
+	 * the next call to {@link #getInstance(Properties)} will create
+	 * a new instance.
 	 */
 	public void cleanup() {
+		holder.clear(this);
 		if (tempDir != null) {
 			new DeleteDirectoryRecursively(tempDir).delete();
 		}
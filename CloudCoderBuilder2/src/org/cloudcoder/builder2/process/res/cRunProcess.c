@@ -116,10 +116,15 @@ static char **create_env(char **env)
 	}
 	char **new_env = malloc((n+3) * sizeof(char*));
 
-	// Copy current environment variables
+	// Copy current environment variables, except for the exit status
+	// token, which is only meant for the wrapper
+	int m = 0;
 	for (int i = 0; i < n; i++) {
-		new_env[i] = env[i];
+		if (strncmp(env[i], "CC_PROC_STAT_TOKEN=", 19) != 0) {
+			new_env[m++] = env[i];
+		}
 	}
+	n = m;
 
 	// Set LD_PRELOAD if requested
 	if (getenv("CC_LD_PRELOAD") != NULL) {
@@ -213,6 +218,10 @@ int main(int argc, char **argv, char **env)
 	} else {
 		// in the parent
 
+		// Keep a copy of stderr, so that the exit status
+		// can be reported once the child has exited
+		int status_fd = dup(2);
+
 		// Close stdin, stdout, and stderr
 		close(0);
 		close(1);
@@ -252,18 +261,24 @@ int main(int argc, char **argv, char **env)
 			how = "failed_to_execute";
 		}
 
-		// Create exit status file if requested
-		char *exit_status_file = getenv("CC_PROC_STAT_FILE");
-		if (exit_status_file != NULL) {
-			FILE *fd = fopen(exit_status_file, "w");
-			if (fd != NULL) {
-				fprintf(fd, "%s\n", how);
-				fprintf(fd, "%d\n", exitcode);
-				fclose(fd);
+		// Report exit status in a trailer on stderr if requested.
+		// If the builder has stopped reading stderr, the write
+		// should fail quietly rather than killing the wrapper.
+		char *token = getenv("CC_PROC_STAT_TOKEN");
+		if (token != NULL && status_fd >= 0) {
+			signal(SIGPIPE, SIG_IGN);
+			char buf[256];
+			int len = snprintf(buf, sizeof(buf), "\n%s %s %d\n", token, how, exitcode);
+			if (len > 0 && len < (int) sizeof(buf)) {
+				ssize_t rc = write(status_fd, buf, len);
+				(void) rc;
 			}
+			close(status_fd);
 		}
 
-		// Done!
-		exit(exitcode);
+		// Done! Use the shell convention for a process terminated
+		// by a signal, so the exit code can be decoded even if
+		// the trailer was not read.
+		exit(WIFSIGNALED(status) ? 128 + exitcode : exitcode);
 	}
 }
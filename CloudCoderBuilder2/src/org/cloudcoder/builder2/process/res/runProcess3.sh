@@ -49,6 +49,7 @@ exec 0>&-  # close the original stdin fd
 # and make it the "real" stdin fd.
 ( \
 	exec 0<&8; \
+	unset CC_PROC_STAT_TOKEN; \
 	for limit in ${CC_PROCESS_RESOURCE_LIMITS}; do ulimit $limit; done; \
 	if [ ! -z "${CC_LD_PRELOAD}" ]; then export LD_PRELOAD=${CC_LD_PRELOAD}; fi; \
 	if [ ! -z "${CC_EASYSANDBOX_HEAPSIZE}" ]; then export EASYSANDBOX_HEAPSIZE=${CC_EASYSANDBOX_HEAPSIZE}; fi; \
@@ -60,29 +61,32 @@ program_pid=$!
 wait $program_pid
 rc=$?
 
-if [ -z "${CC_PROC_STAT_FILE}" ]; then
-	# A process status file was not requested.
+if [ -z "${CC_PROC_STAT_TOKEN}" ]; then
+	# Exit status reporting was not requested.
 	exit $rc
 fi
 
-rm -f ${CC_PROC_STAT_FILE}
+# The program has exited, so if the builder has stopped reading
+# our stderr, writing the exit status trailer should fail quietly
+# rather than killing this script.
+trap '' PIPE
 
 if [ $rc -eq 127 ]; then
 	# Program could not be executed
-	echo "failed_to_execute" > ${CC_PROC_STAT_FILE}
-	echo "-1" >> ${CC_PROC_STAT_FILE}
-	exit $rc
-fi
-
-if [ $rc -lt 128 ]; then
+	how="failed_to_execute"
+	code="-1"
+elif [ $rc -lt 128 ]; then
 	# Normal process exit
-	echo "exited" > ${CC_PROC_STAT_FILE}
-	echo "$rc" >> ${CC_PROC_STAT_FILE}
-	exit $rc
+	how="exited"
+	code="$rc"
+else
+	# Process was terminated by a signal.
+	how="terminated_by_signal"
+	code=`expr $rc - 128`
 fi
 
-# Process was terminated by a signal.
-signo=`expr $rc - 128`
-echo "terminated_by_signal" > ${CC_PROC_STAT_FILE}
-echo "$signo" >> ${CC_PROC_STAT_FILE}
+# Report the exit status in a trailer on stderr, marked with the
+# token the builder gave us, so that it can be separated from the
+# program's own output.
+printf '\n%s %s %s\n' "${CC_PROC_STAT_TOKEN}" "$how" "$code" >&2
 exit $rc
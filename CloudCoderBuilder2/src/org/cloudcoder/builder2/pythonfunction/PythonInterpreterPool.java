@@ -0,0 +1,136 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.pythonfunction;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.python.core.PyString;
+import org.python.core.PyStringMap;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of pre-initialized {@link PythonInterpreter}s,
+ * so that testing a submission does not pay the cost of creating
+ * and warming up a new interpreter.  Each interpreter borrowed from
+ * the pool has a fresh local namespace, so no definitions are carried
+ * over from earlier submissions.  If the pool is empty, a new interpreter
+ * is created; interpreters released when the pool is full are discarded.
+ * 
+ * @author David Hovemeyer
+ */
+public class PythonInterpreterPool {
+	private static final Logger logger = LoggerFactory.getLogger(PythonInterpreterPool.class);
+	
+	/**
+	 * Property specifying how many idle interpreters are kept in the pool.
+	 * 0 disables pooling.
+	 */
+	public static final String POOL_SIZE_PROPERTY = "cloudcoder.builder2.python.interpreterPoolSize";
+	
+	/** Default pool size. */
+	public static final int DEFAULT_POOL_SIZE = 4;
+	
+	/**
+	 * Script executed to warm up each new interpreter: it imports
+	 * the modules used by the test scaffolding
+	 * (see {@link AddPythonFunctionScaffoldingBuildStep}).
+	 */
+	private static final String WARM_UP_SCRIPT = "import sys\nimport math\n";
+	
+	private final BlockingQueue<PythonInterpreter> idle;
+	
+	/**
+	 * Constructor.  The pool is filled with pre-initialized interpreters.
+	 * 
+	 * @param size the maximum number of idle interpreters (must be at least 1)
+	 */
+	public PythonInterpreterPool(int size) {
+		this.idle = new ArrayBlockingQueue<PythonInterpreter>(size);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < size; i++) {
+			idle.offer(createInterpreter());
+		}
+		logger.info("Created {} Python interpreters in {} ms", size, System.currentTimeMillis() - start);
+	}
+	
+	/**
+	 * Get the configured pool size.
+	 * 
+	 * @param config the Builder configuration properties
+	 * @return the pool size (0 if pooling is disabled)
+	 */
+	public static int getPoolSize(Properties config) {
+		String value = config.getProperty(POOL_SIZE_PROPERTY);
+		return value != null ? Integer.parseInt(value) : DEFAULT_POOL_SIZE;
+	}
+	
+	/**
+	 * Create and warm up a new interpreter.
+	 * 
+	 * @return the interpreter, with a fresh local namespace
+	 */
+	public static PythonInterpreter createInterpreter() {
+		PythonInterpreter terp = new PythonInterpreter();
+		terp.eval("True");
+		terp.exec(WARM_UP_SCRIPT);
+		reset(terp);
+		return terp;
+	}
+	
+	/**
+	 * Replace an interpreter's local namespace with a fresh one.
+	 * 
+	 * @param terp the interpreter
+	 */
+	public static void reset(PythonInterpreter terp) {
+		PyStringMap locals = new PyStringMap();
+		locals.__setitem__("__name__", new PyString("__main__"));
+		terp.setLocals(locals);
+	}
+	
+	/**
+	 * Borrow an interpreter from the pool.
+	 * 
+	 * @return an interpreter with a fresh local namespace
+	 */
+	public PythonInterpreter borrow() {
+		PythonInterpreter terp = idle.poll();
+		if (terp == null) {
+			logger.debug("Python interpreter pool is empty, creating a new interpreter");
+			return createInterpreter();
+		}
+		reset(terp);
+		return terp;
+	}
+	
+	/**
+	 * Return an interpreter to the pool.  Its local namespace is
+	 * discarded immediately, so that the submission's objects can be
+	 * garbage collected.
+	 * 
+	 * @param terp the interpreter
+	 */
+	public void release(PythonInterpreter terp) {
+		reset(terp);
+		idle.offer(terp);
+	}
+}
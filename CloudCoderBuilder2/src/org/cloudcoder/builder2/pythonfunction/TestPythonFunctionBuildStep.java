@@ -18,7 +18,6 @@
 
 package org.cloudcoder.builder2.pythonfunction;
 
-import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,6 +30,7 @@ import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
 import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.builder2.javasandbox.SandboxUtil;
 import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
@@ -38,7 +38,9 @@ import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.util.SingletonHolder;
 import org.cloudcoder.builder2.util.TestResultUtil;
+import org.python.core.PyCode;
 import org.python.core.PyException;
 import org.python.core.PyFunction;
 import org.python.core.PyObject;
@@ -58,24 +60,54 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 	public static final Logger logger = LoggerFactory.getLogger(TestPythonFunctionBuildStep.class);
 	public static final long TIMEOUT_LIMIT = 2000;
 	
+	/** File name used when compiling the scaffolded program (same as PythonInterpreter.execfile). */
+	private static final String PROGRAM_FILENAME = "<iostream>";
+	
 	static {
 		// Force preloading of classes needed by PythonTestCaseTask
 		new PythonUtil();
 	}
+	
+	private static final SingletonHolder<PythonInterpreterPool, Properties> interpreterPoolHolder = new SingletonHolder<PythonInterpreterPool, Properties>() {
+		@Override
+		protected PythonInterpreterPool onCreate(Properties config) {
+			return new PythonInterpreterPool(PythonInterpreterPool.getPoolSize(config));
+		}
+	};
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
-		SubmissionResult result = testSubmission(submission);
+		PythonInterpreterPool interpreterPool =
+				PythonInterpreterPool.getPoolSize(config) > 0 ? interpreterPoolHolder.get(config) : null;
+		PythonInterpreter terp = interpreterPool != null ? interpreterPool.borrow() : new PythonInterpreter();
+		
+		SubmissionResult result = testSubmission(submission, terp);
 		submission.addArtifact(result);
+		
+		// Don't reuse the interpreter if any test had to be killed,
+		// since it may have been left in an inconsistent state
+		if (interpreterPool != null && !hasTimeout(result)) {
+			interpreterPool.release(terp);
+		}
+	}
+	
+	private static boolean hasTimeout(SubmissionResult result) {
+		for (TestResult testResult : result.getTestResults()) {
+			if (testResult.getOutcome() == TestOutcome.FAILED_FROM_TIMEOUT) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
 	 * Test a {@link ProblemType#PYTHON_FUNCTION} submission.
 	 * 
 	 * @param submission the submission
+	 * @param terp       the {@link PythonInterpreter} to use
 	 * @return the {@link SubmissionResult}
 	 */
-	private SubmissionResult testSubmission(BuilderSubmission submission) {
+	private SubmissionResult testSubmission(BuilderSubmission submission, PythonInterpreter terp) {
 		final Problem problem = submission.requireArtifact(this.getClass(), Problem.class);
 		
 		ProgramSource[] programSourceList = submission.requireArtifact(TestPythonFunctionBuildStep.class, ProgramSource[].class);
@@ -91,26 +123,20 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 		TestCase[] testCaseList_ = submission.requireArtifact(TestPythonFunctionBuildStep.class, TestCase[].class);
 		List<TestCase> testCaseList= Arrays.asList(testCaseList_);
 
-		final byte[] sBytes = programText.getBytes();
-
-		// Check if the Python code is syntactically correct.
+		// Compile and execute the Python code once, which checks that it is
+		// syntactically correct and defines the test case functions.
 		// Because Python is a dynamic language, this will only find invalid syntax,
 		// unknown imports, and similar issues.
-		CompilationResult compres = compilePythonScript(problem, programSource);
+		// Note that our script will have all statements outside of a function
+		// stripped out (except for import statements) so no global variables
+		CompilationResult compres = compilePythonScript(problem, programSource, terp);
 		if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
 			compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
 			return new SubmissionResult(compres);
 		}
 		
-		// Create a Python interpreter, load True from the interpreter
-		// then execute our script.
-		// Note that our script will have all statements outside of a function
-		// stripped out (except for import statements) so no global variables
-		final PythonInterpreter terp=new PythonInterpreter();
+		// Load True from the interpreter
 		final PyObject True=terp.eval("True");
-		// won't throw an exception because we checked it at the top of
-		// the method to make sure the code will compile
-		terp.execfile(new ByteArrayInputStream(sBytes));
 
 		// Create PythonTestCaseTasks, one to execute each test case function
 		List<PythonTestCaseTask> tasks=new ArrayList<PythonTestCaseTask>();
@@ -157,20 +183,23 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 	}
 
 	/**
-	 * "Compile" scaffolded python code to detect syntax errors, missing imports, and
-	 * other "static" errors.
+	 * Compile scaffolded python code to detect syntax errors, and execute it
+	 * (in the interpreter's current namespace) to detect missing imports and
+	 * other "static" errors.  The code is compiled only once: if compilation
+	 * succeeds, the namespace contains the functions needed to run the tests.
 	 * 
 	 * @param problem       the {@link Problem}
 	 * @param programSource the scaffolded code
+	 * @param terp          the {@link PythonInterpreter} to use
 	 * @return the {@link CompilationResult}
 	 */
-	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource) {
+	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource, PythonInterpreter terp) {
 		String programText = programSource.getProgramText();
 		
 		try {
 		    logger.info("\n"+programText);
-			PythonInterpreter terp=new PythonInterpreter();
-			terp.execfile(new ByteArrayInputStream(programText.getBytes()));
+			PyCode code = terp.compile(programText, PROGRAM_FILENAME);
+			terp.exec(code);
 			
 			// Check to see if the test code actually defines the required
 			// function.  If it doesn't, report this as a failed compilation
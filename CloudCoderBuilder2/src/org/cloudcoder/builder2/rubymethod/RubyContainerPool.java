@@ -0,0 +1,251 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.rubymethod;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.jruby.embed.AttributeName;
+import org.jruby.embed.LocalContextScope;
+import org.jruby.embed.ScriptingContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of {@link ScriptingContainer}s, each with its own JRuby
+ * runtime, used to test {@link org.cloudcoder.app.shared.model.ProblemType#RUBY_METHOD}
+ * submissions.  Booting a runtime is far more expensive than running a
+ * typical submission, so runtimes are reused.
+ * 
+ * <p>A container is used by only one submission at a time.  When it is
+ * released, it is reset by removing the top-level methods, constants, global
+ * variables, instance variables of the top-level <code>main</code> object
+ * (which is <code>self</code> when tests run), and top-level class variables
+ * defined since the container was created.  A container
+ * is retired (and replaced in the background) rather than reused if</p>
+ * <ul>
+ * <li>a test had to be killed,</li>
+ * <li>the reset fails, or finds that methods were added to core classes, or</li>
+ * <li>it has been used {@link #MAX_USES_PROPERTY} times, which bounds any
+ *     changes that the reset cannot detect (such as redefined core methods).</li>
+ * </ul>
+ * 
+ * @author David Hovemeyer
+ */
+public class RubyContainerPool {
+	private static final Logger logger = LoggerFactory.getLogger(RubyContainerPool.class);
+	
+	/** Property specifying how many idle containers are kept in the pool. */
+	public static final String POOL_SIZE_PROPERTY = "cloudcoder.builder2.ruby.containerPoolSize";
+	
+	/** Property specifying how many submissions a container is used for before it is retired. */
+	public static final String MAX_USES_PROPERTY = "cloudcoder.builder2.ruby.containerMaxUses";
+	
+	/** Default pool size. */
+	public static final int DEFAULT_POOL_SIZE = 2;
+	
+	/** Default maximum number of uses. */
+	public static final int DEFAULT_MAX_USES = 100;
+	
+	/**
+	 * Script evaluated in each new container.  It records the initial
+	 * state of the runtime, and returns a proc which restores it, returning
+	 * true if no methods were added to core classes.
+	 */
+	private static final String RESET_SCRIPT =
+		"lambda do\n" +
+		"  core = [BasicObject, Object, Module, Class, Kernel, Comparable, Enumerable, NilClass, TrueClass, FalseClass,\n" +
+		"          Numeric, Integer, Fixnum, Bignum, Float, String, Symbol, Array, Hash, Range]\n" +
+		"  count = lambda { core.map { |m| m.instance_methods(false).size + m.private_instance_methods(false).size + m.singleton_methods(false).size } }\n" +
+		"  base_methods = Object.private_instance_methods(false) + Object.instance_methods(false)\n" +
+		"  base_consts = Object.constants\n" +
+		"  base_globals = global_variables\n" +
+		"  main = self\n" +
+		"  base_ivars = main.instance_variables\n" +
+		"  base_cvars = Object.class_variables\n" +
+		"  base_count = count.call\n" +
+		"  lambda do\n" +
+		"    (Object.private_instance_methods(false) + Object.instance_methods(false) - base_methods).each { |m| Object.send(:remove_method, m) }\n" +
+		"    (Object.constants - base_consts).each { |c| Object.send(:remove_const, c) }\n" +
+		"    (global_variables - base_globals).each { |g| eval(\"#{g} = nil\") }\n" +
+		"    (main.instance_variables - base_ivars).each { |v| main.send(:remove_instance_variable, v) }\n" +
+		"    (Object.class_variables - base_cvars).each { |v| Object.send(:remove_class_variable, v) }\n" +
+		"    count.call == base_count\n" +
+		"  end\n" +
+		"end.call\n";
+	
+	/**
+	 * A pooled {@link ScriptingContainer}.
+	 */
+	public static class PooledContainer {
+		private final ScriptingContainer container;
+		private final Object resetProc;
+		private int numUses;
+		
+		private PooledContainer(ScriptingContainer container, Object resetProc) {
+			this.container = container;
+			this.resetProc = resetProc;
+		}
+		
+		/**
+		 * @return the {@link ScriptingContainer}
+		 */
+		public ScriptingContainer getContainer() {
+			return container;
+		}
+		
+		private boolean reset() {
+			try {
+				return Boolean.TRUE.equals(container.callMethod(resetProc, "call"));
+			} catch (RuntimeException e) {
+				logger.info("Could not reset Ruby container", e);
+				return false;
+			}
+		}
+	}
+	
+	private final int maxUses;
+	private final BlockingQueue<PooledContainer> idle;
+	private final ExecutorService replacementExecutor;
+	
+	/**
+	 * Constructor.  The pool is filled with new containers.
+	 * 
+	 * @param size     the maximum number of idle containers (must be at least 1)
+	 * @param maxUses  the number of submissions a container is used for before it is retired
+	 */
+	public RubyContainerPool(int size, int maxUses) {
+		this.maxUses = maxUses;
+		this.idle = new ArrayBlockingQueue<PooledContainer>(size);
+		this.replacementExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "RubyContainerPool");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < size; i++) {
+			idle.offer(createContainer());
+		}
+		logger.info("Created {} Ruby containers in {} ms", size, System.currentTimeMillis() - start);
+	}
+	
+	/**
+	 * Create a pool using the pool size and maximum number of uses
+	 * specified in the Builder configuration properties.
+	 * 
+	 * @param config the Builder configuration properties
+	 * @return the pool
+	 */
+	public static RubyContainerPool create(Properties config) {
+		return new RubyContainerPool(
+				Math.max(1, getIntProperty(config, POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE)),
+				Math.max(1, getIntProperty(config, MAX_USES_PROPERTY, DEFAULT_MAX_USES)));
+	}
+	
+	private static int getIntProperty(Properties config, String propName, int defaultValue) {
+		String value = config.getProperty(propName);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+	
+	private static PooledContainer createContainer() {
+		// Each SINGLETHREAD container has its own runtime (a CONCURRENT
+		// container would share the global runtime with all other containers).
+		// A SINGLETHREAD container also has a single, unsynchronized variable
+		// map, which every method call injects into and retrieves from when
+		// variable sharing is enabled.  Since the threads executing tests
+		// call methods concurrently, variable sharing must be disabled.
+		ScriptingContainer container = new ScriptingContainer(LocalContextScope.SINGLETHREAD);
+		container.setAttribute(AttributeName.SHARING_VARIABLES, false);
+		container.runScriptlet("true");
+		PooledContainer pooled = new PooledContainer(container, container.runScriptlet(RESET_SCRIPT));
+		
+		// Calling the reset proc preloads the classes needed to call
+		// methods from the threads executing tests
+		pooled.reset();
+		
+		return pooled;
+	}
+	
+	/**
+	 * Borrow a container from the pool.  If the pool is empty,
+	 * a new container is created.
+	 * 
+	 * @return the container
+	 */
+	public PooledContainer borrow() {
+		PooledContainer pooled = idle.poll();
+		if (pooled == null) {
+			logger.info("Ruby container pool is empty, creating a new container");
+			pooled = createContainer();
+		}
+		return pooled;
+	}
+	
+	/**
+	 * Return a container to the pool.
+	 * 
+	 * @param pooled   the container
+	 * @param reusable false if the container must not be reused: e.g.,
+	 *                 because a test executing in it was killed
+	 */
+	public void release(PooledContainer pooled, boolean reusable) {
+		pooled.numUses++;
+		if (reusable && pooled.numUses < maxUses && pooled.reset() && idle.offer(pooled)) {
+			return;
+		}
+		
+		logger.info("Retiring Ruby container after {} use(s)", pooled.numUses);
+		retire(pooled);
+	}
+	
+	private void retire(final PooledContainer pooled) {
+		// Terminating the old runtime and booting a new one are slow,
+		// so do them in the background
+		replacementExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					pooled.container.terminate();
+				} catch (RuntimeException e) {
+					logger.warn("Error terminating Ruby container", e);
+				}
+				try {
+					if (idle.remainingCapacity() > 0) {
+						idle.offer(createContainer());
+					}
+				} catch (RuntimeException e) {
+					logger.error("Error creating replacement Ruby container", e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return the number of idle containers in the pool
+	 */
+	public int getNumIdle() {
+		return idle.size();
+	}
+}
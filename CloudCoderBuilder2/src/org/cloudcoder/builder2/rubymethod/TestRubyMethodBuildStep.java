@@ -27,6 +27,7 @@ import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
 import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.builder2.javasandbox.SandboxUtil;
 import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
@@ -35,9 +36,9 @@ import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.ArrayUtil;
+import org.cloudcoder.builder2.util.SingletonHolder;
 import org.cloudcoder.builder2.util.TestResultUtil;
 import org.jruby.embed.EvalFailedException;
-import org.jruby.embed.LocalContextScope;
 import org.jruby.embed.ParseFailedException;
 import org.jruby.embed.ScriptingContainer;
 import org.jruby.exceptions.RaiseException;
@@ -58,20 +59,40 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 	
 	public static final long TIMEOUT_LIMIT = 5000;
 	
-	private static ScriptingContainer container;
-	
 	// Preload classes that will be needed to test the Ruby submission in the
-	// IsolatedTask, and create the ScriptingContainer.
+	// IsolatedTask.
 	static {
 		TestResultUtil.createResultForTimeout();
-		//TODO cannot execute any code with ruby before redirecting
-		container = new ScriptingContainer(LocalContextScope.CONCURRENT);
-		container.runScriptlet("true");
-		new RubyTester(container, new Object(), new Problem(), new TestCase());
+		new RubyTester(null, new Object(), new Problem(), new TestCase());
 	}
+	
+	private static final SingletonHolder<RubyContainerPool, Properties> containerPoolHolder = new SingletonHolder<RubyContainerPool, Properties>() {
+		@Override
+		protected RubyContainerPool onCreate(Properties config) {
+			return RubyContainerPool.create(config);
+		}
+	};
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
+		RubyContainerPool containerPool = containerPoolHolder.get(config);
+		RubyContainerPool.PooledContainer pooled = containerPool.borrow();
+		boolean reusable = false;
+		try {
+			reusable = testSubmission(submission, pooled.getContainer());
+		} finally {
+			containerPool.release(pooled, reusable);
+		}
+	}
+
+	/**
+	 * Test the submission using the given {@link ScriptingContainer}.
+	 * 
+	 * @param submission the submission
+	 * @param container  the {@link ScriptingContainer}
+	 * @return true if the container can be reused, false if a test was killed
+	 */
+	private boolean testSubmission(BuilderSubmission submission, ScriptingContainer container) {
 		ProgramSource[] programSourceList = submission.requireArtifact(this.getClass(), ProgramSource[].class);
 		if (programSourceList.length != 1) {
 			throw new InternalBuilderException(this.getClass(), "Only one source file is expected");
@@ -96,17 +117,17 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		} catch (ParseFailedException e) {
 			CompilerDiagnostic diag = createRubyCompilerDiagnostic(e);
 			failedCompilation(submission, diag);
-			return;
+			return true;
 		} catch (EvalFailedException e) {
 			// >>>>>>>>>>>>> HERE <<<<<<<<<<<<<<<<
 			CompilerDiagnostic diag = createRubyCompilerDiagnostic(e);
 			failedCompilation(submission, diag);
-			return;
+			return true;
 		} catch (RuntimeException e) {
 			logger.info("Unexpected ruby compilation error", e);
 			CompilerDiagnostic diag = new CompilerDiagnostic(1, 1, 1, 1, "Unexpected compilation error");
 			failedCompilation(submission, diag);
-			return;
+			return true;
 		}
 		
 		// Create a RubyTester in an IsolatedTask for each TestCase
@@ -143,6 +164,13 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 
 		// Add array of TestResults as submission artifact
 		submission.addArtifact(ArrayUtil.toArray(testResults, TestResult.class));
+		
+		for (TestResult testResult : testResults) {
+			if (testResult.getOutcome() == TestOutcome.FAILED_FROM_TIMEOUT) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private void failedCompilation(BuilderSubmission submission,
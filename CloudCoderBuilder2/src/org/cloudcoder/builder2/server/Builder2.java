@@ -28,6 +28,7 @@ import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.builder2.model.BuildStepTimings;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
@@ -70,6 +71,7 @@ public class Builder2 {
 	 */
 	public SubmissionResult testSubmission(Problem problem, List<TestCase> testCaseList, String programText) {
 	   SubmissionResult result;
+	   BuildStepTimings timings = new BuildStepTimings();
 	   try {
 		  // Based on the ProblemType, find a Tester
 		  Tester tester = TesterFactory.getTester(problem.getProblemType());
@@ -82,6 +84,7 @@ public class Builder2 {
 		  submission.addArtifact(problem);
 		  submission.addArtifact(ArrayUtil.toArray(testCaseList, TestCase.class));
 		  submission.addArtifact(new ProgramSource[]{new ProgramSource(programText)});
+		  submission.addArtifact(timings);
 
 		  try {
 			 // Build and test
@@ -97,7 +100,10 @@ public class Builder2 {
 			 submission.executeAllSubmissionResultHooks();
 		  } finally {
 			 // Clean up all temporary resources created during building/testing
+			 long startWallNanos = BuildStepTimings.getWallTimeNanos();
+			 long startCpuNanos = BuildStepTimings.getCpuTimeNanos();
 			 submission.executeAllCleanupActions();
+			 timings.record("cleanup", startWallNanos, startCpuNanos);
 		  }
 	   } catch (Throwable e) {
 		  CompilationResult compres = new CompilationResult(CompilationOutcome.BUILDER_ERROR);
@@ -105,6 +111,9 @@ public class Builder2 {
 		  result = new SubmissionResult(compres);
 		  result.setTestResults(new TestResult[0]);
 	   }
+	   
+	   // Report how long each build step took (diagnostic only)
+	   timings.addToSubmissionResult(result);
 
 	   logger.info("Sending SubmissionResult back to server");
 	   for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
 import org.cloudcoder.daemon.IDaemon;
@@ -40,6 +42,7 @@ public class Builder2Daemon implements IDaemon {
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	private List<BuilderAndThread> builderAndThreadList;
+	private ExecutorService executor;
 	private Properties config;
 	private File instanceTempDir;
 
@@ -76,6 +79,16 @@ public class Builder2Daemon implements IDaemon {
 			return Integer.parseInt(config.getProperty("cloudcoder.submitsvc.oop.numThreads", "2"));
 		}
 		
+		public int getNumTestThreads() {
+			return Integer.parseInt(config.getProperty("cloudcoder.builder2.numTestThreads",
+					String.valueOf(Runtime.getRuntime().availableProcessors())));
+		}
+		
+		public int getProblemCacheSize() {
+			return Integer.parseInt(config.getProperty("cloudcoder.builder2.problemCacheSize",
+					String.valueOf(ProblemAndTestCaseCache.DEFAULT_MAX_SIZE)));
+		}
+		
 		public boolean useSSL() {
 			return Boolean.parseBoolean(config.getProperty("cloudcoder.submitsvc.oop.ssl.useSSL", "true"));
 		}
@@ -153,11 +166,27 @@ public class Builder2Daemon implements IDaemon {
 		logger.info("appHost={}", options.getAppHost());
 		logger.info("appPort={}", options.getAppPort());
 		logger.info("numThreads={}", options.getNumThreads());
+		logger.info("numTestThreads={}", options.getNumTestThreads());
+		logger.info("problemCacheSize={}", options.getProblemCacheSize());
+		
+		// All Builder threads share a single cache of Problems and TestCases,
+		// and a single executor to build and test submissions.  Each connection
+		// to the webapp may have as many submissions in flight as there are
+		// executor threads.
+		ProblemAndTestCaseCache problemCache = new ProblemAndTestCaseCache(options.getProblemCacheSize());
+		this.executor = Executors.newFixedThreadPool(options.getNumTestThreads());
+		
+		// Test canned submissions on each executor thread, so the first
+		// real submissions aren't slowed down by cold compilers and interpreters
+		if (WarmUp.isEnabled(config)) {
+			WarmUp.run(new Builder2(config), config, executor, options.getNumTestThreads());
+		}
 		
 		// Start Builder threads
 		this.builderAndThreadList = new ArrayList<BuilderAndThread>();
 		for (int i = 0; i < options.getNumThreads(); i++) {
-			Builder2Server builder_ = new Builder2Server(webappSocketFactory, config);
+			Builder2Server builder_ = new Builder2Server(webappSocketFactory, problemCache,
+					executor, options.getNumTestThreads(), config);
 			Thread thread_ = new Thread(builder_);
 		
 			BuilderAndThread builderAndThread = new BuilderAndThread(builder_, thread_);
@@ -191,6 +220,9 @@ public class Builder2Daemon implements IDaemon {
 				e.printStackTrace();
 			}
 		}
+		
+		// All submissions have been tested, so the executor can be shut down
+		executor.shutdown();
 
 		// Perform global cleanup.
 		Global.cleanup(config);
@@ -20,15 +20,23 @@ package org.cloudcoder.builder2.server;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.cloudcoder.app.shared.model.wire.Message;
+import org.cloudcoder.app.shared.model.wire.MessageChannel;
+import org.cloudcoder.app.shared.model.wire.MessageType;
 import org.cloudcoder.daemon.IOUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +45,9 @@ import org.slf4j.LoggerFactory;
  * A "Builder" server loop.  It runs separately from the CloudCoder server,
  * and waits to receive submissions (Problem and program text).
  * For each submission received, it compiles it, tests it,
- * and reports back a SubmissionResult.
+ * and reports back a SubmissionResult.  Several submissions may be
+ * in flight on the connection at once: each is identified by a correlation
+ * id, and is built and tested by a shared executor.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
@@ -45,7 +55,7 @@ import org.slf4j.LoggerFactory;
 public class Builder2Server implements Runnable {
 	/**
 	 * The maximum amount of time that the watchdog thread will
-	 * allow a wait for a problem id or keepalive signal from 
+	 * allow a wait for a problem hash or keepalive signal from 
 	 * the webapp.  If the wait becomes longer then we will
 	 * assume that the connection between the builder and
 	 * the webapp has been broken and the watchdog will force
@@ -75,7 +85,7 @@ public class Builder2Server implements Runnable {
 					long waitTime = System.currentTimeMillis() - stateData.getTs();
 					if (waitTime > MAX_WAIT_MS) {
 						// The server loop has waited too long to receive the
-						// problem id / keepalive signal.  Force a reconnect.
+						// problem hash / keepalive signal.  Force a reconnect.
 						logger.warn("Watchdog: {} ms without keepalive, forcing reconnect", waitTime);
 						connectionManager.forceClose();
 					}
@@ -102,7 +112,7 @@ public class Builder2Server implements Runnable {
 		CONNECTED,
 		/** Server loop is waiting for a keepalive signal from the webapp. */
 		WAITING_FOR_KEEPALIVE,
-		/** Actively working on building/testing a submission. */
+		/** Actively handling a message from the webapp. */
 		WORKING;
 
 		/**
@@ -165,25 +175,50 @@ public class Builder2Server implements Runnable {
 	 */
 	private static class Connection {
 		private ISocket socket;
-		private ObjectInputStream in;
-		private ObjectOutputStream out;
+		private MessageChannel channel;
+		private Map<Integer, PendingSubmission> pendingSubmissions;
 		
-		public Connection(ISocket socket, ObjectInputStream in, ObjectOutputStream out) {
+		public Connection(ISocket socket, MessageChannel channel) {
 			this.socket = socket;
-			this.in = in;
-			this.out = out;
+			this.channel = channel;
+			this.pendingSubmissions = new HashMap<Integer, PendingSubmission>();
 		}
 
 		public ISocket getSocket() {
 			return socket;
 		}
 		
-		public ObjectInputStream getIn() {
-			return in;
+		public MessageChannel getChannel() {
+			return channel;
 		}
 		
-		public ObjectOutputStream getOut() {
-			return out;
+		/**
+		 * Get the submissions that have been partially received.
+		 * Only accessed by the server loop thread.
+		 * 
+		 * @return map of correlation ids to {@link PendingSubmission}s
+		 */
+		public Map<Integer, PendingSubmission> getPendingSubmissions() {
+			return pendingSubmissions;
+		}
+	}
+	
+	/**
+	 * A submission that is being received from the webapp.
+	 * It is ready to be tested once both the Problem/TestCases
+	 * and the program text have arrived.
+	 */
+	private static class PendingSubmission {
+		final String problemHash;
+		ProblemAndTestCaseList problemAndTestCaseList;
+		String programText;
+		
+		public PendingSubmission(String problemHash) {
+			this.problemHash = problemHash;
+		}
+		
+		public boolean isComplete() {
+			return problemAndTestCaseList != null && programText != null;
 		}
 	}
 	
@@ -229,11 +264,22 @@ public class Builder2Server implements Runnable {
 		public void forceClose() {
 			synchronized (lock) {
 				if (conn != null) {
-					Connection c = conn;
+					forceClose(conn);
+				}
+			}
+		}
+
+		/**
+		 * Forcibly close given connection if it is still the current connection.
+		 * 
+		 * @param c the {@link Connection} to close
+		 */
+		public void forceClose(Connection c) {
+			synchronized (lock) {
+				if (conn == c) {
 					conn = null;
 					IOUtil.closeQuietly(c.getSocket());
-					IOUtil.closeQuietly(c.getIn());
-					IOUtil.closeQuietly(c.getOut());
+					c.getChannel().close();
 				}
 			}
 		}
@@ -244,8 +290,16 @@ public class Builder2Server implements Runnable {
 	private NoConnectTimer noConnectTimer;
 	private WebappSocketFactory webappSocketFactory;
 	private Builder2 builder2;
+	private ProblemAndTestCaseCache problemCache;
+	private ExecutorService executor;
+	private int capacity;
 	private ConnectionManager connectionManager;
 	
+	// Number of submissions handed to the executor that have not been
+	// sent back to the webapp yet
+	private Object inFlightLock = new Object();
+	private int numInFlight;
+	
 	private Thread watchdogThread;
 
 	/**
@@ -253,14 +307,24 @@ public class Builder2Server implements Runnable {
 	 * 
 	 * @param webappSocketFactory the {@link WebappSocketFactory} that will create socket
 	 *                            connections to the webapp
+	 * @param problemCache        the {@link ProblemAndTestCaseCache} (may be shared with
+	 *                            other server loops)
+	 * @param executor            the ExecutorService that will build and test submissions
+	 *                            (may be shared with other server loops)
+	 * @param capacity            maximum number of submissions the webapp may have in flight
+	 *                            on this server loop's connection
 	 * @param config              configuration properties: i.e., properties from cloudcoder.properties file
 	 */
-	public Builder2Server(WebappSocketFactory webappSocketFactory, Properties config) {
+	public Builder2Server(WebappSocketFactory webappSocketFactory, ProblemAndTestCaseCache problemCache,
+			ExecutorService executor, int capacity, Properties config) {
 		this.shutdownRequested = false;
 		this.stateManager = new StateManager();
 		this.noConnectTimer = new NoConnectTimer();
 		this.webappSocketFactory = webappSocketFactory;
 		this.builder2 = new Builder2(config);
+		this.problemCache = problemCache;
+		this.executor = executor;
+		this.capacity = capacity;
 		this.connectionManager = new ConnectionManager();
 	}
 
@@ -281,75 +345,161 @@ public class Builder2Server implements Runnable {
 	}
 
 	/**
-	 * Attempt to read one submission, compile and test it, and send the
-	 * result back to the webapp.
+	 * Attempt to read one message from the webapp and handle it.
+	 * Once all of the parts of a submission have been received,
+	 * it is handed to the executor to be compiled and tested,
+	 * and the result is sent back to the webapp when testing completes.
 	 */
 	protected void runOnce() {
+		Connection conn = null;
 		try {
 			if (!connectionManager.isConnected()) {
 				attemptToConnectToServer();
 				return;
 			}
-			Connection conn = connectionManager.getConnection();
+			conn = connectionManager.getConnection();
+			if (conn == null) {
+				// Connection was closed by the watchdog or a failed send
+				return;
+			}
+			MessageChannel channel = conn.getChannel();
 
 			// This is a critical point: the server loop will block waiting
-			// for a problem id / keepalive signal.  If there are connection
+			// for a message / keepalive signal.  If there are connection
 			// issues, this might block indefinitely.  Entering the
 			// WAITING_FOR_KEEPALIVE state lets the watchdog thread know
 			// that the connection should be forcibly closed if the server
 			// loop gets hung up here.
 			stateManager.setState(State.WAITING_FOR_KEEPALIVE);
-			Integer problemId = safeReadObject(conn.getIn());
+			Message message = channel.receive();
 			stateManager.setState(State.WORKING);
 
-			// The CloudCoder app will send us a negative problem id as
-			// a keepalive signal when there are no submissions that need building/testing.
-			// We can just ignore these.
-			if (problemId < 0) {
-				stateManager.setState(State.CONNECTED);
-				return;
-			}
+			Map<Integer, PendingSubmission> pendingSubmissions = conn.getPendingSubmissions();
+			int correlationId = message.getCorrelationId();
+			PendingSubmission pending;
 
-			// The protocol allows the builder to cache Problems and TestCases by their problem id,
-			// but this is a very bad idea, since the Problem and TestCases could change on the
-			// webapp side (for example, if an instructor is editing an exercise).
-			// For this reason, we ALWAYS claim not to have the Problem/TestCases, forcing
-			// the webapp to send the most up to date versions.  It's a small amount
-			// of data, and it's important for correct behavior.
+			switch (message.getType()) {
+			case KEEPALIVE:
+				// The CloudCoder app will send us a keepalive message
+				// when it has not sent anything else for a while.
+				// We can just ignore these.
+				break;
 
-			// Tell the webapp we don't have this Problem/TestCases
-			conn.getOut().writeObject(Boolean.FALSE);
-			conn.getOut().flush();
+			case PROBLEM_HASH:
+				// The webapp identifies the Problem and TestCases by a hash of their
+				// content rather than by problem id.  If an instructor edits an exercise,
+				// its hash changes, so a cached copy can never be stale.
+				pending = new PendingSubmission(BinaryConversion.decodeString(message.getPayload()));
+				pending.problemAndTestCaseList = problemCache.get(pending.problemHash);
+				pendingSubmissions.put(correlationId, pending);
+
+				// Tell the webapp whether we have this Problem/TestCases
+				channel.send(MessageType.HAVE_PROBLEM, correlationId,
+						BinaryConversion.encodeBoolean(pending.problemAndTestCaseList != null));
+				channel.flush();
+				break;
+
+			case PROBLEM_AND_TEST_CASES:
+				// Receive the Problem and TestCases, and cache them
+				pending = getPendingSubmission(pendingSubmissions, message);
+				Problem problem = new Problem();
+				List<TestCase> testCaseList = new ArrayList<TestCase>();
+				BinaryConversion.decodeProblemAndTestCases(message.getPayload(), problem, testCaseList);
+				ProblemAndTestCaseList problemAndTestCaseList = new ProblemAndTestCaseList();
+				problemAndTestCaseList.setProblem(problem);
+				problemAndTestCaseList.setTestCaseList(testCaseList);
+				problemCache.put(pending.problemHash, problemAndTestCaseList);
+				pending.problemAndTestCaseList = problemAndTestCaseList;
+				break;
 
-			// Receive the Problem and TestCases
-			Problem problem = safeReadObject(conn.getIn());
-			List<TestCase> testCaseList = safeReadObject(conn.getIn());
+			case PROGRAM_TEXT:
+				pending = getPendingSubmission(pendingSubmissions, message);
+				pending.programText = BinaryConversion.decodeString(message.getPayload());
+				break;
 
-			// read program text
-			String programText = safeReadObject(conn.getIn());
+			default:
+				throw new IOException("Unexpected " + message.getType() + " message from webapp");
+			}
 
-			// Test the submission!
-			SubmissionResult result = builder2.testSubmission(problem, testCaseList, programText);
+			// If the submission has been received completely, test it!
+			pending = pendingSubmissions.get(correlationId);
+			if (pending != null && pending.isComplete()) {
+				pendingSubmissions.remove(correlationId);
+				if (!shutdownRequested) {
+					dispatch(conn, correlationId, pending);
+				}
+				// If a shutdown has been requested, the submission is dropped:
+				// the webapp will re-queue it when the connection is closed.
+			}
 
-			// Send the SubmissionResult back to the webapp
-			conn.getOut().writeObject(result);
-			conn.getOut().flush();
-			
 			// Everything went well: return to the CONNECTED state
 			stateManager.setState(State.CONNECTED);
 		} catch (IOException e) {
 			// Quite possibly, this is a routine shutdown of the CloudCoder server.
 			// We'll try connecting again soon.
 			logger.error("Error communicating with server", e);
-			connectionManager.forceClose();
-			stateManager.setState(State.NOT_CONNECTED);
-		} catch (ClassNotFoundException e) {
-			// This should not happen!
-			logger.error("Unexpected ClassNotFoundException, shutting down builder thread", e);
-			connectionManager.forceClose();
+			if (conn != null) {
+				connectionManager.forceClose(conn);
+			}
 			stateManager.setState(State.NOT_CONNECTED);
-			shutdown();
-			throw new IllegalStateException("Class not found reading message", e);
+		}
+	}
+
+	private PendingSubmission getPendingSubmission(Map<Integer, PendingSubmission> pendingSubmissions, Message message) throws IOException {
+		PendingSubmission pending = pendingSubmissions.get(message.getCorrelationId());
+		if (pending == null) {
+			throw new IOException("Received " + message.getType() + " message for unknown submission " + message.getCorrelationId());
+		}
+		return pending;
+	}
+
+	/**
+	 * Hand a completely-received submission to the executor.
+	 * When testing completes, the SubmissionResult is sent back to the
+	 * webapp on the connection the submission was received on.
+	 * 
+	 * @param conn           the {@link Connection}
+	 * @param correlationId  the submission's correlation id
+	 * @param pending        the {@link PendingSubmission}
+	 */
+	private void dispatch(final Connection conn, final int correlationId, final PendingSubmission pending) {
+		synchronized (inFlightLock) {
+			numInFlight++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						// Test the submission!
+						SubmissionResult result = builder2.testSubmission(
+								pending.problemAndTestCaseList.getProblem(),
+								pending.problemAndTestCaseList.getTestCaseData(),
+								pending.programText);
+
+						// Send the SubmissionResult back to the webapp
+						MessageChannel channel = conn.getChannel();
+						channel.send(MessageType.SUBMISSION_RESULT, correlationId, BinaryConversion.encodeSubmissionResult(result));
+						channel.flush();
+					} catch (IOException e) {
+						// The server loop will notice the broken connection and reconnect,
+						// and the webapp will re-queue the submission.
+						logger.error("Error sending submission result to server", e);
+						connectionManager.forceClose(conn);
+					} finally {
+						synchronized (inFlightLock) {
+							numInFlight--;
+							inFlightLock.notifyAll();
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.warn("Executor rejected submission {}: shutting down?", correlationId);
+			synchronized (inFlightLock) {
+				numInFlight--;
+				inFlightLock.notifyAll();
+			}
 		}
 	}
 
@@ -359,8 +509,7 @@ public class Builder2Server implements Runnable {
 
 	public void attemptToConnectToServer() {
 		ISocket socket = null;
-		ObjectInputStream in = null;
-		ObjectOutputStream out = null;
+		MessageChannel channel = null;
 		
 		try {
 			try {
@@ -371,16 +520,19 @@ public class Builder2Server implements Runnable {
 				stateManager.setState(State.NOT_CONNECTED);
 				throw new RuntimeException(e);
 			}
-			in = new ObjectInputStream(socket.getInputStream());
-			out = new ObjectOutputStream(socket.getOutputStream());
+			channel = new MessageChannel(socket.getInputStream(), socket.getOutputStream());
+			channel.exchangeHeaders();
+			channel.send(MessageType.CAPACITY, BinaryConversion.encodeInt(capacity));
+			channel.flush();
 			logger.info("Connected!");
 			stateManager.setState(State.CONNECTED);
 			noConnectTimer.connected();
-			connectionManager.setConnection(new Connection(socket, in, out));
+			connectionManager.setConnection(new Connection(socket, channel));
 		} catch (IOException e) {
 			IOUtil.closeQuietly(socket);
-			IOUtil.closeQuietly(in);
-			IOUtil.closeQuietly(out);
+			if (channel != null) {
+				channel.close();
+			}
 			logger.info("Failed attempt to connect to server at {}", System.currentTimeMillis());
 			stateManager.setState(State.NOT_CONNECTED);
 			noConnectTimer.notConnected(e);
@@ -393,15 +545,6 @@ public class Builder2Server implements Runnable {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private<E> E safeReadObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-		Object o = in.readObject();
-		if (o == null) {
-			throw new IOException("Could not read!");
-		}
-		return (E) o;
-	}
-
 	public void shutdown() {
 		shutdownRequested = true;
 
@@ -414,13 +557,26 @@ public class Builder2Server implements Runnable {
 		}
 
 		// Shut down the server loop.
-		// If building/testing is in progress, wait for it to finish.
+		// If a message is being handled, wait for that to finish.
 		while (!stateManager.getStateData().getState().allowShutdown()) {
-			logger.info("shutdown(): waiting for building/testing of current submission to complete");
+			logger.info("shutdown(): waiting for server loop to finish handling current message");
 			try {
 				Thread.sleep(2000L);
 			} catch (InterruptedException e) {
-				logger.error("Interrupted waiting for server loop to finish current submission");
+				logger.error("Interrupted waiting for server loop to finish current message");
+			}
+		}
+		
+		// If building/testing is in progress, wait for it to finish
+		// so that the results can be sent back to the webapp.
+		synchronized (inFlightLock) {
+			while (numInFlight > 0) {
+				logger.info("shutdown(): waiting for building/testing of {} submission(s) to complete", numInFlight);
+				try {
+					inFlightLock.wait(2000L);
+				} catch (InterruptedException e) {
+					logger.error("Interrupted waiting for submissions to complete");
+				}
 			}
 		}
 		
@@ -22,6 +22,7 @@ import java.util.Properties;
 
 import org.cloudcoder.builder2.csandbox.EasySandboxSharedLibrary;
 import org.cloudcoder.builder2.extlib.ExternalLibraryCache;
+import org.cloudcoder.builder2.javamethod.ForkedJavaMethodTestExecutor;
 import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
 import org.cloudcoder.builder2.process.RunProcessNativeExe;
 import org.cloudcoder.builder2.pythonfunction.PythonKillableTaskManager;
@@ -43,6 +44,11 @@ public class Global {
 		// Install KillableTaskManager's security manager
 		JVMKillableTaskManager.installSecurityManager();
 		PythonKillableTaskManager.installSecurityManager();
+		
+		// Start the child JVMs for testing Java submissions, if enabled
+		if (ForkedJavaMethodTestExecutor.isEnabled(config)) {
+			ForkedJavaMethodTestExecutor.getPool(config);
+		}
 	}
 	
 	/**
@@ -62,5 +68,10 @@ public class Global {
 		
 		// Delete directories/files used by the RunProcessNativeExe
 		RunProcessNativeExe.getInstance(config).cleanup();
+		
+		// Kill child JVMs used for testing Java submissions
+		if (ForkedJavaMethodTestExecutor.isPoolCreated()) {
+			ForkedJavaMethodTestExecutor.getPool(config).shutdown();
+		}
 	}
 }
@@ -0,0 +1,100 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+
+/**
+ * Bounded LRU cache of {@link ProblemAndTestCaseList}s received from
+ * the webapp, keyed by the content hash computed by
+ * {@link HashProblemAndTestCaseData#computeExact()}.  Because the key is derived from
+ * the content of the problem and test cases (rather than the problem id),
+ * an exercise edited by an instructor will have a different hash,
+ * and will therefore never be served stale from the cache.
+ * The cache is shared by all of the {@link Builder2Server} threads
+ * in a Builder process, and is thread-safe.
+ *
+ * @author David Hovemeyer
+ */
+public class ProblemAndTestCaseCache {
+	/** Default maximum number of cached problems. */
+	public static final int DEFAULT_MAX_SIZE = 64;
+
+	private final int maxSize;
+	private final LinkedHashMap<String, ProblemAndTestCaseList> map;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize maximum number of problems to cache
+	 */
+	public ProblemAndTestCaseCache(final int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1");
+		}
+		this.maxSize = maxSize;
+		this.map = new LinkedHashMap<String, ProblemAndTestCaseList>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ProblemAndTestCaseList> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the maximum number of problems that will be cached
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Look up a cached problem and its test cases.
+	 *
+	 * @param hash the content hash
+	 * @return the cached {@link ProblemAndTestCaseList}, or null if there is
+	 *         no problem with the given hash in the cache
+	 */
+	public synchronized ProblemAndTestCaseList get(String hash) {
+		return map.get(hash);
+	}
+
+	/**
+	 * Add a problem and its test cases to the cache.
+	 * If the cache is full, the least-recently-used entry is evicted.
+	 *
+	 * @param hash                   the content hash
+	 * @param problemAndTestCaseList the {@link ProblemAndTestCaseList}
+	 */
+	public synchronized void put(String hash, ProblemAndTestCaseList problemAndTestCaseList) {
+		map.put(hash, problemAndTestCaseList);
+	}
+
+	/**
+	 * @return number of problems currently in the cache
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+}
@@ -0,0 +1,259 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.json.JSONConversion;
+import org.cloudcoder.app.shared.model.json.ReflectionFactory;
+import org.cloudcoder.builder2.javacompiler.InMemoryJavaCompiler;
+import org.cloudcoder.builder2.tester.TesterFactory;
+import org.cloudcoder.daemon.IOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warm up the Builder by testing a canned submission for each
+ * {@link ProblemType}, so that the compilers, interpreters, and
+ * class loaders used to test submissions are initialized (and the
+ * JIT compiler has seen them) before the first real submission arrives.
+ * The canned submissions are bundled as resources: for each problem type,
+ * <code>res/warmup/<i>problem_type</i>.json</code> is the exercise,
+ * and <code>res/warmup/<i>problem_type</i>.txt</code> is a correct submission.
+ * Some of this state is per thread (for example, each thread has its
+ * own Java compiler: see {@link InMemoryJavaCompiler}), so the Builder
+ * warms up every thread of the executor that tests submissions
+ * (see {@link #run(Builder2, Properties, ExecutorService, int)}).
+ * 
+ * Warm-up is enabled by setting {@link #WARM_UP_PROPERTY} to true.
+ * By default every problem type with a canned submission is warmed up:
+ * {@link #WARM_UP_PROBLEM_TYPES_PROPERTY} may be set to a comma-separated
+ * list of problem types to warm up only those.
+ * 
+ * @author David Hovemeyer
+ */
+public class WarmUp {
+	private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+	
+	/** Property specifying whether the Builder is warmed up before it connects to the webapp. */
+	public static final String WARM_UP_PROPERTY = "cloudcoder.builder2.warmUp";
+	
+	/** Property specifying which problem types are warmed up. */
+	public static final String WARM_UP_PROBLEM_TYPES_PROPERTY = "cloudcoder.builder2.warmUp.problemTypes";
+	
+	private static final String RESOURCE_DIR = "org/cloudcoder/builder2/server/res/warmup/";
+	
+	/** Maximum time to wait for all executor threads to start warming up. */
+	private static final long BARRIER_TIMEOUT_SEC = 60L;
+	
+	/**
+	 * Check whether warm-up is enabled.
+	 * 
+	 * @param config configuration properties
+	 * @return true if warm-up is enabled
+	 */
+	public static boolean isEnabled(Properties config) {
+		return Boolean.parseBoolean(config.getProperty(WARM_UP_PROPERTY, "false"));
+	}
+	
+	/**
+	 * Warm up each thread of an executor by testing the canned submissions
+	 * on every thread, in parallel.  The tasks wait for each other before
+	 * starting, so that each one runs on a different thread.
+	 * 
+	 * @param builder    the {@link Builder2} to use to test the canned submissions
+	 * @param config     configuration properties
+	 * @param executor   the executor whose threads will test submissions
+	 * @param numThreads the number of threads in the executor
+	 * @return the number of problem types whose canned submission passed
+	 *         on every thread
+	 */
+	public static int run(final Builder2 builder, final Properties config, ExecutorService executor, int numThreads) {
+		long start = System.currentTimeMillis();
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < numThreads; i++) {
+			futures.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					try {
+						barrier.await(BARRIER_TIMEOUT_SEC, TimeUnit.SECONDS);
+					} catch (TimeoutException e) {
+						logger.warn("Not all executor threads started warming up");
+					} catch (BrokenBarrierException e) {
+						logger.warn("Not all executor threads started warming up");
+					}
+					return run(builder, config);
+				}
+			}));
+		}
+		
+		int numWarmedUp = Integer.MAX_VALUE;
+		for (Future<Integer> future : futures) {
+			try {
+				numWarmedUp = Math.min(numWarmedUp, future.get());
+			} catch (ExecutionException e) {
+				logger.error("Error warming up executor thread", e.getCause());
+				numWarmedUp = 0;
+			} catch (InterruptedException e) {
+				logger.error("Interrupted while warming up executor threads");
+				Thread.currentThread().interrupt();
+				return 0;
+			}
+		}
+		logger.info("Warmed up {} executor threads in {} ms", numThreads, System.currentTimeMillis() - start);
+		return numThreads > 0 ? numWarmedUp : 0;
+	}
+	
+	/**
+	 * Test the canned submission for each problem type to be warmed up,
+	 * in the current thread.
+	 * A problem type whose canned submission doesn't pass is logged,
+	 * but doesn't prevent the Builder from starting: it may not be
+	 * supported on this host (e.g., because no C compiler is installed).
+	 * 
+	 * @param builder the {@link Builder2} to use to test the canned submissions
+	 * @param config  configuration properties
+	 * @return the number of problem types whose canned submission passed
+	 */
+	public static int run(Builder2 builder, Properties config) {
+		long totalStart = System.currentTimeMillis();
+		int numWarmedUp = 0;
+		
+		// Creating the testers (and their build steps) takes a while,
+		// so time it separately
+		TesterFactory.getTester(ProblemType.JAVA_METHOD);
+		logger.info("Created testers in {} ms", System.currentTimeMillis() - totalStart);
+		
+		for (ProblemType problemType : getProblemTypes(config)) {
+			if (TesterFactory.getTester(problemType) == null) {
+				continue;
+			}
+			String name = problemType.name().toLowerCase();
+			InputStream exerciseIn = WarmUp.class.getClassLoader().getResourceAsStream(RESOURCE_DIR + name + ".json");
+			if (exerciseIn == null) {
+				// No canned submission for this problem type
+				continue;
+			}
+			
+			try {
+				ProblemAndTestCaseList exercise = readExercise(exerciseIn);
+				String programText = readSource(name + ".txt");
+				
+				long start = System.currentTimeMillis();
+				SubmissionResult result = builder.testSubmission(
+						exercise.getProblem(), exercise.getTestCaseData(), programText);
+				long elapsed = System.currentTimeMillis() - start;
+				
+				int numPassed = countPassed(result);
+				int numTests = exercise.getTestCaseData().size();
+				if (numPassed == numTests) {
+					logger.info("Warmed up {} in {} ms", problemType, elapsed);
+					numWarmedUp++;
+				} else {
+					logger.warn("Warm-up for {} took {} ms, but only {} of {} tests passed (compilation outcome {})",
+							new Object[]{problemType, elapsed, numPassed, numTests, result.getCompilationResult().getOutcome()});
+				}
+			} catch (IOException e) {
+				logger.error("Could not read canned submission for " + problemType, e);
+			} finally {
+				IOUtil.closeQuietly(exerciseIn);
+			}
+		}
+		logger.info("Warm-up finished in {} ms", System.currentTimeMillis() - totalStart);
+		return numWarmedUp;
+	}
+
+	private static Set<ProblemType> getProblemTypes(Properties config) {
+		String problemTypes = config.getProperty(WARM_UP_PROBLEM_TYPES_PROPERTY, "").trim();
+		if (problemTypes.equals("")) {
+			return EnumSet.allOf(ProblemType.class);
+		}
+		Set<ProblemType> result = EnumSet.noneOf(ProblemType.class);
+		for (String problemType : problemTypes.split("\\s*,\\s*")) {
+			try {
+				result.add(ProblemType.valueOf(problemType.toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				logger.warn("Unknown problem type {} in {}", problemType, WARM_UP_PROBLEM_TYPES_PROPERTY);
+			}
+		}
+		return result;
+	}
+
+	private static ProblemAndTestCaseList readExercise(InputStream in) throws IOException {
+		ProblemAndTestCaseList exercise = new ProblemAndTestCaseList();
+		JSONConversion.readProblemAndTestCaseData(
+				exercise,
+				ReflectionFactory.forClass(Problem.class),
+				ReflectionFactory.forClass(TestCase.class),
+				new InputStreamReader(in, Charset.forName("UTF-8")));
+		return exercise;
+	}
+
+	private static String readSource(String resourceName) throws IOException {
+		InputStream in = WarmUp.class.getClassLoader().getResourceAsStream(RESOURCE_DIR + resourceName);
+		if (in == null) {
+			throw new IOException("Missing resource " + resourceName);
+		}
+		try {
+			Reader r = new InputStreamReader(in, Charset.forName("UTF-8"));
+			StringWriter sw = new StringWriter();
+			IOUtil.copy(r, sw);
+			return sw.toString();
+		} finally {
+			IOUtil.closeQuietly(in);
+		}
+	}
+
+	private static int countPassed(SubmissionResult result) {
+		int numPassed = 0;
+		if (result.getTestResults() != null) {
+			for (TestResult testResult : result.getTestResults()) {
+				if (testResult.getOutcome() == TestOutcome.PASSED) {
+					numPassed++;
+				}
+			}
+		}
+		return numPassed;
+	}
+}
@@ -17,7 +17,10 @@
 
 package org.cloudcoder.builder2.tester;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.cloudcoder.app.shared.model.ProblemType;
@@ -37,11 +40,13 @@ import org.cloudcoder.builder2.gcov.GCovCCompilerBuildStep;
 import org.cloudcoder.builder2.gcov.GCovCoverageResultsCollectorBuildStep;
 import org.cloudcoder.builder2.gcov.GCovNativeExecutableCommandModifierBuildStep;
 import org.cloudcoder.builder2.javacompiler.BytecodeToBytecodeExecutableBuildStep;
+import org.cloudcoder.builder2.javacompiler.InstrumentInstructionBudgetBuildStep;
 import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
 import org.cloudcoder.builder2.javacompiler.LoadClassesBuildStep;
 import org.cloudcoder.builder2.javamethod.AddJavaMethodScaffoldingBuildStep;
 import org.cloudcoder.builder2.javamethod.AddJavaMethodTestDriverBuildStep;
 import org.cloudcoder.builder2.javamethod.ExecuteJavaMethodTestsBuildStep;
+import org.cloudcoder.builder2.javamethod.JavaMethodTestDriverCache;
 import org.cloudcoder.builder2.javaprogram.JavaProgramToCommandForEachCommandInputBuildStep;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.Tester;
@@ -104,13 +109,26 @@ public abstract class TesterFactory {
 		new CreateSubmissionResultBuildStep(),
 	};
 	
+	/**
+	 * Classpath for compiling a {@link ProblemType#JAVA_PROGRAM} submission.
+	 * Student programs only use the JDK (and the problem's external library,
+	 * if any, which is added separately).
+	 */
+	private static final List<File> JAVA_PROGRAM_COMPILE_CLASSPATH = Collections.emptyList();
+	
+	/**
+	 * Classpath for compiling a {@link ProblemType#JAVA_METHOD} submission.
+	 * The scaffolding and the generated test driver only use the JDK.
+	 */
+	private static final List<File> JAVA_METHOD_COMPILE_CLASSPATH = Collections.emptyList();
+	
 	/**
 	 * Array of {@link IBuildStep}s needed to test a {@link ProblemType#JAVA_PROGRAM}
 	 * submission.
 	 */
 	private static final IBuildStep[] JAVA_PROGRAM_TESTER_STEPS = {
 		new FetchExternalLibraryBuildStep(),
-		new JavaCompilerBuildStep(),
+		new JavaCompilerBuildStep(JAVA_PROGRAM_COMPILE_CLASSPATH),
 		new BytecodeToBytecodeExecutableBuildStep(),
 		new CreateCommandInputsForEachTestCaseBuildStep(),
 		new JavaProgramToCommandForEachCommandInputBuildStep(),
@@ -126,8 +144,10 @@ public abstract class TesterFactory {
 	private static final IBuildStep[] JAVA_METHOD_BUILD_STEPS = {
 		new FetchExternalLibraryBuildStep(),
 		new AddJavaMethodScaffoldingBuildStep(),
-		new AddJavaMethodTestDriverBuildStep(),
-		new JavaCompilerBuildStep(),
+		new JavaCompilerBuildStep(JAVA_METHOD_COMPILE_CLASSPATH),
+		new AddJavaMethodTestDriverBuildStep(JAVA_METHOD_COMPILE_CLASSPATH,
+				new JavaMethodTestDriverCache(JavaMethodTestDriverCache.DEFAULT_MAX_SIZE)),
+		new InstrumentInstructionBudgetBuildStep(),
 		new LoadClassesBuildStep(),
 		new ExecuteJavaMethodTestsBuildStep(),
 	};
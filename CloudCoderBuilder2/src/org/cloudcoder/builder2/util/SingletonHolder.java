@@ -68,7 +68,24 @@ public abstract class SingletonHolder<E, ArgType> {
 	}
 	
 	/**
-	 * Downcall method to create the singleton: will be called exactly once.
+	 * Forget the singleton instance, so that the next call to
+	 * {@link #get(Object)} creates a new one.  This is useful when
+	 * the instance has been cleaned up and is no longer usable.
+	 * Has no effect unless the given object is the current instance.
+	 * 
+	 * @param instance the instance to forget
+	 */
+	public void clear(E instance) {
+		synchronized (lock) {
+			if (theInstance == instance) {
+				theInstance = null;
+			}
+		}
+	}
+	
+	/**
+	 * Downcall method to create the singleton: will be called once,
+	 * and again only if the instance is forgotten by {@link #clear(Object)}.
 	 * @param arg 
 	 * 
 	 * @param arg the argument specifying any information that is needed to create the singleton object
@@ -0,0 +1,96 @@
+package org.cloudcoder.builder2.commandrunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.cloudcoder.builder2.model.Command;
+import org.cloudcoder.builder2.model.CommandExecutionPreferences;
+import org.cloudcoder.builder2.model.CommandInput;
+import org.cloudcoder.builder2.model.CommandLimit;
+import org.cloudcoder.builder2.model.CommandResult;
+import org.cloudcoder.builder2.model.ProcessStatus;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandExecutorTest extends BuilderTest {
+	private Properties config;
+	private File dir;
+
+	@Before
+	public void setUp() {
+		createContext();
+		config = createConfig();
+		dir = new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	@After
+	public void tearDown() {
+		destroyContext();
+	}
+
+	private CommandResult execute(CommandExecutionPreferences prefs, String... args) {
+		return execute(dir, prefs, args);
+	}
+
+	private CommandResult execute(File dir, CommandExecutionPreferences prefs, String... args) {
+		CommandExecutor executor = new CommandExecutor(new Command(dir, Arrays.asList(args)), new CommandInput(""), config);
+		executor.setPrefs(prefs);
+		executor.start();
+		executor.join();
+		return executor.getCommandResult();
+	}
+
+	@Test
+	public void testFastCommandCompletesWithoutPolling() {
+		// Warm up (creates the process wrapper script)
+		execute(null, "/bin/echo", "hello");
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 5; i++) {
+			CommandResult result = execute(null, "/bin/echo", "hello");
+			assertEquals(ProcessStatus.EXITED, result.getStatus());
+			assertEquals(0, result.getExitCode());
+			assertEquals(Arrays.asList("hello"), result.getStdout());
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		// With a 500 ms polling interval, this took at least 2.5 seconds
+		assertTrue("5 commands took " + elapsed + " ms", elapsed < 2000L);
+	}
+
+	@Test
+	public void testCommandIsKilledAtDeadline() {
+		CommandExecutionPreferences prefs = new CommandExecutionPreferences();
+		prefs.setLimit(CommandLimit.CPU_TIME_SEC, 1); // wall time limit is twice the CPU time limit
+
+		long start = System.currentTimeMillis();
+		CommandResult result = execute(prefs, "/bin/sleep", "30");
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertEquals(ProcessStatus.TIMED_OUT, result.getStatus());
+		assertTrue("sleep was killed after " + elapsed + " ms", elapsed >= 2000L && elapsed < 10000L);
+	}
+
+	@Test
+	public void testNonexistentExecutable() {
+		CommandResult result = execute(null, "/nonexistent/program");
+		assertEquals(ProcessStatus.COULD_NOT_START, result.getStatus());
+	}
+
+	@Test
+	public void testProcessCannotBeExecuted() {
+		// The process (and its wrapper) can't be executed in a nonexistent directory
+		CommandResult result = execute(new File(dir, "nonexistent-" + System.nanoTime()), null, "/bin/echo", "hello");
+		assertNotNull(result);
+		assertEquals(ProcessStatus.COULD_NOT_START, result.getStatus());
+		assertTrue(result.getStdout().isEmpty());
+		assertTrue(result.getStderr().isEmpty());
+	}
+}
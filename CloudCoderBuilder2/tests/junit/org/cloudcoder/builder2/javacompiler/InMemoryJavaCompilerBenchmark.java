@@ -0,0 +1,87 @@
+package org.cloudcoder.builder2.javacompiler;
+
+/**
+ * Compare the latency of compiling a typical JAVA_METHOD submission
+ * (scaffolded student method plus generated test driver) on a cold
+ * thread, which must create a new compiler and file manager, with
+ * the latency on a warm thread, which reuses them.
+ * Run with the Builder's classpath, e.g.:
+ * <pre>
+ * java -cp ... org.cloudcoder.builder2.javacompiler.InMemoryJavaCompilerBenchmark
+ * </pre>
+ */
+public class InMemoryJavaCompilerBenchmark {
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 50;
+
+	private static final String TEST =
+			"public class Test {\n" +
+			"public int sumOfSquares(int n) {\n" +
+			"  int sum = 0;\n" +
+			"  for (int i = 1; i <= n; i++) { sum += i * i; }\n" +
+			"  return sum;\n" +
+			"}\n" +
+			"}\n";
+
+	private static final String TESTER;
+	static {
+		StringBuilder tester = new StringBuilder();
+		tester.append("public class Tester {\n");
+		tester.append("\tpublic static boolean eq(Object o1, Object o2) { return o1.equals(o2); }\n");
+		for (int i = 0; i < 8; i++) {
+			tester.append("\tpublic static Object[] test" + i + "() {\n");
+			tester.append("\t\tTest t = new Test();\n");
+			tester.append("\t\tObject theresult=t.sumOfSquares(" + i + ");\n");
+			tester.append("\t\tBoolean b=eq(theresult, " + (i * (i + 1) * (2 * i + 1) / 6) + ");\n");
+			tester.append("\t\treturn new Object[] {b, theresult.toString()};\n");
+			tester.append("\t\t}\n");
+		}
+		tester.append("}");
+		TESTER = tester.toString();
+	}
+
+	private static long compileOnce() {
+		long start = System.nanoTime();
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+		compiler.addSourceFile("Tester", TESTER);
+		compiler.addSourceFile("Test", TEST);
+		if (!compiler.compile()) {
+			throw new IllegalStateException("Compilation failed: " + compiler.getCompileResult());
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long compileOnNewThread() throws InterruptedException {
+		final long[] elapsed = new long[1];
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				elapsed[0] = compileOnce();
+			}
+		});
+		t.start();
+		t.join();
+		return elapsed[0];
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		// Warm up the JIT, so that only the cost of the compiler
+		// and file manager setup differs between cold and warm compiles
+		for (int i = 0; i < WARMUP; i++) {
+			compileOnNewThread();
+			compileOnce();
+		}
+
+		long cold = 0L;
+		for (int i = 0; i < ITERATIONS; i++) {
+			cold += compileOnNewThread();
+		}
+		long warm = 0L;
+		for (int i = 0; i < ITERATIONS; i++) {
+			warm += compileOnce();
+		}
+
+		System.out.printf("Cold compile: %.2f ms%n", cold / (ITERATIONS * 1000000.0));
+		System.out.printf("Warm compile: %.2f ms%n", warm / (ITERATIONS * 1000000.0));
+	}
+}
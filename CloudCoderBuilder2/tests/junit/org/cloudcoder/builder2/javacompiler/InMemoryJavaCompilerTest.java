@@ -0,0 +1,73 @@
+package org.cloudcoder.builder2.javacompiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.junit.Test;
+
+public class InMemoryJavaCompilerTest {
+	@Test
+	public void testSequentialCompilationsOnOneThread() {
+		InMemoryJavaCompiler first = new InMemoryJavaCompiler();
+		first.addSourceFile("A", "public class A { public int f() { return 1; } }");
+		assertTrue(first.compile());
+		Map<String, byte[]> firstClasses = first.getFileManager().getClasses();
+		assertEquals(1, firstClasses.size());
+		assertTrue(firstClasses.containsKey("A"));
+
+		// The second compilation reuses the compiler, but only sees its own classes
+		InMemoryJavaCompiler second = new InMemoryJavaCompiler();
+		second.addSourceFile("B", "public class B { public int g() { return 2; } }");
+		assertTrue(second.compile());
+		Map<String, byte[]> secondClasses = second.getFileManager().getClasses();
+		assertEquals(1, secondClasses.size());
+		assertTrue(secondClasses.containsKey("B"));
+
+		// Classes from the first compilation are unaffected
+		assertEquals(1, firstClasses.size());
+		assertTrue(firstClasses.containsKey("A"));
+	}
+
+	@Test
+	public void testCompilationErrorAfterReuse() {
+		InMemoryJavaCompiler ok = new InMemoryJavaCompiler();
+		ok.addSourceFile("C", "public class C { }");
+		assertTrue(ok.compile());
+
+		InMemoryJavaCompiler bad = new InMemoryJavaCompiler();
+		bad.addSourceFile("D", "public class D { int f() { return \"oops\"; } }");
+		assertFalse(bad.compile());
+		assertEquals(CompilationOutcome.FAILURE, bad.getCompileResult().getOutcome());
+		assertEquals(0, bad.getFileManager().getNumClassesCreated());
+	}
+
+	@Test
+	public void testEmptyClasspathHidesBuilderClasses() {
+		// The test itself can see the builder's classes...
+		String src = "public class E { Object f() { return new org.cloudcoder.builder2.javacompiler.InMemoryJavaCompiler(); } }";
+		InMemoryJavaCompiler withBuilderClasspath = new InMemoryJavaCompiler();
+		withBuilderClasspath.addSourceFile("E", src);
+		assertTrue(withBuilderClasspath.compile());
+
+		// ...but code compiled against an empty classpath can't
+		InMemoryJavaCompiler restricted = new InMemoryJavaCompiler();
+		restricted.setClasspath(Collections.<File>emptyList());
+		restricted.addSourceFile("E", src);
+		assertFalse(restricted.compile());
+		assertEquals(CompilationOutcome.FAILURE, restricted.getCompileResult().getOutcome());
+	}
+
+	@Test
+	public void testEmptyClasspathAllowsJdkClasses() {
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+		compiler.setClasspath(Collections.<File>emptyList());
+		compiler.addSourceFile("F", "import java.util.*; public class F { List<String> f() { return new ArrayList<String>(); } }");
+		assertTrue(compiler.compile());
+	}
+}
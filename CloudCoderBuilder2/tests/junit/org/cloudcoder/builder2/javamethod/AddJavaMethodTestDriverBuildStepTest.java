@@ -0,0 +1,124 @@
+package org.cloudcoder.builder2.javamethod;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
+import org.cloudcoder.builder2.javacompiler.LoadClassesBuildStep;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.LoadedClasses;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AddJavaMethodTestDriverBuildStepTest {
+	private static final List<File> CLASSPATH = Collections.emptyList();
+
+	private JavaMethodTestDriverCache cache;
+	private IBuildStep[] steps;
+
+	@Before
+	public void setUp() {
+		cache = new JavaMethodTestDriverCache(4);
+		steps = new IBuildStep[] {
+				new AddJavaMethodScaffoldingBuildStep(),
+				new JavaCompilerBuildStep(CLASSPATH),
+				new AddJavaMethodTestDriverBuildStep(CLASSPATH, cache),
+				new LoadClassesBuildStep(),
+		};
+	}
+
+	private BuilderSubmission build(String programText) {
+		return build(programText, "3", "9");
+	}
+
+	private static Problem createProblem() {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.JAVA_METHOD);
+		problem.setTestname("sq");
+		problem.setBriefDescription("brief");
+		problem.setDescription("description");
+		problem.setSkeleton("");
+		return problem;
+	}
+
+	private BuilderSubmission build(String programText, String input, String output) {
+		Problem problem = createProblem();
+		TestCase testCase = new TestCase();
+		testCase.setTestCaseName("t0");
+		testCase.setInput(input);
+		testCase.setOutput(output);
+
+		BuilderSubmission submission = new BuilderSubmission();
+		submission.addArtifact(problem);
+		submission.addArtifact(new TestCase[]{testCase});
+		submission.addArtifact(new ProgramSource[]{new ProgramSource(programText)});
+		for (IBuildStep step : steps) {
+			step.execute(submission, new Properties());
+			if (submission.isComplete()) {
+				break;
+			}
+		}
+		return submission;
+	}
+
+	private static Object[] runTestCase(BuilderSubmission submission) throws Exception {
+		LoadedClasses loadedClasses = submission.getArtifact(LoadedClasses.class);
+		assertNotNull(loadedClasses);
+		Class<?> testerCls = loadedClasses.getClassLoader().loadClass("Tester");
+		return (Object[]) testerCls.getMethod("t0").invoke(null);
+	}
+
+	@Test
+	public void testTestDriverIsCompiledOncePerSignature() throws Exception {
+		assertArrayEquals(new Object[]{true, "9"}, runTestCase(build("public int sq(int x) { return x*x; }")));
+		assertEquals(1, cache.size());
+		assertEquals(0, cache.getNumHits());
+
+		// Same declarations, different body: the cached test driver is used
+		assertArrayEquals(new Object[]{false, "6"}, runTestCase(build("public int sq(int x) { return x+x; }")));
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getNumHits());
+
+		// Different parameter type: the test driver must be recompiled
+		assertArrayEquals(new Object[]{true, "9"}, runTestCase(build("public Integer sq(Integer x) { return x*x; }")));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getNumHits());
+	}
+
+	@Test
+	public void testTestDriverCompilationFailure() throws Exception {
+		// The submission compiles by itself, but not with the test driver
+		BuilderSubmission submission = build("public int square(int x) { return x*x; }");
+		SubmissionResult result = submission.getArtifact(SubmissionResult.class);
+		assertNotNull(result);
+		assertEquals(CompilationOutcome.FAILURE, result.getCompilationResult().getOutcome());
+		assertFalse(submission.hasArtifact(LoadedClasses.class));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEditedTestCaseGetsNewTestDriver() throws Exception {
+		String programText = "public int sq(int x) { return x*x; }";
+		assertArrayEquals(new Object[]{false, "1"}, runTestCase(build(programText, "1", "23")));
+
+		// Moving a character from the output to the input must not
+		// reuse the test driver compiled for the original test case
+		assertArrayEquals(new Object[]{false, "144"}, runTestCase(build(programText, "12", "3")));
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getNumHits());
+	}
+}
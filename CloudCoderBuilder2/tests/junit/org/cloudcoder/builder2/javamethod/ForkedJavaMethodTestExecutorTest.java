@@ -0,0 +1,186 @@
+package org.cloudcoder.builder2.javamethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.builder2.javacompiler.InstrumentInstructionBudgetBuildStep;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerBuildStep;
+import org.cloudcoder.builder2.javasandbox.ForkedJVMPool;
+import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
+import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.Bytecode;
+import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.ProgramSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ForkedJavaMethodTestExecutorTest {
+	private static final List<File> CLASSPATH = Collections.emptyList();
+
+	private static final TimeoutHandler<TestResult> TIMEOUT_HANDLER = new TimeoutHandler<TestResult>() {
+		@Override
+		public TestResult handleTimeout() {
+			return new TestResult(TestOutcome.FAILED_FROM_TIMEOUT, "timeout");
+		}
+	};
+
+	private ForkedJVMPool pool;
+
+	@Before
+	public void setUp() {
+		List<String> jvmArgs = new ArrayList<String>();
+		jvmArgs.add("-Dlog4j.configuration=org/cloudcoder/builder2/javasandbox/res/forkedJVM-log4j.properties");
+		pool = new ForkedJVMPool(
+				ForkedJVMPool.createJavaCommand(ForkedJavaMethodTestRunner.class.getName(), jvmArgs), 1, 3);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private static Problem createProblem(String testname) {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.JAVA_METHOD);
+		problem.setTestname(testname);
+		problem.setBriefDescription("brief");
+		problem.setDescription("description");
+		problem.setSkeleton("");
+		return problem;
+	}
+
+	private static TestCase createTestCase(String name, String input, String output) {
+		TestCase testCase = new TestCase();
+		testCase.setTestCaseName(name);
+		testCase.setInput(input);
+		testCase.setOutput(output);
+		return testCase;
+	}
+
+	private static BuilderSubmission compile(Problem problem, TestCase[] testCaseList, String programText) {
+		return compile(problem, testCaseList, programText, new Properties());
+	}
+
+	private static BuilderSubmission compile(Problem problem, TestCase[] testCaseList, String programText, Properties config) {
+		BuilderSubmission submission = new BuilderSubmission();
+		submission.addArtifact(problem);
+		submission.addArtifact(testCaseList);
+		submission.addArtifact(new ProgramSource[]{new ProgramSource(programText)});
+		IBuildStep[] steps = {
+				new AddJavaMethodScaffoldingBuildStep(),
+				new JavaCompilerBuildStep(CLASSPATH),
+				new AddJavaMethodTestDriverBuildStep(CLASSPATH, new JavaMethodTestDriverCache(1)),
+				new InstrumentInstructionBudgetBuildStep(),
+		};
+		for (IBuildStep step : steps) {
+			step.execute(submission, config);
+		}
+		return submission;
+	}
+
+	@Test
+	public void testTimeoutReplacesChildJVM() throws Exception {
+		Problem problem = createProblem("sq");
+		TestCase[] testCaseList = {
+				createTestCase("t0", "3", "9"),
+				createTestCase("t1", "2", "5"),
+				createTestCase("t2", "-1", "1"),
+				createTestCase("t3", "4", "16"),
+		};
+		BuilderSubmission submission = compile(problem, testCaseList,
+				"public int sq(int x) { while (x < 0) { } System.out.println(\"x=\" + x); return x*x; }");
+		Bytecode[] bytecodeList = submission.getArtifact(Bytecode[].class);
+
+		ForkedJavaMethodTestExecutor executor = new ForkedJavaMethodTestExecutor(pool, 2000L, TIMEOUT_HANDLER);
+		List<TestResult> results = executor.execute(bytecodeList, null, problem, testCaseList);
+		assertEquals(4, results.size());
+		assertEquals(TestOutcome.PASSED, results.get(0).getOutcome());
+		assertEquals("x=3", results.get(0).getStdout().trim());
+		assertEquals(TestOutcome.FAILED_ASSERTION, results.get(1).getOutcome());
+		assertEquals(TestOutcome.FAILED_FROM_TIMEOUT, results.get(2).getOutcome());
+
+		// The test case after the timeout runs in a new child JVM
+		assertEquals(TestOutcome.PASSED, results.get(3).getOutcome());
+		assertEquals("x=4", results.get(3).getStdout().trim());
+
+		// Child JVMs are reused, and replaced after the maximum number of uses
+		TestCase[] passing = { testCaseList[0] };
+		for (int i = 0; i < 5; i++) {
+			results = executor.execute(bytecodeList, null, problem, passing);
+			assertEquals(TestOutcome.PASSED, results.get(0).getOutcome());
+			// (a replacement child JVM may still be starting)
+			assertEquals(1, pool.getNumIdle() + pool.getNumStarting());
+		}
+	}
+
+	@Test
+	public void testChildJVMStartupIsNotTimed() throws Exception {
+		Problem problem = createProblem("sq");
+		TestCase[] testCaseList = {
+				createTestCase("t0", "3", "9"),
+				createTestCase("t1", "-1", "1"),
+				createTestCase("t2", "4", "16"),
+		};
+		BuilderSubmission submission = compile(problem, testCaseList,
+				"public int sq(int x) { while (x < 0) { } return x*x; }");
+
+		// The time limit is much shorter than it takes a child JVM to start,
+		// so the first test (in the pool's initial child JVM) and the last
+		// (in the replacement for the child JVM that timed out) only pass
+		// if they aren't sent until their child JVM is ready
+		ForkedJavaMethodTestExecutor executor = new ForkedJavaMethodTestExecutor(pool, 250L, TIMEOUT_HANDLER);
+		List<TestResult> results = executor.execute(
+				submission.getArtifact(Bytecode[].class), null, problem, testCaseList);
+		assertEquals(TestOutcome.PASSED, results.get(0).getOutcome());
+		assertEquals(TestOutcome.FAILED_FROM_TIMEOUT, results.get(1).getOutcome());
+		assertEquals(TestOutcome.PASSED, results.get(2).getOutcome());
+	}
+
+	@Test
+	public void testSecurityManagerInChildJVM() throws Exception {
+		Problem problem = createProblem("exit");
+		TestCase[] testCaseList = { createTestCase("t0", "", "0"), createTestCase("t1", "", "0") };
+		BuilderSubmission submission = compile(problem, testCaseList,
+				"public int exit() { System.exit(1); return 0; }");
+
+		ForkedJavaMethodTestExecutor executor = new ForkedJavaMethodTestExecutor(pool, 2000L, TIMEOUT_HANDLER);
+		List<TestResult> results = executor.execute(
+				submission.getArtifact(Bytecode[].class), null, problem, testCaseList);
+		for (TestResult result : results) {
+			assertTrue(result.getOutcome().toString(), result.getOutcome() == TestOutcome.FAILED_BY_SECURITY_MANAGER);
+		}
+	}
+
+	@Test
+	public void testInstructionBudgetInChildJVM() throws Exception {
+		Problem problem = createProblem("sq");
+		TestCase[] testCaseList = { createTestCase("t0", "-1", "1"), createTestCase("t1", "3", "9") };
+		Properties config = new Properties();
+		config.setProperty(InstrumentInstructionBudgetBuildStep.INSTRUCTION_BUDGET_PROPERTY, "1000000");
+		BuilderSubmission submission = compile(problem, testCaseList,
+				"public int sq(int x) { while (x < 0) { } return x*x; }", config);
+
+		// The infinite loop exhausts its budget long before the wall-clock timeout,
+		// and the child JVM survives to run the next test
+		ForkedJavaMethodTestExecutor executor = new ForkedJavaMethodTestExecutor(pool, 60000L, TIMEOUT_HANDLER);
+		long start = System.currentTimeMillis();
+		List<TestResult> results = executor.execute(
+				submission.getArtifact(Bytecode[].class), null, problem, testCaseList);
+		assertTrue(System.currentTimeMillis() - start < 30000L);
+		assertEquals(TestOutcome.FAILED_FROM_TIMEOUT, results.get(0).getOutcome());
+		assertEquals(TestOutcome.PASSED, results.get(1).getOutcome());
+		assertEquals(1, pool.getNumIdle());
+	}
+}
@@ -0,0 +1,90 @@
+package org.cloudcoder.builder2.javasandbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cloudcoder.builder2.javacompiler.ByteArrayClassLoader;
+import org.cloudcoder.builder2.javacompiler.InMemoryJavaCompiler;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InstructionBudgetInstrumenterTest {
+	private static final long BUDGET = 1000000L;
+
+	private static final String SOURCE =
+			"public class Loops {\n" +
+			"	public static int sum(int n) {\n" +
+			"		int total = 0;\n" +
+			"		for (int i = 1; i <= n; i++) { total += i; }\n" +
+			"		return total;\n" +
+			"	}\n" +
+			"	public static int forever() {\n" +
+			"		int x = 0;\n" +
+			"		while (true) { try { x++; } catch (Throwable t) { } }\n" +
+			"	}\n" +
+			"	public Loops() { }\n" +
+			"}\n";
+
+	private Class<?> cls;
+
+	@Before
+	public void setUp() throws Exception {
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+		compiler.addSourceFile("Loops", SOURCE);
+		assertTrue(compiler.compile());
+		InstructionBudgetInstrumenter instrumenter = new InstructionBudgetInstrumenter(BUDGET);
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		for (Map.Entry<String, byte[]> entry : compiler.getFileManager().getClasses().entrySet()) {
+			classes.put(entry.getKey(), instrumenter.instrument(entry.getValue()));
+		}
+		cls = new ByteArrayClassLoader(classes).loadClass("Loops");
+		InstructionBudget.reset();
+	}
+
+	private Object call(String methodName, Object... args) throws Throwable {
+		Class<?>[] paramTypes = new Class<?>[args.length];
+		for (int i = 0; i < args.length; i++) {
+			paramTypes[i] = Integer.TYPE;
+		}
+		Method m = cls.getMethod(methodName, paramTypes);
+		try {
+			return m.invoke(null, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test
+	public void testInstrumentedCodeRunsNormally() throws Throwable {
+		assertEquals(5050, call("sum", 100));
+		assertTrue(InstructionBudget.getUsed() > 100L);
+		assertTrue(InstructionBudget.getUsed() < BUDGET);
+	}
+
+	@Test
+	public void testCountIsDeterministic() throws Throwable {
+		call("sum", 1000);
+		long first = InstructionBudget.getUsed();
+		InstructionBudget.reset();
+		call("sum", 1000);
+		assertEquals(first, InstructionBudget.getUsed());
+	}
+
+	@Test
+	public void testInfiniteLoopExceedsBudget() throws Throwable {
+		try {
+			call("forever");
+			fail("Infinite loop should have exceeded its budget");
+		} catch (InstructionBudgetExceededError e) {
+			// The loop stops as soon as the budget is used up
+			assertTrue(InstructionBudget.getUsed() > BUDGET);
+			assertTrue(InstructionBudget.getUsed() < BUDGET + 100L);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package org.cloudcoder.builder2.javasandbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JVMKillableTaskManagerTest {
+	private static final TimeoutHandler<Integer> TIMEOUT_HANDLER = new TimeoutHandler<Integer>() {
+		@Override
+		public Integer handleTimeout() {
+			return Integer.valueOf(-1);
+		}
+	};
+
+	/**
+	 * Task which sleeps for a while, and records the maximum
+	 * number of tasks running at the same time.
+	 */
+	private static class SleepTask implements IsolatedTask<Integer> {
+		private final int value;
+		private final long sleepMs;
+		private final AtomicInteger numRunning;
+		private final AtomicInteger maxRunning;
+
+		public SleepTask(int value, long sleepMs, AtomicInteger numRunning, AtomicInteger maxRunning) {
+			this.value = value;
+			this.sleepMs = sleepMs;
+			this.numRunning = numRunning;
+			this.maxRunning = maxRunning;
+		}
+
+		@Override
+		public Integer execute() {
+			int n = numRunning.incrementAndGet();
+			while (true) {
+				int max = maxRunning.get();
+				if (n <= max || maxRunning.compareAndSet(max, n)) {
+					break;
+				}
+			}
+			try {
+				Thread.sleep(sleepMs);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			numRunning.decrementAndGet();
+			return Integer.valueOf(value);
+		}
+	}
+
+	@BeforeClass
+	public static void installSecurityManager() {
+		AbstractKillableTaskManager.installSecurityManager();
+	}
+
+	private static List<IsolatedTask<Integer>> createTasks(int numTasks, long sleepMs, AtomicInteger maxRunning) {
+		AtomicInteger numRunning = new AtomicInteger();
+		List<IsolatedTask<Integer>> tasks = new ArrayList<IsolatedTask<Integer>>();
+		for (int i = 0; i < numTasks; i++) {
+			tasks.add(new SleepTask(i, sleepMs, numRunning, maxRunning));
+		}
+		return tasks;
+	}
+
+	private static void checkResults(JVMKillableTaskManager<Integer> manager, int numTasks) {
+		for (int i = 0; i < numTasks; i++) {
+			assertEquals(Integer.valueOf(i), manager.getResult(i));
+		}
+	}
+
+	@Test
+	public void testMaxParallelism() throws Exception {
+		AtomicInteger maxRunning = new AtomicInteger();
+		JVMKillableTaskManager<Integer> manager = new JVMKillableTaskManager<Integer>(
+				createTasks(6, 100L, maxRunning), 2000L, TIMEOUT_HANDLER);
+		manager.setMaxParallelism(2);
+		manager.run();
+		checkResults(manager, 6);
+		assertEquals(2, maxRunning.get());
+	}
+
+	@Test
+	public void testSharedSlots() throws Exception {
+		Semaphore slots = new Semaphore(1);
+		AtomicInteger maxRunning = new AtomicInteger();
+		JVMKillableTaskManager<Integer> manager = new JVMKillableTaskManager<Integer>(
+				createTasks(4, 50L, maxRunning), 2000L, TIMEOUT_HANDLER);
+		manager.setMaxParallelism(4);
+		manager.setSlots(slots);
+		manager.run();
+		checkResults(manager, 4);
+		assertEquals(1, maxRunning.get());
+
+		// All slots are released
+		assertEquals(1, slots.availablePermits());
+	}
+
+	@Test
+	public void testTimeLimitStartsWhenTaskStarts() throws Exception {
+		List<IsolatedTask<Integer>> tasks = new ArrayList<IsolatedTask<Integer>>();
+		tasks.add(new IsolatedTask<Integer>() {
+			@Override
+			public Integer execute() {
+				while (true) {
+					// infinite loop
+				}
+			}
+		});
+		AtomicInteger maxRunning = new AtomicInteger();
+		tasks.addAll(createTasks(2, 150L, maxRunning));
+		Semaphore slots = new Semaphore(1);
+
+		// Tasks run one at a time: the tasks after the infinite loop
+		// each get their own time limit
+		JVMKillableTaskManager<Integer> manager = new JVMKillableTaskManager<Integer>(tasks, 200L, TIMEOUT_HANDLER);
+		manager.setMaxParallelism(1);
+		manager.setSlots(slots);
+		manager.run();
+		assertEquals(Integer.valueOf(-1), manager.getResult(0));
+		assertEquals(Integer.valueOf(0), manager.getResult(1));
+		assertEquals(Integer.valueOf(1), manager.getResult(2));
+		assertEquals(1, slots.availablePermits());
+		assertTrue(manager.getTotalCpuTimeNanos() > 0L);
+	}
+}
@@ -0,0 +1,64 @@
+package org.cloudcoder.builder2.javasandbox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measure the latency of running a batch of fast-passing tasks
+ * with a {@link JVMKillableTaskManager}: ideally it should be close
+ * to the time needed to start the worker threads, and independent
+ * of the time limit.
+ * Run with the Builder's classpath, e.g.:
+ * <pre>
+ * java -cp ... org.cloudcoder.builder2.javasandbox.KillableTaskManagerBenchmark
+ * </pre>
+ */
+public class KillableTaskManagerBenchmark {
+	private static final int WARMUP = 10;
+	private static final int ITERATIONS = 50;
+	private static final int NUM_TASKS = 8;
+	private static final long MAX_RUN_TIME = 2000L;
+
+	private static final TimeoutHandler<Integer> TIMEOUT_HANDLER = new TimeoutHandler<Integer>() {
+		@Override
+		public Integer handleTimeout() {
+			return Integer.valueOf(-1);
+		}
+	};
+
+	private static long runOnce() {
+		List<IsolatedTask<Integer>> tasks = new ArrayList<IsolatedTask<Integer>>();
+		for (int i = 0; i < NUM_TASKS; i++) {
+			final int n = i;
+			tasks.add(new IsolatedTask<Integer>() {
+				@Override
+				public Integer execute() {
+					return Integer.valueOf(n * n);
+				}
+			});
+		}
+		long start = System.nanoTime();
+		JVMKillableTaskManager<Integer> manager = new JVMKillableTaskManager<Integer>(tasks, MAX_RUN_TIME, TIMEOUT_HANDLER);
+		manager.run();
+		long elapsed = System.nanoTime() - start;
+		for (int i = 0; i < NUM_TASKS; i++) {
+			if (manager.getResult(i).intValue() != i * i) {
+				throw new IllegalStateException("Task " + i + " did not complete");
+			}
+		}
+		return elapsed;
+	}
+
+	public static void main(String[] args) {
+		AbstractKillableTaskManager.installSecurityManager();
+		for (int i = 0; i < WARMUP; i++) {
+			runOnce();
+		}
+		long total = 0L;
+		for (int i = 0; i < ITERATIONS; i++) {
+			total += runOnce();
+		}
+		System.out.printf("%d tasks, time limit %d ms: %.2f ms%n",
+				NUM_TASKS, MAX_RUN_TIME, total / (ITERATIONS * 1000000.0));
+	}
+}
@@ -0,0 +1,104 @@
+package org.cloudcoder.builder2.javasandbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ThreadedPrintStreamMonitorTest {
+	private static final int NUM_THREADS = 8;
+	private static final int NUM_LINES = 1000;
+
+	@Test
+	public void testConcurrentWritersHaveSeparateOutput() throws Exception {
+		final ThreadedPrintStreamMonitor monitor = new ThreadedPrintStreamMonitor();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++) {
+			final String line = "thread" + i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < NUM_LINES; j++) {
+						monitor.println(line);
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		// All threads start printing at once
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		for (int i = 0; i < NUM_THREADS; i++) {
+			String[] lines = monitor.getBufferedOutput(threads[i]).split("\n");
+			assertEquals(NUM_LINES, lines.length);
+			for (String line : lines) {
+				assertEquals("thread" + i, line.trim());
+			}
+			assertFalse(monitor.isTruncated(threads[i]));
+		}
+	}
+
+	@Test
+	public void testOutputIsTruncated() throws Exception {
+		final ThreadedPrintStreamMonitor monitor = new ThreadedPrintStreamMonitor(System.out, 100);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// Simulates an infinite print loop
+				for (int i = 0; i < 100000; i++) {
+					monitor.print("0123456789");
+				}
+			}
+		});
+		t.start();
+		t.join();
+
+		assertTrue(monitor.isTruncated(t));
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			expected.append("0123456789");
+		}
+		expected.append(ThreadedPrintStreamMonitor.TRUNCATION_MARKER);
+		assertEquals(expected.toString(), monitor.getBufferedOutput(t));
+	}
+
+	@Test
+	public void testOutputAtLimitIsNotTruncated() throws Exception {
+		final ThreadedPrintStreamMonitor monitor = new ThreadedPrintStreamMonitor(System.out, 10);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				monitor.print("0123456789");
+			}
+		});
+		t.start();
+		t.join();
+
+		assertFalse(monitor.isTruncated(t));
+		assertEquals("0123456789", monitor.getBufferedOutput(t));
+	}
+
+	@Test
+	public void testThreadWithNoOutput() throws Exception {
+		ThreadedPrintStreamMonitor monitor = new ThreadedPrintStreamMonitor();
+		Thread t = new Thread();
+		t.start();
+		t.join();
+		monitor.flush(t);
+		monitor.close(t);
+		assertEquals("", monitor.getBufferedOutput(t));
+	}
+}
@@ -0,0 +1,157 @@
+package org.cloudcoder.builder2.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.cloudcoder.builder2.model.CommandExecutionPreferences;
+import org.cloudcoder.builder2.model.CommandLimit;
+import org.cloudcoder.builder2.model.ProcessStatus;
+import org.cloudcoder.builder2.model.WrapperMode;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessRunnerTest extends BuilderTest {
+	private static final WrapperMode[] WRAPPER_MODES = { WrapperMode.SCRIPT, WrapperMode.NATIVE_EXE };
+	
+	private Properties config;
+	private File dir;
+
+	@Before
+	public void setUp() {
+		config = createConfig();
+		dir = new File(System.getProperty("java.io.tmpdir"));
+		
+		// The native exe wrapper must be available, otherwise the
+		// NATIVE_EXE tests would silently fall back to the script
+		assertNotNull("native exe process wrapper could not be compiled",
+				RunProcessNativeExe.getInstance(config).getNativeExePath());
+	}
+
+	private ProcessRunner run(ProcessRunner runner, WrapperMode mode, String shellCommand) {
+		runner.setWrapperMode(mode);
+		boolean ran = runner.runSynchronous(dir, "/bin/sh", "-c", shellCommand);
+		assertTrue(runner.getStatusMessage(), ran);
+		return runner;
+	}
+	
+	private ProcessRunner run(WrapperMode mode, String shellCommand) {
+		return run(new ProcessRunner(config), mode, shellCommand);
+	}
+
+	@Test
+	public void testNormalExit() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			ProcessRunner runner = run(mode, "echo out; echo err >&2; exit 3");
+			assertEquals(mode.toString(), ProcessStatus.EXITED, runner.getStatus());
+			assertEquals(mode.toString(), 3, runner.getExitCode());
+			assertEquals(mode.toString(), Arrays.asList("out"), runner.getStdoutAsList());
+			assertEquals(mode.toString(), Arrays.asList("err"), runner.getStderrAsList());
+		}
+	}
+	
+	@Test
+	public void testStderrWithoutTrailingNewline() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			ProcessRunner runner = run(mode, "printf 'a\\n\\nb' >&2");
+			assertEquals(mode.toString(), ProcessStatus.EXITED, runner.getStatus());
+			assertEquals(mode.toString(), 0, runner.getExitCode());
+			assertEquals(mode.toString(), Arrays.asList("a", "", "b"), runner.getStderrAsList());
+		}
+	}
+	
+	@Test
+	public void testNoStderr() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			ProcessRunner runner = run(mode, "true");
+			assertEquals(mode.toString(), ProcessStatus.EXITED, runner.getStatus());
+			assertEquals(mode.toString(), Collections.<String>emptyList(), runner.getStderrAsList());
+		}
+	}
+
+	@Test
+	public void testKilledBySignal() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			ProcessRunner runner = run(mode, "echo err >&2; kill -SEGV $$");
+			assertEquals(mode.toString(), ProcessStatus.KILLED_BY_SIGNAL, runner.getStatus());
+			assertEquals(mode.toString(), 11, runner.getExitCode());
+			// bash (the script wrapper) may add its own report of the crash
+			assertEquals(mode.toString(), "err", runner.getStderrAsList().get(0));
+		}
+	}
+	
+	@Test
+	public void testCpuLimitExceeded() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			CommandExecutionPreferences prefs = new CommandExecutionPreferences();
+			prefs.setLimit(CommandLimit.CPU_TIME_SEC, 1);
+			LimitedProcessRunner limited = new LimitedProcessRunner(config);
+			limited.setPreferences(prefs);
+			
+			ProcessRunner runner = run(limited, mode, "while true; do :; done");
+			assertEquals(mode.toString(), ProcessStatus.TIMED_OUT, runner.getStatus());
+			// SIGXCPU, or SIGKILL when the soft limit equals the hard limit
+			int signo = runner.getExitCode();
+			assertTrue(mode + " killed by signal " + signo, signo == 24 || signo == 9);
+		}
+	}
+	
+	@Test
+	public void testExitCodeAboveSignalRange() {
+		// The script wrapper can't tell "exit 130" from SIGINT,
+		// but the native exe wrapper reports the real exit status
+		ProcessRunner runner = run(WrapperMode.NATIVE_EXE, "exit 130");
+		assertEquals(ProcessStatus.EXITED, runner.getStatus());
+		assertEquals(130, runner.getExitCode());
+	}
+	
+	@Test
+	public void testCouldNotStart() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			ProcessRunner runner = new ProcessRunner(config);
+			runner.setWrapperMode(mode);
+			assertTrue(runner.runSynchronous(dir, "/nonexistent/program"));
+			assertEquals(mode.toString(), ProcessStatus.COULD_NOT_START, runner.getStatus());
+		}
+	}
+	
+	@Test
+	public void testWrappedProcessDoesNotSeeToken() {
+		for (WrapperMode mode : WRAPPER_MODES) {
+			ProcessRunner runner = run(mode, "echo \"[$CC_PROC_STAT_TOKEN]\"");
+			assertEquals(mode.toString(), Arrays.asList("[]"), runner.getStdoutAsList());
+		}
+	}
+	
+	@Test
+	public void testNoExitStatusFilesLeftBehind() {
+		FilenameFilter exitStatusFiles = new FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name) {
+				return name.startsWith("ccxs") && name.endsWith(".txt");
+			}
+		};
+		int before = dir.list(exitStatusFiles).length;
+		for (WrapperMode mode : WRAPPER_MODES) {
+			run(mode, "exit 0");
+		}
+		assertEquals(before, dir.list(exitStatusFiles).length);
+	}
+	
+	@Test
+	public void testNativeExeIsRebuiltAfterCleanup() {
+		RunProcessNativeExe.getInstance(config).cleanup();
+		String nativeExePath = RunProcessNativeExe.getInstance(config).getNativeExePath();
+		assertNotNull(nativeExePath);
+		assertTrue(new File(nativeExePath).exists());
+		ProcessRunner runner = run(WrapperMode.NATIVE_EXE, "exit 0");
+		assertEquals(ProcessStatus.EXITED, runner.getStatus());
+	}
+}
@@ -0,0 +1,64 @@
+package org.cloudcoder.builder2.pythonfunction;
+
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.builder2.tests.BuilderTestContext;
+
+/**
+ * Measure the per-submission latency of testing a small
+ * PYTHON_FUNCTION submission with and without a {@link PythonInterpreterPool}.
+ * Run with the Builder's classpath, e.g.:
+ * <pre>
+ * java -cp ... org.cloudcoder.builder2.pythonfunction.PythonInterpreterPoolBenchmark
+ * </pre>
+ */
+public class PythonInterpreterPoolBenchmark {
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 100;
+
+	private static BuilderTestContext createContext(int poolSize) {
+		Properties config = new Properties();
+		config.setProperty("cloudcoder.builder2.tmpdir", System.getProperty("java.io.tmpdir"));
+		config.setProperty(PythonInterpreterPool.POOL_SIZE_PROPERTY, String.valueOf(poolSize));
+		BuilderTestContext context = new BuilderTestContext(config);
+		context.setup();
+		return context;
+	}
+
+	private static double measure(BuilderTestContext context, ProblemAndTestCaseList exercise, String source) {
+		long total = 0L;
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			SubmissionResult result = context.testSubmission(source, exercise);
+			total += System.nanoTime() - start;
+			if (result.getNumTestsPassed() != exercise.getTestCaseData().size()) {
+				throw new IllegalStateException("Not all tests passed");
+			}
+		}
+		return total / (ITERATIONS * 1000000.0);
+	}
+
+	public static void main(String[] args) {
+		BuilderTestContext unpooled = createContext(0);
+		BuilderTestContext pooled = createContext(PythonInterpreterPool.DEFAULT_POOL_SIZE);
+		ProblemAndTestCaseList exercise = pooled.getExercise("compute_sum");
+		String source = pooled.getSourceText("compute_sum_pass.py");
+		
+		// Warm up both configurations (including Jython itself)
+		for (int i = 0; i < WARMUP; i++) {
+			unpooled.testSubmission(source, exercise);
+			pooled.testSubmission(source, exercise);
+		}
+		
+		// Alternate, so that neither configuration benefits from running later
+		for (int round = 0; round < 2; round++) {
+			System.out.printf("Without pool: %.2f ms per submission%n", measure(unpooled, exercise, source));
+			System.out.printf("With pool:    %.2f ms per submission%n", measure(pooled, exercise, source));
+		}
+		
+		unpooled.cleanup();
+		pooled.cleanup();
+	}
+}
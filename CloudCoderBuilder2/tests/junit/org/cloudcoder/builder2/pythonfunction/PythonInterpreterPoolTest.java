@@ -0,0 +1,50 @@
+package org.cloudcoder.builder2.pythonfunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.python.core.PyObject;
+import org.python.util.PythonInterpreter;
+import org.junit.Test;
+
+public class PythonInterpreterPoolTest {
+	@Test
+	public void testDefinitionsDoNotLeakBetweenBorrows() {
+		PythonInterpreterPool pool = new PythonInterpreterPool(1);
+		
+		PythonInterpreter first = pool.borrow();
+		first.exec("import math\nsecret = 42\ndef f():\n  return secret\n");
+		assertNotNull(first.get("f"));
+		pool.release(first);
+		
+		PythonInterpreter second = pool.borrow();
+		assertSame(first, second);
+		assertNull(second.get("secret"));
+		assertNull(second.get("f"));
+		assertNull(second.get("math"));
+		assertEquals("__main__", second.eval("__name__").toString());
+		
+		// The interpreter is still usable
+		second.exec("def g():\n  return 17\n");
+		PyObject result = second.get("g").__call__();
+		assertEquals(17, result.asInt());
+		pool.release(second);
+	}
+	
+	@Test
+	public void testEmptyPoolCreatesInterpreter() {
+		PythonInterpreterPool pool = new PythonInterpreterPool(1);
+		PythonInterpreter first = pool.borrow();
+		PythonInterpreter second = pool.borrow();
+		assertNotSame(first, second);
+		
+		// Only one interpreter is kept
+		pool.release(first);
+		pool.release(second);
+		assertSame(first, pool.borrow());
+		assertNotSame(second, pool.borrow());
+	}
+}
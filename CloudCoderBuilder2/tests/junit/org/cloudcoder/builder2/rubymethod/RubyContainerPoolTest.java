@@ -0,0 +1,194 @@
+package org.cloudcoder.builder2.rubymethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.builder2.server.Builder2;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.jruby.embed.AttributeName;
+import org.jruby.embed.ScriptingContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RubyContainerPoolTest extends BuilderTest {
+	private static final int NUM_THREADS = 4;
+	private static final int SUBMISSIONS_PER_THREAD = 20;
+
+	/** Defines a helper method, a constant, a class, and a global variable. */
+	private static final String LEAKY =
+			"$leak = 1\n" +
+			"LEAK = 1\n" +
+			"class Leak\n" +
+			"end\n" +
+			"def helper(a, b)\n" +
+			"  a + b\n" +
+			"end\n" +
+			"def sum(a, b)\n" +
+			"  helper(a, b)\n" +
+			"end\n";
+
+	/** Passes only if nothing defined by {@link #LEAKY} is visible. */
+	private static final String VICTIM =
+			"def sum(a, b)\n" +
+			"  (defined?(helper) || defined?(LEAK) || defined?(Leak) || $leak) ? -1 : a + b\n" +
+			"end\n";
+
+	@Before
+	public void setUp() {
+		createContext();
+	}
+
+	@After
+	public void tearDown() {
+		destroyContext();
+	}
+
+	private static Problem createProblem() {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.RUBY_METHOD);
+		problem.setTestname("sum");
+		return problem;
+	}
+
+	private static List<TestCase> createTestCases() {
+		List<TestCase> testCaseList = new ArrayList<TestCase>();
+		String[][] data = { { "t0", "2, 3", "5" }, { "t1", "4, -11", "-7" } };
+		for (String[] d : data) {
+			TestCase testCase = new TestCase();
+			testCase.setTestCaseName(d[0]);
+			testCase.setInput(d[1]);
+			testCase.setOutput(d[2]);
+			testCaseList.add(testCase);
+		}
+		return testCaseList;
+	}
+
+	@Test
+	public void testResetRemovesTopLevelDefinitions() {
+		RubyContainerPool pool = new RubyContainerPool(1, 10);
+		RubyContainerPool.PooledContainer first = pool.borrow();
+		ScriptingContainer container = first.getContainer();
+		container.runScriptlet(LEAKY);
+		assertEquals(5L, container.runScriptlet("sum(2, 3)"));
+		pool.release(first, true);
+
+		RubyContainerPool.PooledContainer second = pool.borrow();
+		assertSame(first, second);
+		container.runScriptlet(VICTIM);
+		assertEquals(5L, container.runScriptlet("sum(2, 3)"));
+		pool.release(second, true);
+	}
+
+	@Test
+	public void testResetRemovesInstanceAndClassVariablesOfMain() {
+		RubyContainerPool pool = new RubyContainerPool(1, 10);
+		RubyContainerPool.PooledContainer first = pool.borrow();
+		ScriptingContainer container = first.getContainer();
+		container.runScriptlet(
+				"@@calls = 0\n" +
+				"def memo(x)\n" +
+				"  @@calls += 1\n" +
+				"  @memo ||= {}\n" +
+				"  @memo[x] ||= 42\n" +
+				"end\n");
+		assertEquals(42L, container.runScriptlet("memo(3)"));
+		pool.release(first, true);
+
+		// The same memoizing method, in a different submission,
+		// must not see the values memoized by the first one
+		RubyContainerPool.PooledContainer second = pool.borrow();
+		assertSame(first, second);
+		container.runScriptlet(
+				"def memo(x)\n" +
+				"  @memo ||= {}\n" +
+				"  @memo[x] ||= x\n" +
+				"end\n");
+		assertEquals(3L, container.runScriptlet("memo(3)"));
+		assertEquals(null, container.runScriptlet("defined?(@@calls)"));
+		pool.release(second, true);
+	}
+
+	@Test
+	public void testContainerIsRetiredAfterCoreClassIsChanged() throws Exception {
+		RubyContainerPool pool = new RubyContainerPool(1, 10);
+		RubyContainerPool.PooledContainer first = pool.borrow();
+		first.getContainer().runScriptlet("class String\n  def shout\n    upcase\n  end\nend\n");
+		pool.release(first, true);
+
+		// A replacement is created in the background
+		RubyContainerPool.PooledContainer second = pool.borrow();
+		assertNotSame(first, second);
+		assertEquals(Boolean.FALSE, second.getContainer().runScriptlet("'x'.respond_to?(:shout)"));
+	}
+
+	@Test
+	public void testPooledContainersDoNotShareVariables() {
+		// Test threads call methods concurrently, so calls must not
+		// use the container's (unsynchronized) variable map
+		RubyContainerPool pool = new RubyContainerPool(1, 10);
+		RubyContainerPool.PooledContainer pooled = pool.borrow();
+		assertEquals(Boolean.FALSE, pooled.getContainer().getAttribute(AttributeName.SHARING_VARIABLES));
+		pool.release(pooled, true);
+	}
+
+	@Test
+	public void testContainerIsRetiredAfterMaxUses() {
+		RubyContainerPool pool = new RubyContainerPool(1, 2);
+		RubyContainerPool.PooledContainer first = pool.borrow();
+		pool.release(first, true);
+		assertSame(first, pool.borrow());
+		pool.release(first, true);
+		assertNotSame(first, pool.borrow());
+	}
+
+	@Test
+	public void testNoStateLeaksBetweenConcurrentSubmissions() throws Exception {
+		Properties config = createConfig();
+		config.setProperty(RubyContainerPool.POOL_SIZE_PROPERTY, "2");
+		config.setProperty(RubyContainerPool.MAX_USES_PROPERTY, "5");
+		final Builder2 builder = new Builder2(config);
+		final Problem problem = createProblem();
+		final List<TestCase> testCaseList = createTestCases();
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		List<Future<SubmissionResult>> victims = new ArrayList<Future<SubmissionResult>>();
+		List<Future<SubmissionResult>> leaky = new ArrayList<Future<SubmissionResult>>();
+		try {
+			for (int i = 0; i < NUM_THREADS * SUBMISSIONS_PER_THREAD; i++) {
+				final String source = (i % 2 == 0) ? LEAKY : VICTIM;
+				Future<SubmissionResult> future = executor.submit(new Callable<SubmissionResult>() {
+					@Override
+					public SubmissionResult call() throws Exception {
+						return builder.testSubmission(problem, testCaseList, source);
+					}
+				});
+				((i % 2 == 0) ? leaky : victims).add(future);
+			}
+			for (Future<SubmissionResult> future : leaky) {
+				SubmissionResult result = future.get();
+				assertTrue(result.isAllTestsPassed());
+			}
+			for (Future<SubmissionResult> future : victims) {
+				SubmissionResult result = future.get();
+				assertTrue("state leaked from another submission", result.isAllTestsPassed());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
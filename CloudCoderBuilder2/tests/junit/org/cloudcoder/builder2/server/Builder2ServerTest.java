@@ -0,0 +1,138 @@
+package org.cloudcoder.builder2.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.cloudcoder.app.shared.model.wire.Message;
+import org.cloudcoder.app.shared.model.wire.MessageChannel;
+import org.cloudcoder.app.shared.model.wire.MessageType;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test a {@link Builder2Server} with several submissions in flight
+ * on one connection.  The test plays the role of the webapp.
+ */
+public class Builder2ServerTest extends BuilderTest {
+	private static final int CAPACITY = 2;
+
+	private ServerSocket serverSocket;
+	private ExecutorService executor;
+	private Builder2Server server;
+	private Thread serverThread;
+	private Socket socket;
+	private MessageChannel channel;
+
+	private ProblemAndTestCaseList computeSum;
+	private String computeSumHash;
+
+	@Before
+	public void setUp() throws IOException {
+		createContext();
+		computeSum = getContext().getExercise("compute_sum");
+		computeSumHash = new HashProblemAndTestCaseData<ProblemAndTestCaseList>(computeSum).computeExact();
+
+		serverSocket = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+
+		Properties config = createConfig();
+		config.setProperty("cloudcoder.submitsvc.oop.host", "localhost");
+		config.setProperty("cloudcoder.submitsvc.oop.port", String.valueOf(serverSocket.getLocalPort()));
+		config.setProperty("cloudcoder.submitsvc.oop.ssl.useSSL", "false");
+
+		executor = Executors.newFixedThreadPool(CAPACITY);
+		server = new Builder2Server(
+				new WebappSocketFactory(new Builder2Daemon.Options(config)),
+				new ProblemAndTestCaseCache(4), executor, CAPACITY, config);
+		serverThread = new Thread(server);
+		serverThread.start();
+
+		socket = serverSocket.accept();
+		channel = new MessageChannel(socket.getInputStream(), socket.getOutputStream());
+		channel.exchangeHeaders();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.shutdown();
+		serverThread.join();
+		executor.shutdown();
+		channel.close();
+		socket.close();
+		serverSocket.close();
+		destroyContext();
+	}
+
+	private void sendSubmission(int correlationId, String programText) throws IOException {
+		channel.send(MessageType.PROBLEM_HASH, correlationId, BinaryConversion.encodeString(computeSumHash));
+		channel.send(MessageType.PROGRAM_TEXT, correlationId, BinaryConversion.encodeString(programText));
+		channel.flush();
+	}
+
+	/**
+	 * Receive messages until the results for the given number of submissions
+	 * have arrived, sending the problem whenever the builder asks for it.
+	 */
+	private Map<Integer, SubmissionResult> receiveResults(int count, Map<Integer, Boolean> haveProblem) throws IOException {
+		Map<Integer, SubmissionResult> results = new HashMap<Integer, SubmissionResult>();
+		while (results.size() < count) {
+			Message message = channel.receive();
+			if (message.getType() == MessageType.HAVE_PROBLEM) {
+				boolean have = BinaryConversion.decodeBoolean(message.getPayload());
+				haveProblem.put(message.getCorrelationId(), have);
+				if (!have) {
+					channel.send(MessageType.PROBLEM_AND_TEST_CASES, message.getCorrelationId(),
+							BinaryConversion.encodeProblemAndTestCases(computeSum.getProblem(), computeSum.getTestCaseData()));
+					channel.flush();
+				}
+			} else {
+				assertEquals(MessageType.SUBMISSION_RESULT, message.getType());
+				results.put(message.getCorrelationId(), BinaryConversion.decodeSubmissionResult(message.getPayload()));
+			}
+		}
+		return results;
+	}
+
+	@Test
+	public void testPipelinedSubmissions() throws Exception {
+		assertEquals(CAPACITY, BinaryConversion.decodeInt(channel.receive(MessageType.CAPACITY)));
+
+		String pass = getContext().getSourceText("compute_sum_pass.py");
+		String wrongName = getContext().getSourceText("compute_sum_wrong_function_name.py");
+
+		// Two submissions in flight at once
+		sendSubmission(1, pass);
+		sendSubmission(2, wrongName);
+		Map<Integer, Boolean> haveProblem = new HashMap<Integer, Boolean>();
+		Map<Integer, SubmissionResult> results = receiveResults(2, haveProblem);
+
+		// Each result must be matched with its own submission
+		assertFalse(haveProblem.get(1));
+		assertAllTestsPassed(results.get(1), computeSum);
+		assertCompilationError(results.get(2));
+
+		// The problem is now cached, so it is not sent again
+		sendSubmission(3, pass);
+		results = receiveResults(1, haveProblem);
+		assertTrue(haveProblem.get(3));
+		assertNotNull(results.get(3));
+		assertAllTestsPassed(results.get(3), computeSum);
+	}
+}
@@ -0,0 +1,216 @@
+package org.cloudcoder.builder2.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.cloudcoder.app.shared.model.wire.Message;
+import org.cloudcoder.app.shared.model.wire.MessageChannel;
+import org.cloudcoder.app.shared.model.wire.MessageType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Round-trip test of the webapp/builder wire protocol over a loopback socket.
+ */
+public class MessageChannelTest {
+	private static final String PROBLEM_HASH = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+
+	private ServerSocket serverSocket;
+	private Socket webappSocket;
+	private Socket builderSocket;
+
+	@Before
+	public void setUp() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+		builderSocket = new Socket("localhost", serverSocket.getLocalPort());
+		webappSocket = serverSocket.accept();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		builderSocket.close();
+		webappSocket.close();
+		serverSocket.close();
+	}
+
+	private MessageChannel webappChannel() throws IOException {
+		return new MessageChannel(webappSocket.getInputStream(), webappSocket.getOutputStream());
+	}
+
+	private MessageChannel builderChannel() throws IOException {
+		return new MessageChannel(builderSocket.getInputStream(), builderSocket.getOutputStream());
+	}
+
+	private static Problem createProblem() {
+		Problem problem = new Problem();
+		problem.setProblemId(42);
+		problem.setCourseId(3);
+		problem.setProblemType(ProblemType.JAVA_METHOD);
+		problem.setTestname("sumOfSquares");
+		problem.setBriefDescription("Sum of squares");
+		problem.setDescription("Return the sum of the squares of a and b — résumé");
+		problem.setSkeleton("public static int sumOfSquares(int a, int b) {\n}\n");
+		problem.setWhenDue(1400000000000L);
+		problem.setVisible(true);
+		return problem;
+	}
+
+	private static List<TestCase> createTestCaseList() {
+		List<TestCase> testCaseList = new ArrayList<TestCase>();
+		for (int i = 0; i < 3; i++) {
+			TestCase testCase = new TestCase();
+			testCase.setTestCaseId(100 + i);
+			testCase.setProblemId(42);
+			testCase.setTestCaseName("test" + i);
+			testCase.setInput(i + ", " + (i+1));
+			testCase.setOutput(String.valueOf(i*i + (i+1)*(i+1)));
+			testCase.setSecret(i == 2);
+			testCaseList.add(testCase);
+		}
+		return testCaseList;
+	}
+
+	private static SubmissionResult createSubmissionResult() {
+		CompilationResult compRes = new CompilationResult(CompilationOutcome.SUCCESS);
+		compRes.setCompilerDiagnosticList(new CompilerDiagnostic[]{
+				new CompilerDiagnostic(3, 3, 5, 9, "warning: unused variable")
+		});
+		SubmissionResult result = new SubmissionResult(compRes);
+		TestResult passed = new TestResult(TestOutcome.PASSED, "Passed!", "out", "");
+		TestResult failed = new TestResult(TestOutcome.FAILED_ASSERTION, "Expected 5", null, null);
+		failed.setActualOutput("4");
+		result.setTestResults(new TestResult[]{ passed, failed });
+		result.addAnnotation(new SubmissionResultAnnotation("gcov", "1,2,3"));
+		return result;
+	}
+
+	@Test
+	public void testSubmissionRoundTrip() throws Exception {
+		final Problem problem = createProblem();
+		final List<TestCase> testCaseList = createTestCaseList();
+		final String programText = "public static int sumOfSquares(int a, int b) {\n\treturn a*a + b*b; // é\n}\n";
+
+		// The "webapp" side runs in a separate thread, just as WorkerTask does
+		final SubmissionResult[] received = new SubmissionResult[1];
+		final Exception[] webappError = new Exception[1];
+		Thread webapp = new Thread() {
+			@Override
+			public void run() {
+				try {
+					MessageChannel channel = webappChannel();
+					channel.exchangeHeaders();
+					channel.send(MessageType.KEEPALIVE);
+					channel.send(MessageType.PROBLEM_HASH, BinaryConversion.encodeString(PROBLEM_HASH));
+					channel.flush();
+					if (!BinaryConversion.decodeBoolean(channel.receive(MessageType.HAVE_PROBLEM))) {
+						channel.send(MessageType.PROBLEM_AND_TEST_CASES, BinaryConversion.encodeProblemAndTestCases(problem, testCaseList));
+					}
+					channel.send(MessageType.PROGRAM_TEXT, BinaryConversion.encodeString(programText));
+					channel.flush();
+					received[0] = BinaryConversion.decodeSubmissionResult(channel.receive(MessageType.SUBMISSION_RESULT));
+				} catch (Exception e) {
+					webappError[0] = e;
+				}
+			}
+		};
+		webapp.start();
+
+		// The "builder" side runs in this thread, just as Builder2Server does
+		MessageChannel channel = builderChannel();
+		channel.exchangeHeaders();
+		assertEquals(MessageType.KEEPALIVE, channel.receive().getType());
+		Message message = channel.receive();
+		assertEquals(MessageType.PROBLEM_HASH, message.getType());
+		assertEquals(PROBLEM_HASH, BinaryConversion.decodeString(message.getPayload()));
+		channel.send(MessageType.HAVE_PROBLEM, BinaryConversion.encodeBoolean(false));
+		channel.flush();
+
+		Problem receivedProblem = new Problem();
+		List<TestCase> receivedTestCaseList = new ArrayList<TestCase>();
+		BinaryConversion.decodeProblemAndTestCases(channel.receive(MessageType.PROBLEM_AND_TEST_CASES), receivedProblem, receivedTestCaseList);
+		String receivedProgramText = BinaryConversion.decodeString(channel.receive(MessageType.PROGRAM_TEXT));
+
+		assertEquals(problem, receivedProblem);
+		assertEquals(testCaseList.size(), receivedTestCaseList.size());
+		for (int i = 0; i < testCaseList.size(); i++) {
+			assertEquals(testCaseList.get(i), receivedTestCaseList.get(i));
+		}
+		assertEquals(programText, receivedProgramText);
+
+		channel.send(MessageType.SUBMISSION_RESULT, BinaryConversion.encodeSubmissionResult(createSubmissionResult()));
+		channel.flush();
+
+		webapp.join();
+		if (webappError[0] != null) {
+			throw webappError[0];
+		}
+
+		SubmissionResult result = received[0];
+		assertEquals(CompilationOutcome.SUCCESS, result.getCompilationResult().getOutcome());
+		assertEquals(1, result.getCompilationResult().getCompilerDiagnosticList().length);
+		assertEquals(new CompilerDiagnostic(3, 3, 5, 9, "warning: unused variable"), result.getCompilationResult().getCompilerDiagnosticList()[0]);
+		assertEquals(2, result.getTestResults().length);
+		assertEquals(TestOutcome.PASSED, result.getTestResults()[0].getOutcome());
+		assertEquals("out", result.getTestResults()[0].getStdout());
+		assertEquals(TestOutcome.FAILED_ASSERTION, result.getTestResults()[1].getOutcome());
+		assertNull(result.getTestResults()[1].getStdout());
+		assertEquals("4", result.getTestResults()[1].getActualOutput());
+		assertFalse(result.isAllTestsPassed());
+		assertEquals(1, result.getAnnotationList().size());
+		assertEquals("gcov", result.getAnnotationList().get(0).getKey());
+		assertEquals("1,2,3", result.getAnnotationList().get(0).getValue());
+	}
+
+	@Test
+	public void testProtocolVersionMismatch() throws Exception {
+		// Simulate a peer that speaks a newer version of the protocol
+		DataOutputStream out = new DataOutputStream(webappSocket.getOutputStream());
+		out.writeInt(MessageChannel.MAGIC);
+		out.writeInt(MessageChannel.PROTOCOL_VERSION + 1);
+		out.flush();
+
+		try {
+			builderChannel().exchangeHeaders();
+			fail("Protocol version mismatch was not detected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("version"));
+		}
+	}
+
+	@Test
+	public void testUnexpectedMessageType() throws Exception {
+		MessageChannel webapp = webappChannel();
+		webapp.send(MessageType.PROGRAM_TEXT, BinaryConversion.encodeString("x"));
+		webapp.flush();
+
+		try {
+			builderChannel().receive(MessageType.PROBLEM_HASH);
+			fail("Unexpected message type was not detected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("PROGRAM_TEXT"));
+		}
+	}
+}
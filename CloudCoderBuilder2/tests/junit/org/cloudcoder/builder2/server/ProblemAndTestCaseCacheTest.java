@@ -0,0 +1,75 @@
+package org.cloudcoder.builder2.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.junit.Test;
+
+public class ProblemAndTestCaseCacheTest {
+	private static Problem createProblem(String testname) {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.C_PROGRAM);
+		problem.setTestname(testname);
+		problem.setBriefDescription("brief");
+		problem.setDescription("description");
+		problem.setSkeleton("");
+		return problem;
+	}
+
+	private static ProblemAndTestCaseList create(String testname, String expectedOutput) {
+		Problem problem = createProblem(testname);
+		TestCase testCase = new TestCase();
+		testCase.setTestCaseName("t0");
+		testCase.setInput("");
+		testCase.setOutput(expectedOutput);
+		ProblemAndTestCaseList list = new ProblemAndTestCaseList();
+		list.setProblem(problem);
+		list.addTestCase(testCase);
+		return list;
+	}
+
+	private static String hash(ProblemAndTestCaseList list) {
+		return new HashProblemAndTestCaseData<ProblemAndTestCaseList>(list).computeExact();
+	}
+
+	@Test
+	public void testEditedProblemHasNewKey() {
+		ProblemAndTestCaseCache cache = new ProblemAndTestCaseCache(4);
+		ProblemAndTestCaseList original = create("hello", "Hello, world");
+		cache.put(hash(original), original);
+
+		// Same content, different problem id: same hash, cache hit
+		ProblemAndTestCaseList copy = create("hello", "Hello, world");
+		copy.getProblem().setProblemId(17);
+		assertSame(original, cache.get(hash(copy)));
+
+		// Instructor edits a test case: different hash, cache miss
+		ProblemAndTestCaseList edited = create("hello", "Hello, World");
+		assertFalse(hash(original).equals(hash(edited)));
+		assertNull(cache.get(hash(edited)));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		ProblemAndTestCaseCache cache = new ProblemAndTestCaseCache(2);
+		cache.put("a", create("a", ""));
+		cache.put("b", create("b", ""));
+
+		// Touch "a", so "b" becomes the least recently used entry
+		assertNotNull(cache.get("a"));
+		cache.put("c", create("c", ""));
+
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+}
@@ -0,0 +1,61 @@
+package org.cloudcoder.builder2.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WarmUpTest extends BuilderTest {
+	@Before
+	public void setUp() {
+		createContext();
+	}
+
+	@After
+	public void tearDown() {
+		destroyContext();
+	}
+
+	@Test
+	public void testCannedSubmissionsPass() {
+		// The problem types which don't depend on native compilers
+		Properties config = createConfig();
+		config.setProperty(WarmUp.WARM_UP_PROPERTY, "true");
+		config.setProperty(WarmUp.WARM_UP_PROBLEM_TYPES_PROPERTY, "java_method, java_program, python_function, ruby_method");
+		assertEquals(4, WarmUp.run(new Builder2(config), config));
+	}
+
+	@Test
+	public void testEveryExecutorThreadIsWarmedUp() throws Exception {
+		Properties config = createConfig();
+		config.setProperty(WarmUp.WARM_UP_PROPERTY, "true");
+		config.setProperty(WarmUp.WARM_UP_PROBLEM_TYPES_PROPERTY, "java_method");
+		
+		// Record the threads on which canned submissions are tested
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		ExecutorService executor = Executors.newFixedThreadPool(3, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				threads.add(t);
+				return t;
+			}
+		});
+		try {
+			assertEquals(1, WarmUp.run(new Builder2(config), config, executor, 3));
+			assertEquals(3, threads.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
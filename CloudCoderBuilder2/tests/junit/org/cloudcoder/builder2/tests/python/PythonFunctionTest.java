@@ -42,6 +42,14 @@ public class PythonFunctionTest extends BuilderTest {
 		super.assertCompilationError(result);
 	}
 	
+	@Test
+	public void testComputeSumSyntaxError() {
+		String source = getContext().getSourceText("compute_sum_syntax_error.py");
+		SubmissionResult result = getContext().testSubmission(source, computeSum);
+		super.assertCompilationError(result);
+		super.assertCompilerDiagnosticAtLine(result, 3);
+	}
+	
 	@Test
 	public void testGravityNameErrorDueToMisspelledParam() {
 		String source = getContext().getSourceText("gravity_nameerror_due_to_misspelled_param.py");
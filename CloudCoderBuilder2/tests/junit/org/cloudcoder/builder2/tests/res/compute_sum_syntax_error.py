@@ -0,0 +1,3 @@
+def compute_sum(a, b):
+	result = a + b
+	return result +
@@ -32,8 +32,10 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ServerBusyException;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
@@ -42,6 +44,8 @@ import org.cloudcoder.webservice.util.AuthenticationException;
 import org.cloudcoder.webservice.util.BadRequestException;
 import org.cloudcoder.webservice.util.Credentials;
 import org.cloudcoder.webservice.util.ServletUtil;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -51,7 +55,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Servlet to accept submissions (POST) and deliver submission results (GET)
- * back to the client.
+ * back to the client.  A GET request for a submission which is still
+ * pending is held (without tying up a container thread) until either the
+ * result is available or the maximum hold time expires, so clients do not
+ * need to poll rapidly.
  * 
  * @author David Hovemeyer
  */
@@ -60,6 +67,44 @@ public class Submit extends HttpServlet {
 	
 	private static final Logger logger = LoggerFactory.getLogger(Submit.class);
 	
+	/**
+	 * Default maximum time to hold a GET request for a pending submission:
+	 * can be overridden with the cloudcoder.builderwebservice.maxHoldMs
+	 * property.  0 means that GET requests are never held.
+	 */
+	private static final long DEFAULT_MAX_HOLD_MS = 30*1000;
+	
+	/**
+	 * Resumes a held GET request when its submission is complete.
+	 */
+	private static class ResumeOnCompletion implements ISubmissionCompletionListener {
+		private final Continuation continuation;
+		
+		public ResumeOnCompletion(Continuation continuation) {
+			this.continuation = continuation;
+		}
+		
+		@Override
+		public void onSubmissionComplete(IFutureSubmissionResult future) {
+			try {
+				continuation.resume();
+			} catch (IllegalStateException e) {
+				// The hold time already expired, and the client
+				// was told that the submission is pending
+				logger.debug("Submission completed after request expired");
+			}
+		}
+	}
+	
+	private long maxHoldMs;
+	
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		String maxHold = getServletContext().getInitParameter("cloudcoder.builderwebservice.maxHoldMs");
+		maxHoldMs = (maxHold != null) ? Long.parseLong(maxHold) : DEFAULT_MAX_HOLD_MS;
+	}
+	
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
 			throws ServletException, IOException {
@@ -81,11 +126,23 @@ public class Submit extends HttpServlet {
 			
 			SubmissionResult submissionResult;
 			try {
-				submissionResult = result.waitFor(IFutureSubmissionResult.STANDARD_POLL_WAIT_MS);
+				submissionResult = result.waitFor(0L);
 			} catch (InterruptedException e) {
 				throw new ServletException("Unexpectedly interrupted waiting for submission result", e);
 			}
 			
+			if (submissionResult == null) {
+				Continuation continuation = ContinuationSupport.getContinuation(req);
+				if (continuation.isInitial() && maxHoldMs > 0) {
+					// Release the thread: the request will be dispatched again
+					// when the submission completes or the hold time expires
+					continuation.setTimeout(maxHoldMs);
+					continuation.suspend();
+					result.addCompletionListener(new ResumeOnCompletion(continuation));
+					return;
+				}
+			}
+			
 			Map<String, Object> resultObj = new HashMap<String, Object>();
 			if (submissionResult == null) {
 				// Submission is still pending
@@ -183,6 +240,9 @@ public class Submit extends HttpServlet {
 			logger.warn("Exception interpreting request", e);
 		} catch (AuthenticationException e) {
 			ServletUtil.authorizationRequired(resp, e.getMessage(), "BuilderWebService");
+		} catch (ServerBusyException e) {
+			logger.warn("Submission rejected: {}", e.getMessage());
+			ServletUtil.serviceUnavailable(resp, e.getMessage(), e.getRetryAfterSeconds());
 		} catch (SubmissionException e) {
 			logger.error("Error handling submission", e);
 			ServletUtil.internalServerError(resp, e.getMessage());
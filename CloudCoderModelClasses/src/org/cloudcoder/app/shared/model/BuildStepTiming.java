@@ -0,0 +1,150 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wall and CPU time taken by one step of building and testing
+ * a submission.  A Builder reports the timings of all of the steps
+ * it executed as a {@link SubmissionResultAnnotation} whose key is
+ * {@link #ANNOTATION_KEY}: see {@link #encode(List)} and
+ * {@link #decode(String)}.  The timings are diagnostic only,
+ * and are never shown to users.
+ * 
+ * @author David Hovemeyer
+ */
+public class BuildStepTiming implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	/** Key of the {@link SubmissionResultAnnotation} containing the encoded timings. */
+	public static final String ANNOTATION_KEY = "BuildStepTimings";
+	
+	private String name;
+	private long wallTimeMs;
+	private long cpuTimeMs;
+	
+	/**
+	 * Constructor.
+	 */
+	public BuildStepTiming() {
+		
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param name        the name of the build step
+	 * @param wallTimeMs  the elapsed (wall clock) time in milliseconds
+	 * @param cpuTimeMs   the CPU time in milliseconds, or -1 if not known
+	 */
+	public BuildStepTiming(String name, long wallTimeMs, long cpuTimeMs) {
+		this.name = name;
+		this.wallTimeMs = wallTimeMs;
+		this.cpuTimeMs = cpuTimeMs;
+	}
+	
+	/**
+	 * @return the name of the build step
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the elapsed (wall clock) time in milliseconds
+	 */
+	public long getWallTimeMs() {
+		return wallTimeMs;
+	}
+	
+	/**
+	 * @return the CPU time in milliseconds, or -1 if not known
+	 */
+	public long getCpuTimeMs() {
+		return cpuTimeMs;
+	}
+	
+	/**
+	 * Encode a list of timings as a string of the form
+	 * <code>name=wall/cpu,name=wall/cpu,...</code>.
+	 * 
+	 * @param timingList the list of timings
+	 * @return the encoded timings
+	 */
+	public static String encode(List<BuildStepTiming> timingList) {
+		StringBuilder buf = new StringBuilder();
+		for (BuildStepTiming timing : timingList) {
+			if (buf.length() > 0) {
+				buf.append(',');
+			}
+			buf.append(timing.name);
+			buf.append('=');
+			buf.append(timing.wallTimeMs);
+			buf.append('/');
+			buf.append(timing.cpuTimeMs);
+		}
+		return buf.toString();
+	}
+	
+	/**
+	 * Decode a list of timings encoded by {@link #encode(List)}.
+	 * Malformed entries are ignored.
+	 * 
+	 * @param encoded the encoded timings
+	 * @return the list of timings
+	 */
+	public static List<BuildStepTiming> decode(String encoded) {
+		List<BuildStepTiming> result = new ArrayList<BuildStepTiming>();
+		if (encoded == null || encoded.equals("")) {
+			return result;
+		}
+		for (String entry : encoded.split(",")) {
+			int eq = entry.indexOf('=');
+			int slash = entry.indexOf('/', eq + 1);
+			if (eq <= 0 || slash < 0) {
+				continue;
+			}
+			try {
+				long wallTimeMs = Long.parseLong(entry.substring(eq + 1, slash));
+				long cpuTimeMs = Long.parseLong(entry.substring(slash + 1));
+				result.add(new BuildStepTiming(entry.substring(0, eq), wallTimeMs, cpuTimeMs));
+			} catch (NumberFormatException e) {
+				// Ignore malformed entry
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the timings reported in a {@link SubmissionResult}.
+	 * 
+	 * @param result the {@link SubmissionResult}
+	 * @return the list of timings (empty if the result has no timings)
+	 */
+	public static List<BuildStepTiming> fromSubmissionResult(SubmissionResult result) {
+		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
+			if (ANNOTATION_KEY.equals(annotation.getKey())) {
+				return decode(annotation.getValue());
+			}
+		}
+		return new ArrayList<BuildStepTiming>();
+	}
+}
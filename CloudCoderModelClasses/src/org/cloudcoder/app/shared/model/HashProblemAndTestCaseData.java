@@ -27,6 +27,12 @@ import java.io.UnsupportedEncodingException;
  * So, things like timestamps, parent hashes (for derived problems), etc.
  * should not be hashed.
  * 
+ * The hash computed by {@link #compute()} is the one stored with
+ * exercises in the exercise repository, and is meant only to detect
+ * changes.  It trims and concatenates fields, so different content
+ * can hash the same.  Use {@link #computeExact()} when the hash
+ * is used as a cache key.
+ * 
  * @author David Hovemeyer
  */
 public class HashProblemAndTestCaseData<
@@ -34,6 +40,7 @@ public class HashProblemAndTestCaseData<
 	> {
 	private ObjType problemAndTestCaseData;
 	private SHA1 sha1;
+	private boolean exact;
 	
 	/**
 	 * Constructor.
@@ -63,6 +70,21 @@ public class HashProblemAndTestCaseData<
 		byte[] digest = sha1.digest();
 		return new ConvertBytesToHex(digest).convert();
 	}
+	
+	/**
+	 * Compute a hash suitable for use as a cache key.
+	 * Unlike {@link #compute()}, every field is digested exactly
+	 * (without trimming), and is prefixed by its length, so that
+	 * problems and test cases whose content differs in any way
+	 * are guaranteed to be digested differently.
+	 * The result is a 40-character hex string (160 bits of data).
+	 * 
+	 * @return the hash
+	 */
+	public String computeExact() {
+		exact = true;
+		return compute();
+	}
 
 	private void hashProblemData(IProblemData problemData) {
 		// Fields present in schema version 0 and later.
@@ -97,16 +119,43 @@ public class HashProblemAndTestCaseData<
 	}
 
 	private void updateString(String s) {
+		if (exact) {
+			updateExact(s);
+			return;
+		}
+		
 		// Note: we always digest the trimmed version of the string,
 		// and always using UTF-8 to convert to bytes.
+		sha1.update(toUTF8(s.trim()));
+	}
+	
+	private void updateExact(String s) {
+		// Digest the length (in bytes) of the string, followed by its bytes.
+		// A null string is digested as length -1.
+		if (s == null) {
+			sha1.update(toUTF8("-1:"));
+			return;
+		}
+		byte[] bytes = toUTF8(s);
+		sha1.update(toUTF8(bytes.length + ":"));
+		sha1.update(bytes);
+	}
+	
+	private static byte[] toUTF8(String s) {
 		try {
-			sha1.update(s.trim().getBytes("UTF-8"));
+			return s.getBytes("UTF-8");
 		} catch (UnsupportedEncodingException e) {
 			throw new IllegalStateException("Can't convert string to UTF-8 bytes?");
 		}
 	}
 
 	private void updateStringIfNonEmpty(String s) {
+		if (exact) {
+			// Optional fields are always digested, so that
+			// each field is in a fixed position
+			updateExact(s);
+			return;
+		}
 		if (s == null) {
 			return;
 		}
@@ -28,6 +28,16 @@ public class HealthData implements IModelObject<HealthData> {
 	private int submissionQueueSizeCurrent;
 	private int submissionQueueSizeMaxLastFiveMinutes;
 	private int numConnectedBuilderThreads;
+	private int queueWaitMsP50;
+	private int queueWaitMsP90;
+	private int queueWaitMsP99;
+	private int queueWaitMsMax;
+	private int serviceTimeMsP50;
+	private int serviceTimeMsP90;
+	private int serviceTimeMsP99;
+	private int serviceTimeMsMax;
+	private String buildStepWallTimeMs;
+	private String buildStepCpuTimeMs;
 	
 	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_CURRENT = new ModelObjectField<HealthData, Integer>("submissionQueueSizeCurrent", Integer.class, 0) {
 		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeCurrent(value); }
@@ -44,6 +54,56 @@ public class HealthData implements IModelObject<HealthData> {
 		public Integer get(HealthData obj) { return obj.getNumConnectedBuilderThreads(); }
 	};
 	
+	public static final ModelObjectField<HealthData, Integer> QUEUE_WAIT_MS_P50 = new ModelObjectField<HealthData, Integer>("queueWaitMsP50", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setQueueWaitMsP50(value); }
+		public Integer get(HealthData obj) { return obj.getQueueWaitMsP50(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> QUEUE_WAIT_MS_P90 = new ModelObjectField<HealthData, Integer>("queueWaitMsP90", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setQueueWaitMsP90(value); }
+		public Integer get(HealthData obj) { return obj.getQueueWaitMsP90(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> QUEUE_WAIT_MS_P99 = new ModelObjectField<HealthData, Integer>("queueWaitMsP99", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setQueueWaitMsP99(value); }
+		public Integer get(HealthData obj) { return obj.getQueueWaitMsP99(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> QUEUE_WAIT_MS_MAX = new ModelObjectField<HealthData, Integer>("queueWaitMsMax", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setQueueWaitMsMax(value); }
+		public Integer get(HealthData obj) { return obj.getQueueWaitMsMax(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SERVICE_TIME_MS_P50 = new ModelObjectField<HealthData, Integer>("serviceTimeMsP50", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setServiceTimeMsP50(value); }
+		public Integer get(HealthData obj) { return obj.getServiceTimeMsP50(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SERVICE_TIME_MS_P90 = new ModelObjectField<HealthData, Integer>("serviceTimeMsP90", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setServiceTimeMsP90(value); }
+		public Integer get(HealthData obj) { return obj.getServiceTimeMsP90(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SERVICE_TIME_MS_P99 = new ModelObjectField<HealthData, Integer>("serviceTimeMsP99", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setServiceTimeMsP99(value); }
+		public Integer get(HealthData obj) { return obj.getServiceTimeMsP99(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SERVICE_TIME_MS_MAX = new ModelObjectField<HealthData, Integer>("serviceTimeMsMax", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setServiceTimeMsMax(value); }
+		public Integer get(HealthData obj) { return obj.getServiceTimeMsMax(); }
+	};
+	
+	public static final ModelObjectField<HealthData, String> BUILD_STEP_WALL_TIME_MS = new ModelObjectField<HealthData, String>("buildStepWallTimeMs", String.class, 4096) {
+		public void set(HealthData obj, String value) { obj.setBuildStepWallTimeMs(value); }
+		public String get(HealthData obj) { return obj.getBuildStepWallTimeMs(); }
+	};
+	
+	public static final ModelObjectField<HealthData, String> BUILD_STEP_CPU_TIME_MS = new ModelObjectField<HealthData, String>("buildStepCpuTimeMs", String.class, 4096) {
+		public void set(HealthData obj, String value) { obj.setBuildStepCpuTimeMs(value); }
+		public String get(HealthData obj) { return obj.getBuildStepCpuTimeMs(); }
+	};
+	
 	/**
 	 * Model object fields (schema version 0).
 	 */
@@ -52,10 +112,34 @@ public class HealthData implements IModelObject<HealthData> {
 			.add(SUBMISSION_QUEUE_SIZE_MAX_LAST_FIVE_MINUTES)
 			.add(NUM_CONNECTED_BUILDER_THREADS);
 	
+	/**
+	 * Model object fields (schema version 1): latency percentiles
+	 * over the last five minutes.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0)
+			.addAfter(NUM_CONNECTED_BUILDER_THREADS, QUEUE_WAIT_MS_P50)
+			.addAfter(QUEUE_WAIT_MS_P50, QUEUE_WAIT_MS_P90)
+			.addAfter(QUEUE_WAIT_MS_P90, QUEUE_WAIT_MS_P99)
+			.addAfter(QUEUE_WAIT_MS_P99, QUEUE_WAIT_MS_MAX)
+			.addAfter(QUEUE_WAIT_MS_MAX, SERVICE_TIME_MS_P50)
+			.addAfter(SERVICE_TIME_MS_P50, SERVICE_TIME_MS_P90)
+			.addAfter(SERVICE_TIME_MS_P90, SERVICE_TIME_MS_P99)
+			.addAfter(SERVICE_TIME_MS_P99, SERVICE_TIME_MS_MAX)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 2): per-build-step time
+	 * percentiles over the last five minutes.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V2 = ModelObjectSchema.basedOn(SCHEMA_V1)
+			.addAfter(SERVICE_TIME_MS_MAX, BUILD_STEP_WALL_TIME_MS)
+			.addAfter(BUILD_STEP_WALL_TIME_MS, BUILD_STEP_CPU_TIME_MS)
+			.finishDelta();
+	
 	/**
 	 * Model object fields (current schema version).
 	 */
-	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V0;
+	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V2;
 	
 	/**
 	 * Constructor.
@@ -122,4 +206,188 @@ public class HealthData implements IModelObject<HealthData> {
 	public void setNumConnectedBuilderThreads(int numConnectedBuilderThreads) {
 		this.numConnectedBuilderThreads = numConnectedBuilderThreads;
 	}
+	
+	/**
+	 * Set the median time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param queueWaitMsP50 the median time submissions waited in the submission queue in milliseconds
+	 */
+	public void setQueueWaitMsP50(int queueWaitMsP50) {
+		this.queueWaitMsP50 = queueWaitMsP50;
+	}
+	
+	/**
+	 * Get the median time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the median time submissions waited in the submission queue in milliseconds
+	 */
+	public int getQueueWaitMsP50() {
+		return queueWaitMsP50;
+	}
+	
+	/**
+	 * Set the 90th percentile time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param queueWaitMsP90 the 90th percentile time submissions waited in the submission queue in milliseconds
+	 */
+	public void setQueueWaitMsP90(int queueWaitMsP90) {
+		this.queueWaitMsP90 = queueWaitMsP90;
+	}
+	
+	/**
+	 * Get the 90th percentile time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the 90th percentile time submissions waited in the submission queue in milliseconds
+	 */
+	public int getQueueWaitMsP90() {
+		return queueWaitMsP90;
+	}
+	
+	/**
+	 * Set the 99th percentile time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param queueWaitMsP99 the 99th percentile time submissions waited in the submission queue in milliseconds
+	 */
+	public void setQueueWaitMsP99(int queueWaitMsP99) {
+		this.queueWaitMsP99 = queueWaitMsP99;
+	}
+	
+	/**
+	 * Get the 99th percentile time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the 99th percentile time submissions waited in the submission queue in milliseconds
+	 */
+	public int getQueueWaitMsP99() {
+		return queueWaitMsP99;
+	}
+	
+	/**
+	 * Set the maximum time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param queueWaitMsMax the maximum time submissions waited in the submission queue in milliseconds
+	 */
+	public void setQueueWaitMsMax(int queueWaitMsMax) {
+		this.queueWaitMsMax = queueWaitMsMax;
+	}
+	
+	/**
+	 * Get the maximum time submissions waited in the submission queue (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the maximum time submissions waited in the submission queue in milliseconds
+	 */
+	public int getQueueWaitMsMax() {
+		return queueWaitMsMax;
+	}
+	
+	/**
+	 * Set the median time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param serviceTimeMsP50 the median time taken by builders to test submissions in milliseconds
+	 */
+	public void setServiceTimeMsP50(int serviceTimeMsP50) {
+		this.serviceTimeMsP50 = serviceTimeMsP50;
+	}
+	
+	/**
+	 * Get the median time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the median time taken by builders to test submissions in milliseconds
+	 */
+	public int getServiceTimeMsP50() {
+		return serviceTimeMsP50;
+	}
+	
+	/**
+	 * Set the 90th percentile time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param serviceTimeMsP90 the 90th percentile time taken by builders to test submissions in milliseconds
+	 */
+	public void setServiceTimeMsP90(int serviceTimeMsP90) {
+		this.serviceTimeMsP90 = serviceTimeMsP90;
+	}
+	
+	/**
+	 * Get the 90th percentile time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the 90th percentile time taken by builders to test submissions in milliseconds
+	 */
+	public int getServiceTimeMsP90() {
+		return serviceTimeMsP90;
+	}
+	
+	/**
+	 * Set the 99th percentile time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param serviceTimeMsP99 the 99th percentile time taken by builders to test submissions in milliseconds
+	 */
+	public void setServiceTimeMsP99(int serviceTimeMsP99) {
+		this.serviceTimeMsP99 = serviceTimeMsP99;
+	}
+	
+	/**
+	 * Get the 99th percentile time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the 99th percentile time taken by builders to test submissions in milliseconds
+	 */
+	public int getServiceTimeMsP99() {
+		return serviceTimeMsP99;
+	}
+	
+	/**
+	 * Set the maximum time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param serviceTimeMsMax the maximum time taken by builders to test submissions in milliseconds
+	 */
+	public void setServiceTimeMsMax(int serviceTimeMsMax) {
+		this.serviceTimeMsMax = serviceTimeMsMax;
+	}
+	
+	/**
+	 * Get the maximum time taken by builders to test submissions (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the maximum time taken by builders to test submissions in milliseconds
+	 */
+	public int getServiceTimeMsMax() {
+		return serviceTimeMsMax;
+	}
+	
+	/**
+	 * Set the wall time taken by each build step (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param buildStepWallTimeMs the build step wall times, in the form
+	 *                            <code>step=p50/p90/max,step=p50/p90/max,...</code>
+	 */
+	public void setBuildStepWallTimeMs(String buildStepWallTimeMs) {
+		this.buildStepWallTimeMs = buildStepWallTimeMs;
+	}
+	
+	/**
+	 * Get the wall time taken by each build step (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the build step wall times, in the form
+	 *         <code>step=p50/p90/max,step=p50/p90/max,...</code>
+	 */
+	public String getBuildStepWallTimeMs() {
+		return buildStepWallTimeMs;
+	}
+	
+	/**
+	 * Set the builder CPU time taken by each build step (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @param buildStepCpuTimeMs the build step CPU times, in the form
+	 *                           <code>step=p50/p90/max,step=p50/p90/max,...</code>
+	 */
+	public void setBuildStepCpuTimeMs(String buildStepCpuTimeMs) {
+		this.buildStepCpuTimeMs = buildStepCpuTimeMs;
+	}
+	
+	/**
+	 * Get the builder CPU time taken by each build step (in milliseconds) in the last 5 minutes.
+	 * 
+	 * @return the build step CPU times, in the form
+	 *         <code>step=p50/p90/max,step=p50/p90/max,...</code>
+	 */
+	public String getBuildStepCpuTimeMs() {
+		return buildStepCpuTimeMs;
+	}
 }
@@ -0,0 +1,55 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+/**
+ * Exception indicating that a submission could not be accepted
+ * for testing because the submission service is overloaded.
+ * The client should retry after the suggested delay.
+ * 
+ * @author David Hovemeyer
+ */
+public class ServerBusyException extends SubmissionException {
+	private static final long serialVersionUID = 1L;
+	
+	private int retryAfterSeconds;
+	
+	/**
+	 * Constructor (for serialization).
+	 */
+	public ServerBusyException() {
+		
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param retryAfterSeconds suggested number of seconds to wait before retrying
+	 */
+	public ServerBusyException(int retryAfterSeconds) {
+		super("Server busy, please retry in " + retryAfterSeconds + " seconds");
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+	
+	/**
+	 * @return suggested number of seconds to wait before retrying
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
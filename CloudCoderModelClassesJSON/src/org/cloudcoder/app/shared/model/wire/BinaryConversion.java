@@ -0,0 +1,480 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.app.shared.model.IProblem;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Methods for converting CloudCoder model objects to and from the
+ * compact binary encoding used for {@link MessageChannel} payloads.
+ * Model objects with a {@link ModelObjectSchema} are encoded
+ * field by field in schema order, with no field names or class
+ * descriptors.
+ *
+ * @author David Hovemeyer
+ */
+public class BinaryConversion {
+	private static final String UTF8 = "UTF-8";
+
+	/**
+	 * Encode an int value.
+	 *
+	 * @param value the value
+	 * @return the encoded payload
+	 */
+	public static byte[] encodeInt(int value) {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(4);
+		try {
+			new DataOutputStream(buf).writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException("IOException writing to byte array?", e);
+		}
+		return buf.toByteArray();
+	}
+
+	/**
+	 * Decode an int value.
+	 *
+	 * @param payload the encoded payload
+	 * @return the value
+	 * @throws IOException
+	 */
+	public static int decodeInt(byte[] payload) throws IOException {
+		return input(payload).readInt();
+	}
+
+	/**
+	 * Encode a boolean value.
+	 *
+	 * @param value the value
+	 * @return the encoded payload
+	 */
+	public static byte[] encodeBoolean(boolean value) {
+		return new byte[]{ (byte) (value ? 1 : 0) };
+	}
+
+	/**
+	 * Decode a boolean value.
+	 *
+	 * @param payload the encoded payload
+	 * @return the value
+	 * @throws IOException
+	 */
+	public static boolean decodeBoolean(byte[] payload) throws IOException {
+		return input(payload).readBoolean();
+	}
+
+	/**
+	 * Encode a (possibly null) string.
+	 *
+	 * @param s the string
+	 * @return the encoded payload
+	 */
+	public static byte[] encodeString(String s) {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try {
+			writeString(new DataOutputStream(buf), s);
+		} catch (IOException e) {
+			throw new IllegalStateException("IOException writing to byte array?", e);
+		}
+		return buf.toByteArray();
+	}
+
+	/**
+	 * Decode a (possibly null) string.
+	 *
+	 * @param payload the encoded payload
+	 * @return the string
+	 * @throws IOException
+	 */
+	public static String decodeString(byte[] payload) throws IOException {
+		return readString(input(payload));
+	}
+
+	/**
+	 * Encode a {@link Problem} and its list of {@link TestCase}s.
+	 *
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the list of {@link TestCase}s
+	 * @return the encoded payload
+	 */
+	public static byte[] encodeProblemAndTestCases(Problem problem, List<TestCase> testCaseList) {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buf);
+		try {
+			writeProblem(out, problem);
+			out.writeInt(testCaseList.size());
+			for (TestCase testCase : testCaseList) {
+				writeTestCase(out, testCase);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("IOException writing to byte array?", e);
+		}
+		return buf.toByteArray();
+	}
+
+	/**
+	 * Decode a {@link Problem} and its list of {@link TestCase}s.
+	 *
+	 * @param payload       the encoded payload
+	 * @param problem       the {@link Problem} to populate
+	 * @param testCaseList  the list to which decoded {@link TestCase}s should be added
+	 * @throws IOException
+	 */
+	public static void decodeProblemAndTestCases(byte[] payload, Problem problem, List<TestCase> testCaseList) throws IOException {
+		DataInputStream in = input(payload);
+		readProblem(in, problem);
+		int numTestCases = readCount(in);
+		for (int i = 0; i < numTestCases; i++) {
+			TestCase testCase = new TestCase();
+			readTestCase(in, testCase);
+			testCaseList.add(testCase);
+		}
+	}
+
+	/**
+	 * Encode a {@link SubmissionResult}.
+	 *
+	 * @param result the {@link SubmissionResult}
+	 * @return the encoded payload
+	 */
+	public static byte[] encodeSubmissionResult(SubmissionResult result) {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buf);
+		try {
+			writeSubmissionResult(out, result);
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("IOException writing to byte array?", e);
+		}
+		return buf.toByteArray();
+	}
+
+	/**
+	 * Decode a {@link SubmissionResult}.
+	 *
+	 * @param payload the encoded payload
+	 * @return the {@link SubmissionResult}
+	 * @throws IOException
+	 */
+	public static SubmissionResult decodeSubmissionResult(byte[] payload) throws IOException {
+		return readSubmissionResult(input(payload));
+	}
+
+	/**
+	 * Write a {@link Problem}.
+	 *
+	 * @param out     the DataOutput
+	 * @param problem the {@link Problem}
+	 * @throws IOException
+	 */
+	public static void writeProblem(DataOutput out, Problem problem) throws IOException {
+		writeModelObject(out, problem, Problem.SCHEMA);
+	}
+
+	/**
+	 * Read a {@link Problem}.
+	 *
+	 * @param in      the DataInput
+	 * @param problem the {@link Problem} to populate
+	 * @throws IOException
+	 */
+	public static void readProblem(DataInput in, Problem problem) throws IOException {
+		BinaryConversion.<IProblem>readModelObject(in, problem, Problem.SCHEMA);
+	}
+
+	/**
+	 * Write a {@link TestCase}.
+	 *
+	 * @param out      the DataOutput
+	 * @param testCase the {@link TestCase}
+	 * @throws IOException
+	 */
+	public static void writeTestCase(DataOutput out, TestCase testCase) throws IOException {
+		writeModelObject(out, testCase, TestCase.SCHEMA);
+	}
+
+	/**
+	 * Read a {@link TestCase}.
+	 *
+	 * @param in       the DataInput
+	 * @param testCase the {@link TestCase} to populate
+	 * @throws IOException
+	 */
+	public static void readTestCase(DataInput in, TestCase testCase) throws IOException {
+		readModelObject(in, testCase, TestCase.SCHEMA);
+	}
+
+	/**
+	 * Write a {@link SubmissionResult}.
+	 *
+	 * @param out     the DataOutput
+	 * @param result  the {@link SubmissionResult}
+	 * @throws IOException
+	 */
+	public static void writeSubmissionResult(DataOutput out, SubmissionResult result) throws IOException {
+		// Compilation result
+		CompilationResult compRes = result.getCompilationResult();
+		writeEnum(out, compRes.getOutcome());
+		CompilerDiagnostic[] diagnostics = compRes.getCompilerDiagnosticList();
+		out.writeInt(diagnostics.length);
+		for (CompilerDiagnostic diag : diagnostics) {
+			out.writeLong(diag.getStartLine());
+			out.writeLong(diag.getEndLine());
+			out.writeLong(diag.getStartColumn());
+			out.writeLong(diag.getEndColumn());
+			writeString(out, diag.getMessage());
+		}
+
+		// Test results
+		TestResult[] testResults = result.getTestResults();
+		out.writeInt(testResults.length);
+		for (TestResult testResult : testResults) {
+			writeModelObject(out, testResult, TestResult.SCHEMA);
+		}
+
+		// Annotations
+		List<SubmissionResultAnnotation> annotationList = result.getAnnotationList();
+		out.writeInt(annotationList.size());
+		for (SubmissionResultAnnotation annotation : annotationList) {
+			writeString(out, annotation.getKey());
+			writeString(out, annotation.getValue());
+		}
+	}
+
+	/**
+	 * Read a {@link SubmissionResult}.
+	 *
+	 * @param in the DataInput
+	 * @return the {@link SubmissionResult}
+	 * @throws IOException
+	 */
+	public static SubmissionResult readSubmissionResult(DataInput in) throws IOException {
+		// Compilation result
+		CompilationResult compRes = new CompilationResult(readEnum(in, CompilationOutcome.class));
+		CompilerDiagnostic[] diagnostics = new CompilerDiagnostic[readCount(in)];
+		for (int i = 0; i < diagnostics.length; i++) {
+			long startLine = in.readLong();
+			long endLine = in.readLong();
+			long startColumn = in.readLong();
+			long endColumn = in.readLong();
+			diagnostics[i] = new CompilerDiagnostic(startLine, endLine, startColumn, endColumn, readString(in));
+		}
+		compRes.setCompilerDiagnosticList(diagnostics);
+
+		SubmissionResult result = new SubmissionResult(compRes);
+
+		// Test results
+		TestResult[] testResults = new TestResult[readCount(in)];
+		for (int i = 0; i < testResults.length; i++) {
+			testResults[i] = new TestResult();
+			readModelObject(in, testResults[i], TestResult.SCHEMA);
+		}
+		result.setTestResults(testResults);
+
+		// Annotations
+		int numAnnotations = readCount(in);
+		for (int i = 0; i < numAnnotations; i++) {
+			String key = readString(in);
+			String value = readString(in);
+			result.addAnnotation(new SubmissionResultAnnotation(key, value));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Write a model object, field by field, in the order given by its schema.
+	 * The number of fields is written first so that a peer using a
+	 * different schema version is detected rather than misread.
+	 *
+	 * @param out     the DataOutput
+	 * @param obj     the model object
+	 * @param schema  the model object's schema
+	 * @throws IOException
+	 */
+	public static<E> void writeModelObject(DataOutput out, E obj, ModelObjectSchema<E> schema) throws IOException {
+		List<ModelObjectField<? super E, ?>> fieldList = schema.getFieldList();
+		out.writeInt(fieldList.size());
+		for (ModelObjectField<? super E, ?> field : fieldList) {
+			writeValue(out, field.get(obj), field.getType());
+		}
+	}
+
+	/**
+	 * Read a model object written by {@link #writeModelObject(DataOutput, Object, ModelObjectSchema)}.
+	 *
+	 * @param in      the DataInput
+	 * @param obj     the model object to populate
+	 * @param schema  the model object's schema
+	 * @throws IOException
+	 */
+	public static<E> void readModelObject(DataInput in, E obj, ModelObjectSchema<E> schema) throws IOException {
+		List<ModelObjectField<? super E, ?>> fieldList = schema.getFieldList();
+		int numFields = in.readInt();
+		if (numFields != fieldList.size()) {
+			throw new IOException("Schema mismatch for " + schema.getName() + ": " + numFields +
+					" fields received, " + fieldList.size() + " expected");
+		}
+		for (ModelObjectField<? super E, ?> field : fieldList) {
+			setField(field, obj, readValue(in, field.getType()));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static<T, F> void setField(ModelObjectField<T, F> field, T obj, Object value) {
+		// Note that we can't use setUntyped(), since it doesn't allow null values
+		field.set(obj, (F) value);
+	}
+
+	private static void writeValue(DataOutput out, Object value, Class<?> type) throws IOException {
+		if (type == String.class) {
+			writeString(out, (String) value);
+		} else if (type.isEnum()) {
+			writeEnum(out, (Enum<?>) value);
+		} else {
+			// Boxed scalar values (e.g., a Problem's id) may be null,
+			// so they are preceded by a presence flag
+			out.writeBoolean(value != null);
+			if (value == null) {
+				return;
+			}
+			if (type == Integer.class) {
+				out.writeInt((Integer) value);
+			} else if (type == Long.class) {
+				out.writeLong((Long) value);
+			} else if (type == Boolean.class) {
+				out.writeBoolean((Boolean) value);
+			} else {
+				throw new IllegalArgumentException("Don't know how to encode field of type " + type.getName());
+			}
+		}
+	}
+
+	private static Object readValue(DataInput in, Class<?> type) throws IOException {
+		if (type == String.class) {
+			return readString(in);
+		} else if (type.isEnum()) {
+			return readEnumConstant(in, type);
+		} else {
+			if (!in.readBoolean()) {
+				return null;
+			}
+			if (type == Integer.class) {
+				return in.readInt();
+			} else if (type == Long.class) {
+				return in.readLong();
+			} else if (type == Boolean.class) {
+				return in.readBoolean();
+			} else {
+				throw new IllegalArgumentException("Don't know how to decode field of type " + type.getName());
+			}
+		}
+	}
+
+	/**
+	 * Write a (possibly null) string as a length followed by UTF-8 bytes.
+	 * A length of -1 denotes null.
+	 *
+	 * @param out the DataOutput
+	 * @param s   the string
+	 * @throws IOException
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Read a string written by {@link #writeString(DataOutput, String)}.
+	 *
+	 * @param in the DataInput
+	 * @return the string (which may be null)
+	 * @throws IOException
+	 */
+	public static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > MessageChannel.MAX_PAYLOAD_SIZE) {
+			throw new IOException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+		// Null enum values are encoded as -1
+		out.writeInt(value != null ? value.ordinal() : -1);
+	}
+
+	private static<E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+		return type.cast(readEnumConstant(in, type));
+	}
+
+	private static Object readEnumConstant(DataInput in, Class<?> type) throws IOException {
+		int ordinal = in.readInt();
+		if (ordinal == -1) {
+			return null;
+		}
+		Object[] values = type.getEnumConstants();
+		if (ordinal < 0 || ordinal >= values.length) {
+			throw new IOException("Invalid ordinal " + ordinal + " for " + type.getSimpleName());
+		}
+		return values[ordinal];
+	}
+
+	private static int readCount(DataInput in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) {
+			throw new IOException("Invalid element count " + count);
+		}
+		return count;
+	}
+
+	private static DataInputStream input(byte[] payload) {
+		return new DataInputStream(new ByteArrayInputStream(payload));
+	}
+}
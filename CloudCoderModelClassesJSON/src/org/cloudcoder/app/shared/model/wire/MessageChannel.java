@@ -0,0 +1,209 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Length-prefixed binary framing for the protocol spoken between
+ * the webapp and Builder processes.  Each side first sends a
+ * header (magic number and protocol version) using
+ * {@link #exchangeHeaders()}.  After that, each message is
+ * a one-byte {@link MessageType}, a four-byte correlation id,
+ * a four-byte payload length, and the payload itself.
+ * The correlation id identifies the submission a message refers to,
+ * allowing several submissions to be in flight on one connection.
+ * Payloads are encoded and decoded using {@link BinaryConversion}.
+ * 
+ * <p>Sending is thread-safe: each message is written atomically,
+ * so messages sent by different threads are never interleaved.
+ * Receiving must be done by a single thread.
+ *
+ * @author David Hovemeyer
+ */
+public class MessageChannel implements Closeable {
+	/** Magic number sent at the beginning of the header ("CCBP"). */
+	public static final int MAGIC = 0x43434250;
+
+	/**
+	 * Protocol version.  This must be incremented whenever the framing,
+	 * the set of {@link MessageType}s, or the encoding of any payload changes.
+	 */
+	public static final int PROTOCOL_VERSION = 3;
+
+	/**
+	 * Maximum payload size we are willing to accept.  This guards against
+	 * allocating huge buffers if the stream becomes corrupted.
+	 */
+	public static final int MAX_PAYLOAD_SIZE = 64*1024*1024;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private DataInputStream in;
+	private DataOutputStream out;
+	private Object sendLock = new Object();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in   the InputStream to read messages from
+	 * @param out  the OutputStream to write messages to
+	 */
+	public MessageChannel(InputStream in, OutputStream out) {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+	}
+
+	/**
+	 * Send our header and read and check the peer's header.
+	 * Both sides send before receiving, so this will not deadlock.
+	 *
+	 * @throws IOException if the peer's header is invalid or specifies
+	 *                     a different protocol version
+	 */
+	public void exchangeHeaders() throws IOException {
+		synchronized (sendLock) {
+			out.writeInt(MAGIC);
+			out.writeInt(PROTOCOL_VERSION);
+			out.flush();
+		}
+
+		int magic = in.readInt();
+		if (magic != MAGIC) {
+			throw new IOException("Peer is not speaking the builder protocol (magic=" + Integer.toHexString(magic) + ")");
+		}
+		int version = in.readInt();
+		if (version != PROTOCOL_VERSION) {
+			throw new IOException("Peer uses builder protocol version " + version + ", expected " + PROTOCOL_VERSION);
+		}
+	}
+
+	/**
+	 * Write a message with an empty payload and a correlation id of 0.
+	 * The message is buffered: call {@link #flush()} to send it.
+	 *
+	 * @param type the {@link MessageType}
+	 * @throws IOException
+	 */
+	public void send(MessageType type) throws IOException {
+		send(type, 0, EMPTY);
+	}
+
+	/**
+	 * Write a message with a correlation id of 0.
+	 * The message is buffered: call {@link #flush()} to send it.
+	 *
+	 * @param type     the {@link MessageType}
+	 * @param payload  the encoded payload
+	 * @throws IOException
+	 */
+	public void send(MessageType type, byte[] payload) throws IOException {
+		send(type, 0, payload);
+	}
+
+	/**
+	 * Write a message.
+	 * The message is buffered: call {@link #flush()} to send it.
+	 *
+	 * @param type           the {@link MessageType}
+	 * @param correlationId  the correlation id of the submission the message refers to
+	 * @param payload        the encoded payload
+	 * @throws IOException
+	 */
+	public void send(MessageType type, int correlationId, byte[] payload) throws IOException {
+		synchronized (sendLock) {
+			out.writeByte(type.ordinal());
+			out.writeInt(correlationId);
+			out.writeInt(payload.length);
+			out.write(payload);
+		}
+	}
+
+	/**
+	 * Flush all buffered messages.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		synchronized (sendLock) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Read the next message.
+	 *
+	 * @return the {@link Message}
+	 * @throws IOException
+	 */
+	public Message receive() throws IOException {
+		MessageType type;
+		try {
+			type = MessageType.fromOrdinal(in.readUnsignedByte());
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+		int correlationId = in.readInt();
+		int length = in.readInt();
+		if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+			throw new IOException("Invalid payload length " + length + " for " + type + " message");
+		}
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return new Message(type, correlationId, payload);
+	}
+
+	/**
+	 * Read the next message, which must have the given type.
+	 *
+	 * @param expected the expected {@link MessageType}
+	 * @return the message's payload
+	 * @throws IOException if the message has some other type
+	 */
+	public byte[] receive(MessageType expected) throws IOException {
+		Message message = receive();
+		if (message.getType() != expected) {
+			throw new IOException("Expected " + expected + " message, received " + message.getType());
+		}
+		return message.getPayload();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,70 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.wire;
+
+/**
+ * Types of messages exchanged between the webapp and a Builder
+ * over a {@link MessageChannel}.  The ordinal of each member is
+ * sent on the wire, so new members must only be added at the end
+ * (and {@link MessageChannel#PROTOCOL_VERSION} must be incremented).
+ * Apart from {@link #KEEPALIVE} and {@link #CAPACITY}, every message
+ * carries the correlation id of the submission it refers to.
+ *
+ * @author David Hovemeyer
+ */
+public enum MessageType {
+	/** Sent by the webapp when there are no submissions to test: payload is empty. */
+	KEEPALIVE,
+	/**
+	 * Sent by the webapp to begin a submission: payload is the content hash
+	 * of the problem and its test cases (see HashProblemAndTestCaseData.computeExact()).
+	 */
+	PROBLEM_HASH,
+	/** Sent by the Builder in response to {@link #PROBLEM_HASH}: payload is a boolean. */
+	HAVE_PROBLEM,
+	/**
+	 * Sent by the webapp only if the Builder replied false to {@link #PROBLEM_HASH}:
+	 * payload is a Problem and its list of TestCases.
+	 */
+	PROBLEM_AND_TEST_CASES,
+	/** Sent by the webapp: payload is the submitted program text. */
+	PROGRAM_TEXT,
+	/** Sent by the Builder: payload is the SubmissionResult. */
+	SUBMISSION_RESULT,
+	/**
+	 * Sent by the Builder once, immediately after the headers are exchanged:
+	 * payload is the maximum number of submissions the webapp may have
+	 * in flight on the connection.
+	 */
+	CAPACITY;
+
+	/**
+	 * Get the MessageType with the given ordinal value.
+	 *
+	 * @param ordinal the ordinal value
+	 * @return the MessageType
+	 * @throws IllegalArgumentException if the ordinal value is not valid
+	 */
+	public static MessageType fromOrdinal(int ordinal) {
+		MessageType[] values = values();
+		if (ordinal < 0 || ordinal >= values.length) {
+			throw new IllegalArgumentException("Unknown message type " + ordinal);
+		}
+		return values[ordinal];
+	}
+}
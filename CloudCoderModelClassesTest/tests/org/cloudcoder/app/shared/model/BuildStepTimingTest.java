@@ -0,0 +1,51 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BuildStepTimingTest {
+	@Test
+	public void testEncodeDecode() {
+		List<BuildStepTiming> timingList = new ArrayList<BuildStepTiming>();
+		timingList.add(new BuildStepTiming("CompilerBuildStep", 120L, 15L));
+		timingList.add(new BuildStepTiming("cleanup", 3L, -1L));
+		
+		String encoded = BuildStepTiming.encode(timingList);
+		assertEquals("CompilerBuildStep=120/15,cleanup=3/-1", encoded);
+		
+		List<BuildStepTiming> decoded = BuildStepTiming.decode(encoded);
+		assertEquals(2, decoded.size());
+		assertEquals("CompilerBuildStep", decoded.get(0).getName());
+		assertEquals(120L, decoded.get(0).getWallTimeMs());
+		assertEquals(15L, decoded.get(0).getCpuTimeMs());
+		assertEquals("cleanup", decoded.get(1).getName());
+		assertEquals(3L, decoded.get(1).getWallTimeMs());
+		assertEquals(-1L, decoded.get(1).getCpuTimeMs());
+	}
+	
+	@Test
+	public void testDecodeIgnoresMalformedEntries() {
+		List<BuildStepTiming> decoded = BuildStepTiming.decode("a=1/2,b=x/2,c,=4/5,d=6");
+		assertEquals(1, decoded.size());
+		assertEquals("a", decoded.get(0).getName());
+		assertTrue(BuildStepTiming.decode("").isEmpty());
+		assertTrue(BuildStepTiming.decode(null).isEmpty());
+	}
+	
+	@Test
+	public void testFromSubmissionResult() {
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+		assertTrue(BuildStepTiming.fromSubmissionResult(result).isEmpty());
+		
+		result.addAnnotation(new SubmissionResultAnnotation("LineCoverage", "1,2,3"));
+		result.addAnnotation(new SubmissionResultAnnotation(BuildStepTiming.ANNOTATION_KEY, "CompilerBuildStep=120/15"));
+		List<BuildStepTiming> timingList = BuildStepTiming.fromSubmissionResult(result);
+		assertEquals(1, timingList.size());
+		assertEquals(120L, timingList.get(0).getWallTimeMs());
+	}
+}
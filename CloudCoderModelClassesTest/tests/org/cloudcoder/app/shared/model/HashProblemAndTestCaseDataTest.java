@@ -0,0 +1,77 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class HashProblemAndTestCaseDataTest {
+	private static Problem createProblem(String description) {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.C_PROGRAM);
+		problem.setTestname("test");
+		problem.setBriefDescription("brief");
+		problem.setDescription(description);
+		problem.setSkeleton("");
+		return problem;
+	}
+	
+	private static ProblemAndTestCaseList create(String description, String input, String output) {
+		Problem problem = createProblem(description);
+		TestCase testCase = new TestCase();
+		testCase.setTestCaseName("t0");
+		testCase.setInput(input);
+		testCase.setOutput(output);
+		ProblemAndTestCaseList list = new ProblemAndTestCaseList();
+		list.setProblem(problem);
+		list.addTestCase(testCase);
+		return list;
+	}
+	
+	private static String hash(ProblemAndTestCaseList list) {
+		return new HashProblemAndTestCaseData<ProblemAndTestCaseList>(list).compute();
+	}
+	
+	private static String hashExact(ProblemAndTestCaseList list) {
+		return new HashProblemAndTestCaseData<ProblemAndTestCaseList>(list).computeExact();
+	}
+	
+	@Test
+	public void testExactHashDelimitsFields() {
+		ProblemAndTestCaseList a = create("description", "1", "23");
+		ProblemAndTestCaseList b = create("description", "12", "3");
+		
+		// The original hash concatenates fields, so these collide
+		assertEquals(hash(a), hash(b));
+		assertFalse(hashExact(a).equals(hashExact(b)));
+	}
+	
+	@Test
+	public void testExactHashDetectsWhitespaceChanges() {
+		ProblemAndTestCaseList a = create("description", "1", "2");
+		ProblemAndTestCaseList b = create("description", "1", "2\n");
+		ProblemAndTestCaseList c = create("description ", "1", "2");
+		
+		// The original hash trims fields, so these collide
+		assertEquals(hash(a), hash(b));
+		assertFalse(hashExact(a).equals(hashExact(b)));
+		assertFalse(hashExact(a).equals(hashExact(c)));
+	}
+	
+	@Test
+	public void testExactHashDistinguishesMissingAndEmptyLibrary() {
+		ProblemAndTestCaseList a = create("description", "1", "2");
+		ProblemAndTestCaseList b = create("description", "1", "2");
+		a.getProblem().setExternalLibraryUrl("");
+		a.getProblem().setExternalLibraryMD5("abc");
+		b.getProblem().setExternalLibraryUrl("abc");
+		b.getProblem().setExternalLibraryMD5("");
+		
+		assertFalse(hashExact(a).equals(hashExact(b)));
+	}
+	
+	@Test
+	public void testExactHashIsStable() {
+		assertEquals(hashExact(create("description", "1", "2")), hashExact(create("description", "1", "2")));
+	}
+}
@@ -20,8 +20,12 @@ package org.cloudcoder.app.server.model;
 
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
+import org.cloudcoder.app.shared.model.BuildStepTiming;
 import org.cloudcoder.app.shared.model.HealthData;
 
 /**
@@ -52,12 +56,30 @@ public class HealthDataSingleton {
 		long timestamp;
 	}
 	
+	/** Latency histograms cover the last 5 minutes, in 1 minute slots. */
+	private static final long LATENCY_WINDOW_MS = 5L*60*1000;
+	private static final int LATENCY_WINDOW_SLOTS = 5;
+	
+	/**
+	 * Maximum number of distinct build step names tracked, in case
+	 * builders report unexpected names.
+	 */
+	private static final int MAX_BUILD_STEP_NAMES = 64;
+	
 	private LinkedList<SubmissionQueueSizeSample> submissionQueueSizeSampleList;
 	private volatile int submissionQueueSizeCurrent;
 	private volatile int submissionQueueSizeMaxLastFiveMinutes;
+	private final LatencyHistogram queueWaitHistogram;
+	private final LatencyHistogram serviceTimeHistogram;
+	private final Map<String, LatencyHistogram> buildStepWallTimeHistograms;
+	private final Map<String, LatencyHistogram> buildStepCpuTimeHistograms;
 	
 	private HealthDataSingleton() {
 		this.submissionQueueSizeSampleList = new LinkedList<SubmissionQueueSizeSample>();
+		this.queueWaitHistogram = new LatencyHistogram(LATENCY_WINDOW_MS, LATENCY_WINDOW_SLOTS);
+		this.serviceTimeHistogram = new LatencyHistogram(LATENCY_WINDOW_MS, LATENCY_WINDOW_SLOTS);
+		this.buildStepWallTimeHistograms = new TreeMap<String, LatencyHistogram>();
+		this.buildStepCpuTimeHistograms = new TreeMap<String, LatencyHistogram>();
 	}
 	
 	/**
@@ -108,6 +130,79 @@ public class HealthDataSingleton {
 		return submissionQueueSizeMaxLastFiveMinutes;
 	}
 
+	/**
+	 * Record the latencies of a submission that has been tested.
+	 * This method may be called from any thread.
+	 * 
+	 * @param queueWaitMs    time the submission waited in the submission queue
+	 * @param serviceTimeMs  time taken by a builder to test the submission
+	 */
+	public void recordSubmissionLatency(long queueWaitMs, long serviceTimeMs) {
+		queueWaitHistogram.record(queueWaitMs);
+		serviceTimeHistogram.record(serviceTimeMs);
+	}
+	
+	/**
+	 * Record the time taken by each build step of a submission
+	 * that has been tested.
+	 * This method may be called from any thread.
+	 * 
+	 * @param timingList the build step timings reported by the builder
+	 */
+	public void recordBuildStepTimings(List<BuildStepTiming> timingList) {
+		for (BuildStepTiming timing : timingList) {
+			LatencyHistogram wallTime = getBuildStepHistogram(buildStepWallTimeHistograms, timing.getName());
+			if (wallTime != null) {
+				wallTime.record(timing.getWallTimeMs());
+			}
+			if (timing.getCpuTimeMs() >= 0L) {
+				LatencyHistogram cpuTime = getBuildStepHistogram(buildStepCpuTimeHistograms, timing.getName());
+				if (cpuTime != null) {
+					cpuTime.record(timing.getCpuTimeMs());
+				}
+			}
+		}
+	}
+	
+	private static LatencyHistogram getBuildStepHistogram(Map<String, LatencyHistogram> histograms, String name) {
+		synchronized (histograms) {
+			LatencyHistogram histogram = histograms.get(name);
+			if (histogram == null && histograms.size() < MAX_BUILD_STEP_NAMES) {
+				histogram = new LatencyHistogram(LATENCY_WINDOW_MS, LATENCY_WINDOW_SLOTS);
+				histograms.put(name, histogram);
+			}
+			return histogram;
+		}
+	}
+	
+	/**
+	 * Summarize build step histograms as a string of the form
+	 * <code>step=p50/p90/max,...</code>, omitting steps with no
+	 * recorded times in the current window.
+	 */
+	private static String summarizeBuildSteps(Map<String, LatencyHistogram> histograms) {
+		StringBuilder buf = new StringBuilder();
+		synchronized (histograms) {
+			for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+				LatencyHistogram.Summary summary = entry.getValue().getSummary();
+				if (summary.getCount() == 0) {
+					continue;
+				}
+				if (buf.length() > 0) {
+					buf.append(',');
+				}
+				buf.append(entry.getKey());
+				buf.append('=');
+				buf.append(summary.getPercentile(0.5));
+				buf.append('/');
+				buf.append(summary.getPercentile(0.9));
+				buf.append('/');
+				buf.append(summary.getMax());
+			}
+		}
+		return buf.toString();
+	}
+	
 	/**
 	 * Get current {@link HealthData}.
 	 * 
@@ -118,6 +213,26 @@ public class HealthDataSingleton {
 		healthData.setSubmissionQueueSizeCurrent(submissionQueueSizeCurrent);
 		healthData.setSubmissionQueueSizeMaxLastFiveMinutes(submissionQueueSizeMaxLastFiveMinutes);
 		healthData.setNumConnectedBuilderThreads(OutOfProcessSubmitService.getInstance().getNumBuilderThreads());
+		
+		LatencyHistogram.Summary queueWait = queueWaitHistogram.getSummary();
+		healthData.setQueueWaitMsP50(toInt(queueWait.getPercentile(0.5)));
+		healthData.setQueueWaitMsP90(toInt(queueWait.getPercentile(0.9)));
+		healthData.setQueueWaitMsP99(toInt(queueWait.getPercentile(0.99)));
+		healthData.setQueueWaitMsMax(toInt(queueWait.getMax()));
+		
+		LatencyHistogram.Summary serviceTime = serviceTimeHistogram.getSummary();
+		healthData.setServiceTimeMsP50(toInt(serviceTime.getPercentile(0.5)));
+		healthData.setServiceTimeMsP90(toInt(serviceTime.getPercentile(0.9)));
+		healthData.setServiceTimeMsP99(toInt(serviceTime.getPercentile(0.99)));
+		healthData.setServiceTimeMsMax(toInt(serviceTime.getMax()));
+		
+		healthData.setBuildStepWallTimeMs(summarizeBuildSteps(buildStepWallTimeHistograms));
+		healthData.setBuildStepCpuTimeMs(summarizeBuildSteps(buildStepCpuTimeHistograms));
+		
 		return healthData;
 	}
+	
+	private static int toInt(long ms) {
+		return (int) Math.min(ms, Integer.MAX_VALUE);
+	}
 }
@@ -0,0 +1,185 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.model;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory histogram of latencies over a sliding time window.
+ * Latencies are counted in logarithmically-sized buckets (four per
+ * doubling), so percentiles are accurate to within about 19%.
+ * The window is divided into a fixed number of slots, and the oldest
+ * slot is discarded as the window advances.
+ * 
+ * @author David Hovemeyer
+ */
+public class LatencyHistogram {
+	/** Number of buckets per doubling of latency. */
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	
+	/** Latencies of 2^MAX_LOG2 ms (about 4.6 hours) or more are counted in the last bucket. */
+	private static final int MAX_LOG2 = 24;
+	
+	private static final int NUM_BUCKETS = MAX_LOG2 * BUCKETS_PER_DOUBLING + 1;
+	
+	/**
+	 * Summary of the latencies recorded in the current window.
+	 */
+	public static class Summary {
+		private final long[] counts;
+		private final long total;
+		private final long max;
+		
+		private Summary(long[] counts, long total, long max) {
+			this.counts = counts;
+			this.total = total;
+			this.max = max;
+		}
+		
+		/**
+		 * @return the number of latencies recorded in the window
+		 */
+		public long getCount() {
+			return total;
+		}
+		
+		/**
+		 * @return the maximum latency recorded in the window, in milliseconds
+		 */
+		public long getMax() {
+			return max;
+		}
+		
+		/**
+		 * Get an (upper bound on the) latency percentile.
+		 * 
+		 * @param fraction the percentile as a fraction: e.g., 0.9 for the 90th percentile
+		 * @return the latency in milliseconds, or 0 if no latencies were recorded
+		 */
+		public long getPercentile(double fraction) {
+			if (total == 0) {
+				return 0L;
+			}
+			long rank = (long) Math.ceil(fraction * total);
+			long seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return Math.min(getBucketUpperBound(i), max);
+				}
+			}
+			return max;
+		}
+	}
+	
+	private final long slotMs;
+	private final long[][] slotCounts;
+	private final long[] slotMax;
+	private final long[] slotEpoch;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param windowMs  length of the sliding window in milliseconds
+	 * @param numSlots  number of slots the window is divided into
+	 */
+	public LatencyHistogram(long windowMs, int numSlots) {
+		this.slotMs = windowMs / numSlots;
+		this.slotCounts = new long[numSlots][NUM_BUCKETS];
+		this.slotMax = new long[numSlots];
+		this.slotEpoch = new long[numSlots];
+		for (int i = 0; i < numSlots; i++) {
+			slotEpoch[i] = -1L;
+		}
+	}
+	
+	static int getBucket(long latencyMs) {
+		if (latencyMs <= 1L) {
+			return 0;
+		}
+		int bucket = (int) Math.ceil(Math.log(latencyMs) / Math.log(2.0) * BUCKETS_PER_DOUBLING);
+		return Math.min(bucket, NUM_BUCKETS - 1);
+	}
+	
+	static long getBucketUpperBound(int bucket) {
+		if (bucket == NUM_BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+		return (long) Math.floor(Math.pow(2.0, (double) bucket / BUCKETS_PER_DOUBLING));
+	}
+	
+	/**
+	 * Record a latency.
+	 * 
+	 * @param latencyMs the latency in milliseconds
+	 */
+	public void record(long latencyMs) {
+		record(System.currentTimeMillis(), latencyMs);
+	}
+	
+	/**
+	 * Record a latency at a given time.
+	 * 
+	 * @param now        the current time
+	 * @param latencyMs  the latency in milliseconds
+	 */
+	public synchronized void record(long now, long latencyMs) {
+		latencyMs = Math.max(0L, latencyMs);
+		long epoch = now / slotMs;
+		int slot = (int) (epoch % slotEpoch.length);
+		if (slotEpoch[slot] != epoch) {
+			// Slot last held data from an earlier window: reuse it
+			slotEpoch[slot] = epoch;
+			slotMax[slot] = 0L;
+			Arrays.fill(slotCounts[slot], 0L);
+		}
+		slotCounts[slot][getBucket(latencyMs)]++;
+		slotMax[slot] = Math.max(slotMax[slot], latencyMs);
+	}
+	
+	/**
+	 * @return a {@link Summary} of the latencies recorded in the current window
+	 */
+	public Summary getSummary() {
+		return getSummary(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Get a {@link Summary} of the latencies recorded in the window ending at a given time.
+	 * 
+	 * @param now the current time
+	 * @return the {@link Summary}
+	 */
+	public synchronized Summary getSummary(long now) {
+		long epoch = now / slotMs;
+		long[] counts = new long[NUM_BUCKETS];
+		long total = 0L;
+		long max = 0L;
+		for (int slot = 0; slot < slotEpoch.length; slot++) {
+			if (slotEpoch[slot] >= 0 && slotEpoch[slot] > epoch - slotEpoch.length) {
+				for (int i = 0; i < NUM_BUCKETS; i++) {
+					counts[i] += slotCounts[slot][i];
+					total += slotCounts[slot][i];
+				}
+				max = Math.max(max, slotMax[slot]);
+			}
+		}
+		return new Summary(counts, total, max);
+	}
+}
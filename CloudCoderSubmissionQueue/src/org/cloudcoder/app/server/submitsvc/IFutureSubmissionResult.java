@@ -46,4 +46,14 @@ public interface IFutureSubmissionResult {
 	 * @throws InterruptedException 
 	 */
 	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException;
+	
+	/**
+	 * Register an {@link ISubmissionCompletionListener} to be notified
+	 * (exactly once) when compilation/testing is complete.  If it is
+	 * already complete, the listener is notified immediately, in the
+	 * calling thread.
+	 * 
+	 * @param listener the {@link ISubmissionCompletionListener}
+	 */
+	public void addCompletionListener(ISubmissionCompletionListener listener);
 }
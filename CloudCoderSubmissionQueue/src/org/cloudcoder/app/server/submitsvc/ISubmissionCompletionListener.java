@@ -0,0 +1,41 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.submitsvc;
+
+/**
+ * Callback interface for objects which want to be notified
+ * when an {@link IFutureSubmissionResult} is complete, rather than
+ * polling it using {@link IFutureSubmissionResult#waitFor(long)}.
+ * 
+ * @author David Hovemeyer
+ */
+public interface ISubmissionCompletionListener {
+	/**
+	 * Called when a submission is complete: either its
+	 * {@link org.cloudcoder.app.shared.model.SubmissionResult} is available,
+	 * or testing failed with an error.  In either case, calling
+	 * {@link IFutureSubmissionResult#waitFor(long)} with a timeout of 0
+	 * will return the result or throw the error without blocking.
+	 * This method is called by the thread that completed the submission,
+	 * so it should return promptly and must not block.
+	 * 
+	 * @param future the completed {@link IFutureSubmissionResult}
+	 */
+	public void onSubmissionComplete(IFutureSubmissionResult future);
+}
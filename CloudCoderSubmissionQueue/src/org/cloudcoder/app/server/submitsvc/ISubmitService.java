@@ -20,6 +20,7 @@ package org.cloudcoder.app.server.submitsvc;
 import java.util.List;
 
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ServerBusyException;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
@@ -50,4 +51,31 @@ public interface ISubmitService {
 	 *         a {@link SubmissionResult}
 	 */
 	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) throws SubmissionException;
+	
+	/**
+	 * Submit a problem and program text on behalf of a user.
+	 * Identifying the user allows the submission service to share
+	 * its resources fairly between users.
+	 * 
+	 * @param problem       a Problem
+	 * @param testCaseList  the Problem's TestCases
+	 * @param programText   program text
+	 * @param userId        the id of the user making the submission
+	 * @return an {@link IFutureSubmissionResult}, which will eventually yield
+	 *         a {@link SubmissionResult}
+	 * @throws SubmissionException if the submission cannot be accepted: in particular,
+	 *         a {@link ServerBusyException} if the service is overloaded and the
+	 *         client should retry later
+	 */
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText, int userId) throws SubmissionException;
+	
+	/**
+	 * Discard any cached results for a Problem.  This must be called
+	 * whenever a Problem or its TestCases are modified, so that
+	 * submissions are not given results computed against the
+	 * old version of the Problem.
+	 * 
+	 * @param problemId the id of the Problem
+	 */
+	public void invalidateCachedResults(int problemId);
 }
@@ -0,0 +1,126 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import org.cloudcoder.app.shared.model.ServerBusyException;
+
+/**
+ * Decides whether a new submission should be admitted to the
+ * submission queue.  A submission is rejected with a
+ * {@link ServerBusyException} if the queue is already at its maximum
+ * depth, or if the estimated time to test the submissions ahead of it
+ * exceeds the maximum acceptable wait.  The estimate is based on
+ * a moving average of recent per-submission service times,
+ * as reported by the {@link WorkerTask}s.
+ * 
+ * @author David Hovemeyer
+ */
+public class AdmissionController {
+	/** Default maximum number of submissions waiting in the queue. */
+	public static final int DEFAULT_MAX_QUEUE_DEPTH = 1000;
+	
+	/** Default maximum estimated wait, in seconds. */
+	public static final int DEFAULT_MAX_ESTIMATED_WAIT_SEC = 120;
+	
+	/** Weight given to each new service time sample in the moving average. */
+	private static final double SMOOTHING = 0.1;
+	
+	private final int maxQueueDepth;
+	private final long maxEstimatedWaitMs;
+	private double avgServiceTimeMs;
+	private boolean haveServiceTime;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxQueueDepth        maximum number of submissions waiting in the queue
+	 *                             (0 for no limit)
+	 * @param maxEstimatedWaitSec  maximum estimated wait in seconds (0 for no limit)
+	 */
+	public AdmissionController(int maxQueueDepth, int maxEstimatedWaitSec) {
+		this.maxQueueDepth = maxQueueDepth;
+		this.maxEstimatedWaitMs = maxEstimatedWaitSec * 1000L;
+	}
+	
+	/**
+	 * Record the time taken to test one submission.
+	 * 
+	 * @param serviceTimeMs the service time in milliseconds
+	 */
+	public synchronized void recordServiceTime(long serviceTimeMs) {
+		if (!haveServiceTime) {
+			avgServiceTimeMs = serviceTimeMs;
+			haveServiceTime = true;
+		} else {
+			avgServiceTimeMs += SMOOTHING * (serviceTimeMs - avgServiceTimeMs);
+		}
+	}
+	
+	/**
+	 * @return the average service time in milliseconds, or -1 if
+	 *         no submissions have been tested yet
+	 */
+	public synchronized long getAverageServiceTimeMs() {
+		return haveServiceTime ? Math.round(avgServiceTimeMs) : -1L;
+	}
+	
+	/**
+	 * Estimate how long a submission would wait if it were
+	 * added to the queue now.
+	 * 
+	 * @param queueSize        number of submissions already in the queue
+	 * @param builderCapacity  number of submissions the connected Builders
+	 *                         can test at once
+	 * @return the estimated wait in milliseconds, or -1 if no estimate is possible
+	 */
+	public synchronized long estimateWaitMs(int queueSize, int builderCapacity) {
+		if (!haveServiceTime) {
+			return -1L;
+		}
+		return Math.round((queueSize + 1) * avgServiceTimeMs / Math.max(1, builderCapacity));
+	}
+	
+	/**
+	 * Check whether a new submission should be admitted to the queue.
+	 * 
+	 * @param queueSize        number of submissions already in the queue
+	 * @param builderCapacity  number of submissions the connected Builders
+	 *                         can test at once
+	 * @throws ServerBusyException if the submission should be rejected
+	 */
+	public void checkAdmission(int queueSize, int builderCapacity) throws ServerBusyException {
+		long avgMs = getAverageServiceTimeMs();
+		int capacity = Math.max(1, builderCapacity);
+		
+		if (maxQueueDepth > 0 && queueSize >= maxQueueDepth) {
+			// Suggest waiting until the queue has drained below its maximum depth
+			long drainMs = avgMs > 0 ? (queueSize - maxQueueDepth + 1) * avgMs / capacity : 0L;
+			throw new ServerBusyException(toRetrySeconds(drainMs));
+		}
+		
+		long estimatedWaitMs = estimateWaitMs(queueSize, capacity);
+		if (maxEstimatedWaitMs > 0 && estimatedWaitMs > maxEstimatedWaitMs) {
+			// Suggest waiting until the estimated wait is acceptable
+			throw new ServerBusyException(toRetrySeconds(estimatedWaitMs - maxEstimatedWaitMs));
+		}
+	}
+
+	private static int toRetrySeconds(long ms) {
+		return (int) Math.max(1L, (ms + 999L) / 1000L);
+	}
+}
@@ -0,0 +1,76 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+
+/**
+ * An {@link IFutureSubmissionResult} for a submission that is identical
+ * to one which is already queued or being tested.  Rather than being
+ * tested again, it waits for the result of the existing
+ * {@link OOPBuildServiceSubmission}.  Each caller gets its own copy of the
+ * {@link SubmissionResult}, since callers may modify the result
+ * (e.g., when storing its TestResults in the database).
+ * 
+ * @author David Hovemeyer
+ */
+public class CoalescedSubmission implements IFutureSubmissionResult {
+	private final OOPBuildServiceSubmission original;
+	private SubmissionResult result;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param original the existing {@link OOPBuildServiceSubmission}
+	 */
+	public CoalescedSubmission(OOPBuildServiceSubmission original) {
+		this.original = original;
+	}
+	
+	@Override
+	public synchronized SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException {
+		if (result == null) {
+			SubmissionResult originalResult = original.waitFor(timeoutMs);
+			if (originalResult != null) {
+				try {
+					result = BinaryConversion.decodeSubmissionResult(BinaryConversion.encodeSubmissionResult(originalResult));
+				} catch (IOException e) {
+					throw new SubmissionException("Could not copy submission result", e);
+				}
+			}
+		}
+		return result;
+	}
+	
+	@Override
+	public void addCompletionListener(final ISubmissionCompletionListener listener) {
+		original.addCompletionListener(new ISubmissionCompletionListener() {
+			@Override
+			public void onSubmissionComplete(IFutureSubmissionResult future) {
+				listener.onSubmissionComplete(CoalescedSubmission.this);
+			}
+		});
+	}
+}
@@ -0,0 +1,260 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ISubmissionQueue} that shares the Builders fairly between
+ * courses, and between the users within each course, using
+ * deficit round-robin scheduling.  Each course, and each user within
+ * a course, with waiting submissions receives the same share of
+ * Builder time, so a large course (or a single student submitting
+ * repeatedly) cannot starve everyone else.  Within a single user's
+ * submissions, order is first-in, first-out.
+ * 
+ * <p>The cost of a submission is estimated as the number of test cases
+ * it must be tested against, so a user submitting problems with many
+ * test cases receives proportionally fewer turns.
+ * 
+ * @author David Hovemeyer
+ */
+public class FairShareSubmissionQueue implements ISubmissionQueue {
+	/** Default quantum: the cost credited to a flow on each of its turns. */
+	public static final int DEFAULT_QUANTUM = 8;
+	
+	/**
+	 * A flow of submissions scheduled by deficit round-robin.
+	 */
+	private static abstract class Flow {
+		final int id;
+		int deficit;
+		boolean hasTurn;
+		
+		public Flow(int id) {
+			this.id = id;
+		}
+		
+		/** @return true if the flow has no waiting submissions */
+		public abstract boolean isEmpty();
+		
+		/** @return the cost of the submission that would be removed next */
+		public abstract int peekCost(int quantum);
+		
+		/** @return the next submission, which is removed from the flow */
+		public abstract OOPBuildServiceSubmission remove(int quantum);
+	}
+	
+	/**
+	 * One user's submissions, in submission order.
+	 */
+	private static class UserFlow extends Flow {
+		final LinkedList<OOPBuildServiceSubmission> submissions = new LinkedList<OOPBuildServiceSubmission>();
+		
+		public UserFlow(int userId) {
+			super(userId);
+		}
+		
+		@Override
+		public boolean isEmpty() {
+			return submissions.isEmpty();
+		}
+		
+		@Override
+		public int peekCost(int quantum) {
+			return getCost(submissions.getFirst());
+		}
+		
+		@Override
+		public OOPBuildServiceSubmission remove(int quantum) {
+			return submissions.removeFirst();
+		}
+	}
+	
+	/**
+	 * One course's submissions, shared between its users.
+	 */
+	private static class CourseFlow extends Flow {
+		final Map<Integer, UserFlow> userFlows = new HashMap<Integer, UserFlow>();
+		final LinkedList<Flow> activeUsers = new LinkedList<Flow>();
+		
+		public CourseFlow(int courseId) {
+			super(courseId);
+		}
+		
+		@Override
+		public boolean isEmpty() {
+			return activeUsers.isEmpty();
+		}
+		
+		@Override
+		public int peekCost(int quantum) {
+			return selectFlow(activeUsers, quantum).peekCost(quantum);
+		}
+		
+		@Override
+		public OOPBuildServiceSubmission remove(int quantum) {
+			Flow userFlow = selectFlow(activeUsers, quantum);
+			OOPBuildServiceSubmission submission = removeFrom(activeUsers, userFlow, quantum);
+			if (userFlow.isEmpty()) {
+				userFlows.remove(userFlow.id);
+			}
+			return submission;
+		}
+	}
+
+	private final int quantum;
+	private final Object lock;
+	private final Map<Integer, CourseFlow> courseFlows;
+	private final LinkedList<Flow> activeCourses;
+	private int size;
+	
+	/**
+	 * Constructor.
+	 */
+	public FairShareSubmissionQueue() {
+		this(DEFAULT_QUANTUM);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param quantum the cost credited to each course and user on each of its turns:
+	 *                smaller values interleave more finely
+	 */
+	public FairShareSubmissionQueue(int quantum) {
+		if (quantum < 1) {
+			throw new IllegalArgumentException("Quantum must be at least 1");
+		}
+		this.quantum = quantum;
+		this.lock = new Object();
+		this.courseFlows = new HashMap<Integer, CourseFlow>();
+		this.activeCourses = new LinkedList<Flow>();
+		this.size = 0;
+	}
+
+	@Override
+	public void put(OOPBuildServiceSubmission submission) {
+		synchronized (lock) {
+			CourseFlow courseFlow = courseFlows.get(submission.getCourseId());
+			if (courseFlow == null) {
+				courseFlow = new CourseFlow(submission.getCourseId());
+				courseFlows.put(courseFlow.id, courseFlow);
+				activeCourses.addLast(courseFlow);
+			}
+			UserFlow userFlow = courseFlow.userFlows.get(submission.getUserId());
+			if (userFlow == null) {
+				userFlow = new UserFlow(submission.getUserId());
+				courseFlow.userFlows.put(userFlow.id, userFlow);
+				courseFlow.activeUsers.addLast(userFlow);
+			}
+			userFlow.submissions.addLast(submission);
+			size++;
+			lock.notify();
+		}
+	}
+
+	@Override
+	public OOPBuildServiceSubmission poll(long timeout, TimeUnit unit) throws InterruptedException {
+		synchronized (lock) {
+			long timeoutMs = unit.toMillis(timeout);
+			while (size == 0 && timeoutMs > 0L) {
+				long start = System.currentTimeMillis();
+				lock.wait(timeoutMs);
+				long end = System.currentTimeMillis();
+				timeoutMs -= (end - start);
+			}
+			if (size == 0) {
+				return null;
+			}
+			
+			Flow courseFlow = selectFlow(activeCourses, quantum);
+			OOPBuildServiceSubmission submission = removeFrom(activeCourses, courseFlow, quantum);
+			if (courseFlow.isEmpty()) {
+				courseFlows.remove(courseFlow.id);
+			}
+			size--;
+			return submission;
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (lock) {
+			return size;
+		}
+	}
+	
+	/**
+	 * Estimate the cost of testing a submission.
+	 * 
+	 * @param submission the submission
+	 * @return the estimated cost (at least 1)
+	 */
+	static int getCost(OOPBuildServiceSubmission submission) {
+		return Math.max(1, submission.getTestCaseList().size());
+	}
+
+	/**
+	 * Find the flow whose turn it is.  The flow at the head of the
+	 * active list is credited with a quantum when its turn begins; its turn
+	 * ends (and it moves to the tail of the list) when its deficit is
+	 * insufficient to pay for its next submission.  Calling this method
+	 * again without removing a submission returns the same flow.
+	 * 
+	 * @param active   list of flows with waiting submissions (must not be empty)
+	 * @param quantum  the quantum
+	 * @return the flow from which the next submission should be removed
+	 */
+	private static Flow selectFlow(LinkedList<Flow> active, int quantum) {
+		while (true) {
+			Flow flow = active.getFirst();
+			if (!flow.hasTurn) {
+				flow.hasTurn = true;
+				flow.deficit += quantum;
+			}
+			if (flow.peekCost(quantum) <= flow.deficit) {
+				return flow;
+			}
+			flow.hasTurn = false;
+			active.removeFirst();
+			active.addLast(flow);
+		}
+	}
+
+	/**
+	 * Remove the next submission from the flow selected by
+	 * {@link #selectFlow(LinkedList, int)}, charging its cost to
+	 * the flow's deficit.  A flow that becomes empty leaves the
+	 * active list and forfeits its remaining deficit.
+	 */
+	private static OOPBuildServiceSubmission removeFrom(LinkedList<Flow> active, Flow flow, int quantum) {
+		int cost = flow.peekCost(quantum);
+		OOPBuildServiceSubmission submission = flow.remove(quantum);
+		flow.deficit -= cost;
+		if (flow.isEmpty()) {
+			flow.deficit = 0;
+			flow.hasTurn = false;
+			active.remove(flow);
+		}
+		return submission;
+	}
+}
@@ -0,0 +1,53 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ISubmissionQueue} in which submissions are tested strictly
+ * in the order in which they were submitted.
+ * 
+ * @author David Hovemeyer
+ */
+public class FifoSubmissionQueue implements ISubmissionQueue {
+	private LinkedBlockingQueue<OOPBuildServiceSubmission> queue;
+	
+	/**
+	 * Constructor.
+	 */
+	public FifoSubmissionQueue() {
+		this.queue = new LinkedBlockingQueue<OOPBuildServiceSubmission>();
+	}
+
+	@Override
+	public void put(OOPBuildServiceSubmission submission) {
+		queue.add(submission);
+	}
+
+	@Override
+	public OOPBuildServiceSubmission poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+}
@@ -0,0 +1,53 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of {@link OOPBuildServiceSubmission}s waiting to be sent to
+ * a Builder.  Implementations decide the order in which submissions
+ * are handed to the {@link WorkerTask}s, and must be thread-safe.
+ * 
+ * @author David Hovemeyer
+ */
+public interface ISubmissionQueue {
+	/**
+	 * Add a submission to the queue.
+	 * 
+	 * @param submission the {@link OOPBuildServiceSubmission} to add
+	 */
+	public void put(OOPBuildServiceSubmission submission);
+	
+	/**
+	 * Remove the next submission from the queue, waiting if necessary
+	 * for one to become available.
+	 * 
+	 * @param timeout  how long to wait
+	 * @param unit     the TimeUnit of the timeout
+	 * @return the next submission, or null if none became available
+	 *         before the timeout expired
+	 * @throws InterruptedException
+	 */
+	public OOPBuildServiceSubmission poll(long timeout, TimeUnit unit) throws InterruptedException;
+	
+	/**
+	 * @return the number of submissions in the queue
+	 */
+	public int size();
+}
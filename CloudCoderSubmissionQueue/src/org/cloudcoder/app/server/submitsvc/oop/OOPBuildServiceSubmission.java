@@ -17,14 +17,20 @@
 
 package org.cloudcoder.app.server.submitsvc.oop;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A Submission (Problem, TestCases, and program text)
@@ -33,29 +39,46 @@ import org.cloudcoder.app.shared.model.TestCase;
  * @author David Hovemeyer
  */
 public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
+	private static final Logger logger = LoggerFactory.getLogger(OOPBuildServiceSubmission.class);
+	
 	private Object lock = new Object();
 	private Submission submission;
+	private int userId;
 	private boolean ready;
 	private SubmissionResult submissionResult;
 	private Exception error;
 	private int numAttempts;
+	private String problemHash;
+	private boolean complete;
+	private long enqueueTime;
+	private long dequeueTime;
+	private long completionTime;
+	private List<ISubmissionCompletionListener> completionListeners = new ArrayList<ISubmissionCompletionListener>();
 	
-	public OOPBuildServiceSubmission(Submission submission) {
+	/**
+	 * Constructor.
+	 * 
+	 * @param submission  the {@link Submission}
+	 * @param userId      the id of the user who made the submission
+	 *                    (0 if the submission was not made by a user)
+	 */
+	public OOPBuildServiceSubmission(Submission submission, int userId) {
 		this.submission = submission;
+		this.userId = userId;
 	}
 	
 	@Override
 	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException {
 		synchronized (lock) {
-			if (error != null) {
-				throw new SubmissionException("Error testing submission", error);
-			}
-			while (!ready && timeoutMs > 0L) {
+			while (!ready && error == null && timeoutMs > 0L) {
 				long start = System.currentTimeMillis();
 				lock.wait(timeoutMs);
 				long end = System.currentTimeMillis();
 				timeoutMs -= (end - start);
 			}
+			if (error != null) {
+				throw new SubmissionException("Error testing submission", error);
+			}
 			return ready ? submissionResult : null;
 		}
 	}
@@ -66,12 +89,51 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	/**
+	 * @return the id of the course the Problem belongs to
+	 *         (0 if the Problem does not belong to a course)
+	 */
+	public int getCourseId() {
+		synchronized (lock) {
+			Integer courseId = submission.getProblem().getCourseId();
+			return courseId != null ? courseId : 0;
+		}
+	}
+	
+	/**
+	 * @return the id of the user who made the submission
+	 *         (0 if the submission was not made by a user)
+	 */
+	public int getUserId() {
+		return userId;
+	}
+	
 	public List<TestCase> getTestCaseList() {
 		synchronized (lock) {
 			return submission.getTestCaseList();
 		}
 	}
 	
+	/**
+	 * Get the content hash of the Problem and TestCases, as computed by
+	 * {@link HashProblemAndTestCaseData#computeExact()}.  The hash is computed the first
+	 * time this method is called, and is then remembered in case the
+	 * submission needs to be sent to a Builder more than once.
+	 * 
+	 * @return the content hash of the Problem and TestCases
+	 */
+	public String getProblemHash() {
+		synchronized (lock) {
+			if (problemHash == null) {
+				ProblemAndTestCaseList problemAndTestCaseList = new ProblemAndTestCaseList();
+				problemAndTestCaseList.setProblem(submission.getProblem());
+				problemAndTestCaseList.setTestCaseList(submission.getTestCaseList());
+				problemHash = new HashProblemAndTestCaseData<ProblemAndTestCaseList>(problemAndTestCaseList).computeExact();
+			}
+			return problemHash;
+		}
+	}
+	
 	public String getProgramText() {
 		synchronized (lock) {
 			return submission.getProgramText();
@@ -81,9 +143,29 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	public void setSubmissionResult(SubmissionResult result) {
 		this.submissionResult = result;
 	}
+	
+	/**
+	 * @return the {@link SubmissionResult}, or null if testing has not
+	 *         completed successfully (yet)
+	 */
+	public SubmissionResult getSubmissionResult() {
+		synchronized (lock) {
+			return error == null ? submissionResult : null;
+		}
+	}
 
+	/**
+	 * Record an error that prevented the submission from being tested.
+	 * Threads waiting for the result are woken, and will see the error.
+	 * 
+	 * @param e the error
+	 */
 	public void setError(Exception e) {
-		this.error = e;
+		synchronized (lock) {
+			this.error = e;
+			lock.notifyAll();
+		}
+		onComplete();
 	}
 	
 	/**
@@ -98,6 +180,97 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 			this.ready = true;
 			lock.notifyAll();
 		}
+		onComplete();
+	}
+	
+	@Override
+	public void addCompletionListener(ISubmissionCompletionListener listener) {
+		synchronized (lock) {
+			if (!complete) {
+				completionListeners.add(listener);
+				return;
+			}
+		}
+		notifyListener(listener);
+	}
+	
+	private void onComplete() {
+		List<ISubmissionCompletionListener> toNotify;
+		synchronized (lock) {
+			if (complete) {
+				return;
+			}
+			complete = true;
+			completionTime = System.currentTimeMillis();
+			toNotify = completionListeners;
+			completionListeners = null;
+		}
+		for (ISubmissionCompletionListener listener : toNotify) {
+			notifyListener(listener);
+		}
+	}
+	
+	private void notifyListener(ISubmissionCompletionListener listener) {
+		// A misbehaving listener must not prevent other listeners
+		// from being notified, or kill the thread completing the submission
+		try {
+			listener.onSubmissionComplete(this);
+		} catch (RuntimeException e) {
+			logger.error("Submission completion listener threw exception", e);
+		}
+	}
+	
+	/**
+	 * Record the time at which the submission was added to the
+	 * submission queue.  If the submission is put back in the queue
+	 * to be retried, the original time is kept.
+	 */
+	public void markEnqueued() {
+		synchronized (lock) {
+			if (enqueueTime == 0L) {
+				enqueueTime = System.currentTimeMillis();
+			}
+		}
+	}
+	
+	/**
+	 * Record the time at which the submission was sent to a Builder.
+	 * If the submission is retried, the time of the last attempt is kept.
+	 */
+	public void markDequeued() {
+		synchronized (lock) {
+			dequeueTime = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * @return the time at which the submission was first added to the
+	 *         submission queue (0 if it has not been queued)
+	 */
+	public long getEnqueueTime() {
+		synchronized (lock) {
+			return enqueueTime;
+		}
+	}
+	
+	/**
+	 * @return the time at which the submission was last sent to a Builder
+	 *         (0 if it has not been sent)
+	 */
+	public long getDequeueTime() {
+		synchronized (lock) {
+			return dequeueTime;
+		}
+	}
+	
+	/**
+	 * @return the time at which the submission became ready or failed
+	 *         (0 if it is not complete)
+	 */
+	public long getCompletionTime() {
+		synchronized (lock) {
+			return completionTime;
+		}
 	}
 	
 	/**
@@ -30,6 +30,7 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
@@ -42,10 +43,13 @@ import javax.net.ssl.X509KeyManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
 import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ServerBusyException;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,6 +92,14 @@ public class OutOfProcessSubmitService implements ISubmitService {
 	private String keystoreFilename;
 	private String keystorePassword;
 	private int port;
+	private String queueType;
+	private int fairShareQuantum;
+	private int maxQueueDepth;
+	private int maxEstimatedWaitSec;
+	private long resultCacheMaxBytes;
+	private volatile SubmissionResultCache resultCache;
+	private final ConcurrentHashMap<String, OOPBuildServiceSubmission> inFlight =
+			new ConcurrentHashMap<String, OOPBuildServiceSubmission>();
 
 	/**
 	 * Poll to see how many worker tasks, and thus how many connected builder threads,
@@ -140,11 +152,39 @@ public class OutOfProcessSubmitService implements ISubmitService {
 			logger.info("Using keystore {}. password={}", this.keystoreFilename, this.keystorePassword);
 		}
 		this.port = Integer.parseInt(getRequiredProperty(config, "cloudcoder.submitsvc.oop.port"));
+		this.queueType = getOptionalProperty(config, "cloudcoder.submitsvc.oop.queue", "fairshare");
+		this.fairShareQuantum = Integer.parseInt(getOptionalProperty(config, "cloudcoder.submitsvc.oop.fairshare.quantum",
+				String.valueOf(FairShareSubmissionQueue.DEFAULT_QUANTUM)));
+		this.maxQueueDepth = Integer.parseInt(getOptionalProperty(config, "cloudcoder.submitsvc.oop.maxQueueDepth",
+				String.valueOf(AdmissionController.DEFAULT_MAX_QUEUE_DEPTH)));
+		this.maxEstimatedWaitSec = Integer.parseInt(getOptionalProperty(config, "cloudcoder.submitsvc.oop.maxEstimatedWaitSec",
+				String.valueOf(AdmissionController.DEFAULT_MAX_ESTIMATED_WAIT_SEC)));
+		this.resultCacheMaxBytes = Long.parseLong(getOptionalProperty(config, "cloudcoder.submitsvc.oop.resultCache.maxBytes",
+				String.valueOf(SubmissionResultCache.DEFAULT_MAX_BYTES)));
+	}
+	
+	private ISubmissionQueue createSubmissionQueue() {
+		if (queueType.equals("fifo")) {
+			logger.info("Using FIFO submission queue");
+			return new FifoSubmissionQueue();
+		} else if (queueType.equals("fairshare")) {
+			logger.info("Using fair-share submission queue (quantum={})", fairShareQuantum);
+			return new FairShareSubmissionQueue(fairShareQuantum);
+		} else {
+			throw new IllegalArgumentException("Unknown submission queue type: " + queueType);
+		}
 	}
 	
 	@Override
 	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) 
 	throws SubmissionException 
+	{
+		return submitAsync(problem, testCaseList, programText, 0);
+	}
+	
+	@Override
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText, int userId) 
+	throws SubmissionException 
 	{
 		if (serverTask == null) {
 			throw new IllegalStateException();
@@ -158,14 +198,84 @@ public class OutOfProcessSubmitService implements ISubmitService {
 			throw new SubmissionException("Cannot test submission: no Builders are available");
 		}
 
-		// Add the submission to the queue.
 		OOPBuildServiceSubmission future = new OOPBuildServiceSubmission(
-				new Submission(problem, testCaseList, programText));
-		serverTask.submit(future);
+				new Submission(problem, testCaseList, programText), userId);
+		String key = SubmissionResultCache.computeKey(future.getProblemHash(), programText);
+		
+		// If identical code has already been tested against an identical
+		// problem, there is no need to test it again.
+		SubmissionResultCache theResultCache = resultCache;
+		if (theResultCache != null) {
+			SubmissionResult cachedResult = theResultCache.get(key);
+			if (cachedResult != null) {
+				logger.debug("Using cached result for problem {}", problem.getProblemId());
+				future.setSubmissionResult(cachedResult);
+				future.setReady();
+				return future;
+			}
+		}
+		
+		return submit(key, future, serverTask);
+	}
+	
+	/**
+	 * Add a submission to the queue, unless an identical submission
+	 * is already queued or being tested, in which case the existing
+	 * submission's result is shared.
+	 * 
+	 * @param key            the submission's key (see {@link SubmissionResultCache#computeKey(String, String)})
+	 * @param future         the submission
+	 * @param theServerTask  the {@link ServerTask} whose queue the submission should be added to
+	 * @return the {@link IFutureSubmissionResult} which will yield the submission's result
+	 * @throws ServerBusyException if the queue is too full to accept the submission
+	 */
+	IFutureSubmissionResult submit(final String key, final OOPBuildServiceSubmission future, ServerTask theServerTask)
+	throws ServerBusyException
+	{
+		OOPBuildServiceSubmission existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			logger.debug("Coalescing submission with identical in-flight submission");
+			return new CoalescedSubmission(existing);
+		}
+		
+		// Once the submission is complete, later identical submissions
+		// must be tested (or found in the result cache) again
+		future.addCompletionListener(new ISubmissionCompletionListener() {
+			@Override
+			public void onSubmissionComplete(IFutureSubmissionResult completed) {
+				inFlight.remove(key, future);
+			}
+		});
+
+		// Add the submission to the queue.
+		// If the queue is overloaded, a ServerBusyException is thrown,
+		// telling the client when to retry.
+		try {
+			theServerTask.submit(future);
+		} catch (ServerBusyException e) {
+			// Any identical submissions that were coalesced with this one fail too
+			future.setError(e);
+			throw e;
+		}
 		
 		return future;
 	}
 	
+	/**
+	 * @return the number of distinct submissions currently queued or being tested
+	 */
+	int getNumInFlight() {
+		return inFlight.size();
+	}
+	
+	@Override
+	public void invalidateCachedResults(int problemId) {
+		SubmissionResultCache theResultCache = resultCache;
+		if (theResultCache != null) {
+			theResultCache.invalidateProblem(problemId);
+		}
+	}
+	
 	private ServerSocket createSSLServerSocket(int port)
 	throws IOException, UnknownHostException, KeyStoreException, NoSuchAlgorithmException, CertificateException, NoSuchProviderException, UnrecoverableKeyException, KeyManagementException
 	{
@@ -259,7 +369,13 @@ public class OutOfProcessSubmitService implements ISubmitService {
 	    	serverSocket = new ServerSocket(port);
 	    }
 		
-		serverTask = new ServerTask(serverSocket, useSSL, hostName);
+		logger.info("Admission control: maxQueueDepth={}, maxEstimatedWaitSec={}", maxQueueDepth, maxEstimatedWaitSec);
+		if (resultCacheMaxBytes > 0L) {
+			logger.info("Caching submission results (maxBytes={})", resultCacheMaxBytes);
+			resultCache = new SubmissionResultCache(resultCacheMaxBytes);
+		}
+		serverTask = new ServerTask(createSubmissionQueue(), new AdmissionController(maxQueueDepth, maxEstimatedWaitSec),
+				resultCache, serverSocket, useSSL, hostName);
 		serverThread = new Thread(serverTask);
 		serverThread.start();
 		logger.info("Out of process submit service server thread started");
@@ -22,10 +22,12 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
-import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
+import org.cloudcoder.app.shared.model.BuildStepTiming;
+import org.cloudcoder.app.shared.model.ServerBusyException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,7 +60,28 @@ public class ServerTask implements Runnable {
     	}
     }
 
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+    /**
+     * Records the queue wait, service time, and build step timings of each
+     * successfully tested submission.
+     */
+    private static class LatencyRecorder implements ISubmissionCompletionListener {
+    	@Override
+    	public void onSubmissionComplete(IFutureSubmissionResult future) {
+    		OOPBuildServiceSubmission submission = (OOPBuildServiceSubmission) future;
+    		if (submission.getDequeueTime() != 0L && submission.getSubmissionResult() != null) {
+    			HealthDataSingleton.getInstance().recordSubmissionLatency(
+    					submission.getDequeueTime() - submission.getEnqueueTime(),
+    					submission.getCompletionTime() - submission.getDequeueTime());
+    			HealthDataSingleton.getInstance().recordBuildStepTimings(
+    					BuildStepTiming.fromSubmissionResult(submission.getSubmissionResult()));
+    		}
+    	}
+    }
+    
+    private static final LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+	private ISubmissionQueue submissionQueue;
+	private AdmissionController admissionController;
 	private ServerSocket serverSocket;
 	private WorkerTaskSet workerTaskSet;
 	private volatile boolean shutdownRequested;
@@ -69,16 +92,24 @@ public class ServerTask implements Runnable {
 	/**
 	 * Constructor.
 	 * 
+	 * @param submissionQueue the {@link ISubmissionQueue} in which submissions wait
+	 *                        to be tested
+	 * @param admissionController the {@link AdmissionController} which decides whether
+	 *                        submissions are accepted
+	 * @param resultCache  the {@link SubmissionResultCache} in which results are
+	 *                     stored (null if results are not cached)
 	 * @param serverSocket ServerSocket from which connections can be accepted
 	 * @param usingSSL     true if the client connections are authenticated/encrypted using SSL;
 	 *                     if false, we will reject connections originating from the
 	 *                     external network
 	 * @param hostName     the (external) hostname of this host 
 	 */
-	public ServerTask(ServerSocket serverSocket, boolean usingSSL, String hostName) {
-		this.submissionQueue = new LinkedBlockingQueue<OOPBuildServiceSubmission>();
+	public ServerTask(ISubmissionQueue submissionQueue, AdmissionController admissionController,
+			SubmissionResultCache resultCache, ServerSocket serverSocket, boolean usingSSL, String hostName) {
+		this.submissionQueue = submissionQueue;
+		this.admissionController = admissionController;
 		this.serverSocket = serverSocket;
-		this.workerTaskSet = new WorkerTaskSet();
+		this.workerTaskSet = new WorkerTaskSet(admissionController, resultCache);
 		this.shutdownRequested = false;
 		this.usingSSL = usingSSL;
 		this.hostName = hostName;
@@ -88,9 +119,20 @@ public class ServerTask implements Runnable {
 		return workerTaskSet.getNumWorkerTasks();
 	}
 	
-	public void submit(OOPBuildServiceSubmission submission) throws SubmissionException {
+	/**
+	 * Add a submission to the queue so a worker can grab it.
+	 * 
+	 * @param submission the submission
+	 * @throws ServerBusyException if the queue is too full to accept the submission
+	 */
+	public void submit(OOPBuildServiceSubmission submission) throws ServerBusyException {
+		// Apply backpressure rather than letting the queue grow without bound
+		admissionController.checkAdmission(submissionQueue.size(), workerTaskSet.getTotalCapacity());
+		
 		// add it to the queue so a worker can grab it	
-	    submissionQueue.add(submission);
+		submission.markEnqueued();
+		submission.addCompletionListener(latencyRecorder);
+	    submissionQueue.put(submission);
 	}
 	
 	@Override
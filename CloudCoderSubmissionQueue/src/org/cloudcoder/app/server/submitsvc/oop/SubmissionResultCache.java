@@ -0,0 +1,223 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2014, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2014, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.ConvertBytesToHex;
+import org.cloudcoder.app.shared.model.SHA1;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+
+/**
+ * Cache of {@link SubmissionResult}s, keyed by the content hash of the
+ * Problem and TestCases combined with the submitted program text.
+ * Students often resubmit identical code, and testing identical code
+ * against an identical problem produces the same result, so there is
+ * no need to send it to a Builder again.
+ * <p>
+ * Results are stored in their encoded form, so each hit yields a fresh
+ * {@link SubmissionResult} that the caller is free to modify.  The cache
+ * is bounded by the total size of the encoded results, and the least
+ * recently used results are evicted first.  Results which might not be
+ * reproducible (timeouts, internal errors) are never cached.
+ * 
+ * @author David Hovemeyer
+ */
+public class SubmissionResultCache {
+	/** Default maximum total size of cached results, in bytes. */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024L * 1024L;
+	
+	/** Approximate per-entry overhead (key, map entry, etc.), in bytes. */
+	private static final int ENTRY_OVERHEAD = 128;
+	
+	private static class Entry {
+		final Integer problemId;
+		final byte[] encodedResult;
+		
+		Entry(Integer problemId, byte[] encodedResult) {
+			this.problemId = problemId;
+			this.encodedResult = encodedResult;
+		}
+		
+		long getSize() {
+			return encodedResult.length + ENTRY_OVERHEAD;
+		}
+	}
+	
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> map;
+	private long totalBytes;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxBytes maximum total size of cached results, in bytes
+	 */
+	public SubmissionResultCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+	
+	/**
+	 * Compute the cache key for a submission.
+	 * 
+	 * @param problemHash  the content hash of the Problem and TestCases
+	 * @param programText  the submitted program text
+	 * @return the cache key
+	 */
+	public static String computeKey(String problemHash, String programText) {
+		SHA1 sha1 = new SHA1();
+		try {
+			sha1.update(problemHash.getBytes("UTF-8"));
+			sha1.update(new byte[]{ 0 });
+			sha1.update(programText.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Can't convert string to UTF-8 bytes?");
+		}
+		return new ConvertBytesToHex(sha1.digest()).convert();
+	}
+	
+	/**
+	 * Determine whether a {@link SubmissionResult} may be cached,
+	 * i.e., whether testing the same program again would be
+	 * expected to produce the same result.
+	 * 
+	 * @param result the {@link SubmissionResult}
+	 * @return true if the result may be cached
+	 */
+	public static boolean isCacheable(SubmissionResult result) {
+		if (result.getCompilationResult() == null) {
+			return false;
+		}
+		CompilationOutcome compilationOutcome = result.getCompilationResult().getOutcome();
+		if (compilationOutcome != CompilationOutcome.SUCCESS && compilationOutcome != CompilationOutcome.FAILURE) {
+			return false;
+		}
+		if (result.getTestResults() != null) {
+			for (TestResult testResult : result.getTestResults()) {
+				TestOutcome outcome = testResult.getOutcome();
+				if (outcome == TestOutcome.FAILED_FROM_TIMEOUT || outcome == TestOutcome.INTERNAL_ERROR) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Look up a cached result.
+	 * 
+	 * @param key the cache key (see {@link #computeKey(String, String)})
+	 * @return a copy of the cached {@link SubmissionResult}, or null if
+	 *         there is no cached result for the key
+	 */
+	public SubmissionResult get(String key) {
+		Entry entry;
+		synchronized (map) {
+			entry = map.get(key);
+		}
+		if (entry == null) {
+			return null;
+		}
+		try {
+			return BinaryConversion.decodeSubmissionResult(entry.encodedResult);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not decode cached submission result", e);
+		}
+	}
+	
+	/**
+	 * Add a result to the cache, if it is cacheable
+	 * (see {@link #isCacheable(SubmissionResult)}).
+	 * 
+	 * @param key        the cache key (see {@link #computeKey(String, String)})
+	 * @param problemId  the id of the Problem (null if the Problem is not in the database)
+	 * @param result     the {@link SubmissionResult}
+	 */
+	public void put(String key, Integer problemId, SubmissionResult result) {
+		if (!isCacheable(result)) {
+			return;
+		}
+		Entry entry = new Entry(problemId, BinaryConversion.encodeSubmissionResult(result));
+		if (entry.getSize() > maxBytes) {
+			return;
+		}
+		synchronized (map) {
+			Entry old = map.put(key, entry);
+			if (old != null) {
+				totalBytes -= old.getSize();
+			}
+			totalBytes += entry.getSize();
+			
+			// Evict least recently used entries until the cache fits
+			Iterator<Entry> i = map.values().iterator();
+			while (totalBytes > maxBytes) {
+				totalBytes -= i.next().getSize();
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Discard all cached results for given Problem.  This should be
+	 * called whenever a Problem or its TestCases are modified.
+	 * (Since the content hash is exact, a modification changes the
+	 * cache key anyway, but the stale results would otherwise take up
+	 * space until they are evicted.)
+	 * 
+	 * @param problemId the id of the Problem
+	 */
+	public void invalidateProblem(int problemId) {
+		synchronized (map) {
+			for (Iterator<Map.Entry<String, Entry>> i = map.entrySet().iterator(); i.hasNext(); ) {
+				Entry entry = i.next().getValue();
+				if (entry.problemId != null && entry.problemId.intValue() == problemId) {
+					totalBytes -= entry.getSize();
+					i.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of cached results
+	 */
+	public int size() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+	
+	/**
+	 * @return the total size of the cached results, in bytes
+	 */
+	public long getTotalBytes() {
+		synchronized (map) {
+			return totalBytes;
+		}
+	}
+}
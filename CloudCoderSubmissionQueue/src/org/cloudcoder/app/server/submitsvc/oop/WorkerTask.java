@@ -18,23 +18,27 @@
 package org.cloudcoder.app.server.submitsvc.oop;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.IOUtils;
-import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionResult;
-import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
-import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.cloudcoder.app.shared.model.wire.Message;
+import org.cloudcoder.app.shared.model.wire.MessageChannel;
+import org.cloudcoder.app.shared.model.wire.MessageType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Worker task to communicate with a remote Builder process.
+ * Submissions are pipelined: up to the capacity advertised by the
+ * Builder may be in flight on the connection at once, each identified
+ * by a correlation id.  The worker thread sends submissions, while a
+ * separate reader thread handles the Builder's responses.
  * 
  * @author David Hovemeyer
  */
@@ -47,56 +51,120 @@ public class WorkerTask implements Runnable {
 
 	/**
 	 * Maximum number of milliseconds that the task is allowed to
-	 * be idle (no submissions available) before a keepalive signal
+	 * be idle (no submissions sent) before a keepalive signal
 	 * is sent to the builder.
 	 */
 	private static final long MAX_IDLE_TIME_MILLIS = 5000L;
 
 	private static Logger logger = LoggerFactory.getLogger(WorkerTask.class);
 	
+	/**
+	 * Runnable for the thread that reads responses from the Builder.
+	 */
+	private class ResponseReader implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					handleResponse(channel.receive());
+				}
+			} catch (IOException e) {
+				if (!shutdownRequested) {
+					logger.error("Error reading response from Builder", e);
+				}
+			} finally {
+				synchronized (lock) {
+					connectionBroken = true;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+	
 	private volatile boolean shutdownRequested;
 	private Socket clientSocket;
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private ISubmissionQueue submissionQueue;
 	private WorkerTaskSet workerTaskSet;
 	
-	private ObjectOutputStream out;
-	private ObjectInputStream in;
+	private MessageChannel channel;
+	
+	// Fields protected by lock
+	private Object lock;
+	private Map<Integer, OOPBuildServiceSubmission> inFlight;
+	private Map<Integer, Long> sendTimes;
+	private int capacity;
+	private boolean connectionBroken;
+	
+	// Only accessed by the worker thread
+	private int nextCorrelationId;
 
-	public WorkerTask(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
+	public WorkerTask(Socket clientSocket, ISubmissionQueue submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
 		this.shutdownRequested = false;
 		this.clientSocket = clientSocket;
 		this.submissionQueue = submissionQueue;
 		this.workerTaskSet = workerTaskSet;
 		
-		this.out = new ObjectOutputStream(clientSocket.getOutputStream());
-		this.in = new ObjectInputStream(clientSocket.getInputStream());
+		this.channel = new MessageChannel(clientSocket.getInputStream(), clientSocket.getOutputStream());
+		
+		this.lock = new Object();
+		this.inFlight = new HashMap<Integer, OOPBuildServiceSubmission>();
+		this.sendTimes = new HashMap<Integer, Long>();
+		this.nextCorrelationId = 1;
 	}
 
 	public void shutdown() {
 		shutdownRequested = true;
 	}
+	
+	/**
+	 * @return the number of submissions the Builder can test at once
+	 *         (0 if the connection has not been established yet or is broken)
+	 */
+	public int getCapacity() {
+		synchronized (lock) {
+			return connectionBroken ? 0 : capacity;
+		}
+	}
 
 	@Override
 	public void run() {
 		logger.info("oop buildsvc WorkerTask starting");
 		
-		OOPBuildServiceSubmission submission = null;
+		// Make sure the Builder speaks the same version of the protocol,
+		// and find out how many submissions it is willing to accept at once
+		Thread readerThread = null;
+		try {
+			channel.exchangeHeaders();
+			capacity = BinaryConversion.decodeInt(channel.receive(MessageType.CAPACITY));
+			if (capacity < 1) {
+				throw new IOException("Builder advertised invalid capacity " + capacity);
+			}
+			logger.info("Builder accepts {} submissions at once", capacity);
+			readerThread = new Thread(new ResponseReader());
+			readerThread.start();
+		} catch (IOException e) {
+			logger.error("Could not exchange protocol headers with Builder", e);
+			shutdownRequested = true;
+		}
 		
-		// Keep track of how long it has been since we sent
-		// the Builder a Submission.  If it's been too long,
-		// we will send a keepalive signal to avoid the TCP
-		// connection timing out.
-		long idleTimeMillis = 0;
+		// Keep track of when we last sent something to the Builder.
+		// If it's been too long, we will send a keepalive signal to
+		// avoid the TCP connection timing out.
+		long lastSendTime = System.currentTimeMillis();
 		
 		// Testing of submissions by this worker continues until either an
 		// explicit shutdown request is made, or an exception is thrown communicating
 		// with the remote Builder process.
 	submissionTestingLoop:
 		while (!shutdownRequested) {
+			OOPBuildServiceSubmission submission = null;
 
-			// Try to get a submission to test
+			// Try to get a submission to test, but only if there is
+			// room for another one on this connection
 			try {
-				submission = submissionQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (awaitFreeSlot(POLL_INTERVAL_MILLIS)) {
+					submission = submissionQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				}
 			} catch (InterruptedException e) {
 				if (!shutdownRequested) {
 					logger.error("Unexpected interruption", e);
@@ -104,110 +172,199 @@ public class WorkerTask implements Runnable {
 				}
 			}
 			
+			if (isConnectionBroken()) {
+				if (submission != null) {
+					submissionQueue.put(submission);
+				}
+				break submissionTestingLoop;
+			}
+			
 			if (submission == null) {
-				idleTimeMillis += POLL_INTERVAL_MILLIS;
-				
-				if (idleTimeMillis >= MAX_IDLE_TIME_MILLIS) {
-					// Send a negative problem id as a keepalive signal.
+				if (System.currentTimeMillis() - lastSendTime >= MAX_IDLE_TIME_MILLIS) {
+					// Send a keepalive message.
 					// The Builder will ignore this.
 					try {
 						//logger.debug("Sending keepalive signal to Builder");
-						out.writeObject(Integer.valueOf(-1));
-						idleTimeMillis = 0L;
+						channel.send(MessageType.KEEPALIVE);
+						channel.flush();
+						lastSendTime = System.currentTimeMillis();
 					} catch (IOException e) {
 						logger.error("Error sending keepalive signal to Builder", e);
 						break submissionTestingLoop;
 					}
 				}
-			} else {
-				idleTimeMillis = 0L;
+				continue submissionTestingLoop;
 			}
 
-			if (submission != null) {
-				// Check to make sure there isn't some kind of persistent error
-				// affecting the testing of this submission
-				if (submission.getNumAttempts() >= 10) {
-					// Too many testing failures for this submission!
-					submission.setReady();
-					continue submissionTestingLoop;
-				}
-				
-				submission.setNumAttempts(submission.getNumAttempts() + 1);
-				
-				// Attempt to test the submission
-				try {
-					sendSubmissionForTesting(submission);
-					// Submission successfully tested!
-					submission = null; // We're done with this Submission
-				} catch (IOException e) {
-					submission.setError(e);
-					logger.error("IOException attempting to send submission for testing", e);
-					break submissionTestingLoop;
-				} catch (ClassNotFoundException e) {
-					submission.setError(e);
-					logger.error("ClassNotFoundException testing submission", e);
-					break submissionTestingLoop;
-				}
+			// Check to make sure there isn't some kind of persistent error
+			// affecting the testing of this submission
+			if (submission.getNumAttempts() >= 10) {
+				// Too many testing failures for this submission!
+				submission.setError(new IOException("Too many failed attempts to test submission"));
+				submission.setReady();
+				continue submissionTestingLoop;
+			}
+			
+			submission.setNumAttempts(submission.getNumAttempts() + 1);
+			
+			// Attempt to send the submission for testing.
+			// Once it is in flight, the ResponseReader is responsible for it.
+			int correlationId = nextCorrelationId++;
+			submission.markDequeued();
+			synchronized (lock) {
+				inFlight.put(correlationId, submission);
+				sendTimes.put(correlationId, System.currentTimeMillis());
 			}
-		}
-		
-		// If the testing of a submission was not completed,
-		// place it back in the queue so it has an opportunity to be re-tested
-		if (submission != null) {
 			try {
-				submissionQueue.put(submission);
-			} catch (InterruptedException e) {
-				logger.error("Failed to put submission back in submission queue", e);
-				submission.setError(e);
-				submission.setReady();
+				sendSubmissionForTesting(correlationId, submission);
+				lastSendTime = System.currentTimeMillis();
+			} catch (IOException e) {
+				// The submission is still in flight, so it will be put back
+				// in the queue (to be retried) when this worker exits.
+				// Don't set an error: that would complete it.
+				logger.error("IOException attempting to send submission for testing", e);
+				break submissionTestingLoop;
 			}
 		}
+		
+		// If we're shutting down in an orderly way, give the Builder
+		// a chance to finish the submissions that are in flight
+		if (shutdownRequested) {
+			waitForInFlightSubmissions();
+		}
 
 		// End the connection with the Builder
-		IOUtils.closeQuietly(in);
-		IOUtils.closeQuietly(out);
+		channel.close();
 		try {
 			clientSocket.close();
 		} catch (IOException e) {
 			logger.warn("Exception closing client socket", e);
 		}
+		if (readerThread != null) {
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				logger.error("Interrupted waiting for response reader thread to finish", e);
+			}
+		}
+		
+		// If the testing of any submissions was not completed,
+		// place them back in the queue so they have an opportunity to be re-tested
+		List<OOPBuildServiceSubmission> incomplete;
+		synchronized (lock) {
+			incomplete = new ArrayList<OOPBuildServiceSubmission>(inFlight.values());
+			inFlight.clear();
+			sendTimes.clear();
+		}
+		for (OOPBuildServiceSubmission submission : incomplete) {
+			submissionQueue.put(submission);
+		}
 		
 		workerTaskSet.onWorkerExit(this);
 		
 		logger.info("oop buildsvc WorkerTask exiting");
 	}
 
-	private void sendSubmissionForTesting(OOPBuildServiceSubmission submission) throws IOException, ClassNotFoundException {
-		Problem problem = submission.getProblem();
-		List<TestCase> testCaseList = submission.getTestCaseList();
-		String programText = submission.getProgramText();
-		
-		// Tell client which Problem to test
-		out.writeObject((Integer) problem.getProblemId());
-		out.flush();
-		
-		// Client will send back a boolean indicating whether or not it
-		// has this problem already: if not, send it (and its test cases).
-		Boolean response = (Boolean) in.readObject();
-		if (!response) {
-			out.writeObject(problem);
-			out.writeObject(testCaseList);
-			out.flush();
+	/**
+	 * Wait until there is room for another submission on this connection.
+	 * 
+	 * @param timeoutMs maximum time to wait
+	 * @return true if there is room, false if not (or if the connection is broken)
+	 * @throws InterruptedException
+	 */
+	private boolean awaitFreeSlot(long timeoutMs) throws InterruptedException {
+		synchronized (lock) {
+			long deadline = System.currentTimeMillis() + timeoutMs;
+			while (!connectionBroken && inFlight.size() >= capacity) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0L) {
+					return false;
+				}
+				lock.wait(remaining);
+			}
+			return !connectionBroken;
 		}
+	}
+
+	private boolean isConnectionBroken() {
+		synchronized (lock) {
+			return connectionBroken;
+		}
+	}
+
+	private void waitForInFlightSubmissions() {
+		synchronized (lock) {
+			while (!connectionBroken && !inFlight.isEmpty()) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					// WorkerTaskSet interrupts the worker thread on shutdown: keep waiting
+				}
+			}
+		}
+	}
+
+	private void sendSubmissionForTesting(int correlationId, OOPBuildServiceSubmission submission) throws IOException {
+		// Tell client which Problem to test.  Problems are identified by
+		// the hash of their content (not their problem id), so that
+		// the client will never test against a stale version of a problem.
+		channel.send(MessageType.PROBLEM_HASH, correlationId, BinaryConversion.encodeString(submission.getProblemHash()));
 		
-		// Send the program text
-		out.writeObject(programText);
-		out.flush();
-		
-		// Read list of TestResults
-		SubmissionResult result= (SubmissionResult) in.readObject();
-		
-//		logger.info("Received submission results");
-//		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
-//			logger.info("key={}, value={}", annotation.getKey(), annotation.getValue());
-//		}
+		// Send the program text.  We don't wait for the client to tell
+		// us whether it has the Problem: if it doesn't, the ResponseReader
+		// will send it (and its test cases) when the client asks.
+		channel.send(MessageType.PROGRAM_TEXT, correlationId, BinaryConversion.encodeString(submission.getProgramText()));
+		channel.flush();
+	}
+
+	/**
+	 * Handle a message received from the Builder.
+	 * Called only from the ResponseReader thread.
+	 * 
+	 * @param message the {@link Message}
+	 * @throws IOException
+	 */
+	private void handleResponse(Message message) throws IOException {
+		OOPBuildServiceSubmission submission;
+		synchronized (lock) {
+			submission = inFlight.get(message.getCorrelationId());
+		}
+		if (submission == null) {
+			throw new IOException("Builder sent " + message.getType() + " message for unknown submission " + message.getCorrelationId());
+		}
 		
-		submission.setSubmissionResult(result);
-		submission.setReady();
+		switch (message.getType()) {
+		case HAVE_PROBLEM:
+			// Client sends back a boolean indicating whether or not it
+			// has this problem already: if not, send it (and its test cases).
+			if (!BinaryConversion.decodeBoolean(message.getPayload())) {
+				channel.send(MessageType.PROBLEM_AND_TEST_CASES, message.getCorrelationId(),
+						BinaryConversion.encodeProblemAndTestCases(submission.getProblem(), submission.getTestCaseList()));
+				channel.flush();
+			}
+			break;
+			
+		case SUBMISSION_RESULT:
+			SubmissionResult result = BinaryConversion.decodeSubmissionResult(message.getPayload());
+			
+//			logger.info("Received submission results");
+//			for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
+//				logger.info("key={}, value={}", annotation.getKey(), annotation.getValue());
+//			}
+			
+			long sendTime;
+			synchronized (lock) {
+				inFlight.remove(message.getCorrelationId());
+				sendTime = sendTimes.remove(message.getCorrelationId());
+				lock.notifyAll();
+			}
+			workerTaskSet.onSubmissionTested(submission, result, System.currentTimeMillis() - sendTime);
+			submission.setSubmissionResult(result);
+			submission.setReady();
+			break;
+			
+		default:
+			throw new IOException("Unexpected " + message.getType() + " message from Builder");
+		}
 	}
-}
\ No newline at end of file
+}
@@ -22,8 +22,8 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 
+import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,14 +53,23 @@ public class WorkerTaskSet {
 
 	private Object lock;
 	private List<WorkerThreadAndTaskPair> workerThreadAndTaskPairList;
+	private AdmissionController admissionController;
+	private SubmissionResultCache resultCache;
 	
 	/**
 	 * Constructor.
+	 * 
+	 * @param admissionController the {@link AdmissionController} to which
+	 *                            service times should be reported
+	 * @param resultCache         the {@link SubmissionResultCache} to which
+	 *                            results should be added (null if results
+	 *                            are not cached)
 	 */
-	public WorkerTaskSet() {
+	public WorkerTaskSet(AdmissionController admissionController, SubmissionResultCache resultCache) {
 		lock = new Object();
 		this.workerThreadAndTaskPairList = new ArrayList<WorkerThreadAndTaskPair>();
-
+		this.admissionController = admissionController;
+		this.resultCache = resultCache;
 	}
 	
 	/**
@@ -74,6 +83,22 @@ public class WorkerTaskSet {
 		}
 	}
 
+	/**
+	 * Get the total number of submissions that the connected
+	 * Builders can test at once.
+	 * 
+	 * @return total capacity of the connected Builders
+	 */
+	public int getTotalCapacity() {
+		synchronized (lock) {
+			int total = 0;
+			for (WorkerThreadAndTaskPair pair : workerThreadAndTaskPairList) {
+				total += pair.task.getCapacity();
+			}
+			return total;
+		}
+	}
+
 	/**
 	 * Create a {@link WorkerTask} to communicate with a remote
 	 * Builder thread.
@@ -82,7 +107,7 @@ public class WorkerTaskSet {
 	 * @param submissionQueue  queue of submissions requiring compilation and testing
 	 * @throws IOException
 	 */
-	public void createWorker(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue) throws IOException {
+	public void createWorker(Socket clientSocket, ISubmissionQueue submissionQueue) throws IOException {
 		WorkerTask workerTask = new WorkerTask(clientSocket, submissionQueue, this);
 		Thread workerThread = new Thread(workerTask);
 		WorkerThreadAndTaskPair pair = new WorkerThreadAndTaskPair(workerThread, workerTask);
@@ -122,6 +147,22 @@ public class WorkerTaskSet {
 		}
 	}
 
+	/**
+	 * Called by a {@link WorkerTask} when a submission has been tested.
+	 * 
+	 * @param submission    the submission
+	 * @param result        the {@link SubmissionResult} received from the Builder
+	 * @param serviceTimeMs time from sending the submission to receiving
+	 *                      its result, in milliseconds
+	 */
+	public void onSubmissionTested(OOPBuildServiceSubmission submission, SubmissionResult result, long serviceTimeMs) {
+		admissionController.recordServiceTime(serviceTimeMs);
+		if (resultCache != null) {
+			resultCache.put(SubmissionResultCache.computeKey(submission.getProblemHash(), submission.getProgramText()),
+					submission.getProblem().getProblemId(), result);
+		}
+	}
+
 	/**
 	 * Called by a {@link WorkerTask} when the task exits.
 	 * 
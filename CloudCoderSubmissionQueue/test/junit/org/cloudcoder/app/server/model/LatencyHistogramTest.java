@@ -0,0 +1,72 @@
+package org.cloudcoder.app.server.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	private static final long MINUTE = 60L * 1000L;
+
+	private static void assertWithin(long expected, long actual) {
+		// Bucket boundaries are 2^(1/4) apart
+		assertTrue("expected about " + expected + ", was " + actual,
+				actual >= expected && actual <= Math.round(expected * 1.19) + 1);
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram(5 * MINUTE, 5);
+		long now = 10 * MINUTE;
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(now, i);
+		}
+		LatencyHistogram.Summary summary = histogram.getSummary(now);
+		assertEquals(1000L, summary.getCount());
+		assertEquals(1000L, summary.getMax());
+		assertWithin(500L, summary.getPercentile(0.5));
+		assertWithin(900L, summary.getPercentile(0.9));
+		assertWithin(990L, summary.getPercentile(0.99));
+		assertEquals(1000L, summary.getPercentile(1.0));
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram.Summary summary = new LatencyHistogram(5 * MINUTE, 5).getSummary(0L);
+		assertEquals(0L, summary.getCount());
+		assertEquals(0L, summary.getMax());
+		assertEquals(0L, summary.getPercentile(0.5));
+	}
+
+	@Test
+	public void testOldSamplesLeaveWindow() {
+		LatencyHistogram histogram = new LatencyHistogram(5 * MINUTE, 5);
+		long start = 100 * MINUTE;
+		histogram.record(start, 60000L);
+		for (int minute = 1; minute < 5; minute++) {
+			histogram.record(start + minute * MINUTE, 10L);
+		}
+		assertEquals(60000L, histogram.getSummary(start + 4 * MINUTE).getMax());
+		assertEquals(5L, histogram.getSummary(start + 4 * MINUTE).getCount());
+
+		// A minute later, the slow sample is more than 5 minutes old
+		histogram.record(start + 5 * MINUTE, 10L);
+		LatencyHistogram.Summary summary = histogram.getSummary(start + 5 * MINUTE);
+		assertEquals(5L, summary.getCount());
+		assertEquals(10L, summary.getMax());
+
+		// Much later, nothing is left
+		assertEquals(0L, histogram.getSummary(start + 60 * MINUTE).getCount());
+	}
+
+	@Test
+	public void testBucketsAreMonotonic() {
+		int prev = 0;
+		for (long ms = 0; ms < 100000L; ms++) {
+			int bucket = LatencyHistogram.getBucket(ms);
+			assertTrue(bucket >= prev);
+			assertTrue(ms <= LatencyHistogram.getBucketUpperBound(bucket));
+			prev = bucket;
+		}
+	}
+}
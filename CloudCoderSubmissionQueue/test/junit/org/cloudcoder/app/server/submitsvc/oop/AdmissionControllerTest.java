@@ -0,0 +1,58 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.cloudcoder.app.shared.model.ServerBusyException;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+	@Test
+	public void testAdmitsWhenIdle() throws Exception {
+		AdmissionController controller = new AdmissionController(10, 60);
+		controller.checkAdmission(0, 4);
+		controller.checkAdmission(9, 4);
+	}
+
+	@Test
+	public void testRejectsWhenQueueFull() throws Exception {
+		AdmissionController controller = new AdmissionController(10, 0);
+		controller.recordServiceTime(2000L);
+		try {
+			controller.checkAdmission(13, 2);
+			fail("Submission should have been rejected");
+		} catch (ServerBusyException e) {
+			// 4 submissions must drain at 2 at a time, 2 seconds each
+			assertEquals(4, e.getRetryAfterSeconds());
+		}
+	}
+
+	@Test
+	public void testRejectsWhenEstimatedWaitTooLong() throws Exception {
+		AdmissionController controller = new AdmissionController(0, 10);
+		controller.recordServiceTime(1000L);
+
+		// 19 waiting + this one, at 2 at a time: 10 seconds, acceptable
+		controller.checkAdmission(19, 2);
+
+		// 29 waiting + this one, at 2 at a time: 15 seconds, too long
+		try {
+			controller.checkAdmission(29, 2);
+			fail("Submission should have been rejected");
+		} catch (ServerBusyException e) {
+			assertEquals(5, e.getRetryAfterSeconds());
+		}
+	}
+
+	@Test
+	public void testServiceTimeIsMovingAverage() throws Exception {
+		AdmissionController controller = new AdmissionController(0, 0);
+		assertEquals(-1L, controller.getAverageServiceTimeMs());
+		controller.recordServiceTime(1000L);
+		assertEquals(1000L, controller.getAverageServiceTimeMs());
+		for (int i = 0; i < 100; i++) {
+			controller.recordServiceTime(3000L);
+		}
+		assertEquals(3000L, controller.getAverageServiceTimeMs());
+	}
+}
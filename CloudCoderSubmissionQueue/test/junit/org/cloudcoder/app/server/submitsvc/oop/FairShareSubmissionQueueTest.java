@@ -0,0 +1,162 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link FairShareSubmissionQueue}.  Each call to poll()
+ * is treated as one unit of Builder time, so the latency of a
+ * submission is the number of submissions dequeued while it waited.
+ */
+public class FairShareSubmissionQueueTest {
+	private static final int HEAVY_BACKLOG = 500;
+	private static final int LIGHT_INTERVAL = 10;
+
+	private static OOPBuildServiceSubmission create(int courseId, int userId, int numTestCases) {
+		Problem problem = new Problem();
+		problem.setCourseId(courseId);
+		List<TestCase> testCaseList = new ArrayList<TestCase>();
+		for (int i = 0; i < numTestCases; i++) {
+			testCaseList.add(new TestCase());
+		}
+		return new OOPBuildServiceSubmission(new Submission(problem, testCaseList, "user" + userId), userId);
+	}
+
+	private static OOPBuildServiceSubmission poll(ISubmissionQueue queue) throws InterruptedException {
+		return queue.poll(0L, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A heavy user floods the queue, while a light user in some course
+	 * submits every {@link #LIGHT_INTERVAL} ticks.
+	 *
+	 * @return the light user's maximum latency, in ticks
+	 */
+	private static int measureLightUserMaxLatency(ISubmissionQueue queue, int lightCourseId) throws InterruptedException {
+		for (int i = 0; i < HEAVY_BACKLOG; i++) {
+			queue.put(create(1, 1, 1));
+		}
+
+		Map<OOPBuildServiceSubmission, Integer> enqueueTime = new HashMap<OOPBuildServiceSubmission, Integer>();
+		int maxLatency = 0;
+		int numLightCompleted = 0;
+		for (int tick = 0; queue.size() > 0 || tick < HEAVY_BACKLOG; tick++) {
+			if (tick % LIGHT_INTERVAL == 0 && tick < HEAVY_BACKLOG) {
+				OOPBuildServiceSubmission light = create(lightCourseId, 2, 1);
+				enqueueTime.put(light, tick);
+				queue.put(light);
+			}
+			OOPBuildServiceSubmission next = poll(queue);
+			if (next != null && next.getUserId() == 2) {
+				maxLatency = Math.max(maxLatency, tick - enqueueTime.get(next));
+				numLightCompleted++;
+			}
+		}
+		assertEquals(HEAVY_BACKLOG / LIGHT_INTERVAL, numLightCompleted);
+		return maxLatency;
+	}
+
+	@Test
+	public void testLightUserLatencyBoundedInSameCourse() throws Exception {
+		int fairLatency = measureLightUserMaxLatency(new FairShareSubmissionQueue(1), 1);
+		int fifoLatency = measureLightUserMaxLatency(new FifoSubmissionQueue(), 1);
+
+		// With fair sharing, the light user waits for at most one of the
+		// heavy user's submissions.  With FIFO, the light user waits behind
+		// the heavy user's entire backlog.
+		assertTrue("fair-share latency was " + fairLatency, fairLatency <= 1);
+		assertTrue("FIFO latency was " + fifoLatency, fifoLatency >= HEAVY_BACKLOG - LIGHT_INTERVAL);
+	}
+
+	@Test
+	public void testLightUserLatencyBoundedInOtherCourse() throws Exception {
+		int fairLatency = measureLightUserMaxLatency(new FairShareSubmissionQueue(), 2);
+		assertTrue("fair-share latency was " + fairLatency, fairLatency <= FairShareSubmissionQueue.DEFAULT_QUANTUM);
+	}
+
+	@Test
+	public void testCoursesShareEquallyRegardlessOfNumberOfUsers() throws Exception {
+		FairShareSubmissionQueue queue = new FairShareSubmissionQueue(1);
+
+		// Course 1 has 20 busy users, course 2 has 1
+		for (int round = 0; round < 10; round++) {
+			for (int user = 100; user < 120; user++) {
+				queue.put(create(1, user, 1));
+			}
+			queue.put(create(2, 7, 1));
+		}
+
+		// Course 2 should get every other turn while both courses are busy
+		int course2Count = 0;
+		for (int i = 0; i < 20; i++) {
+			if (poll(queue).getCourseId() == 2) {
+				course2Count++;
+			}
+		}
+		assertEquals(10, course2Count);
+	}
+
+	@Test
+	public void testCostIsProportionalToTestCases() throws Exception {
+		FairShareSubmissionQueue queue = new FairShareSubmissionQueue(4);
+		for (int i = 0; i < 100; i++) {
+			queue.put(create(1, 1, 4));
+			queue.put(create(1, 2, 1));
+		}
+
+		// User 2's submissions are 1/4 the cost of user 1's,
+		// so user 2 should get 4 times as many turns
+		int[] counts = new int[3];
+		for (int i = 0; i < 50; i++) {
+			counts[poll(queue).getUserId()]++;
+		}
+		assertEquals(10, counts[1]);
+		assertEquals(40, counts[2]);
+	}
+
+	@Test
+	public void testEachUserIsFifo() throws Exception {
+		FairShareSubmissionQueue queue = new FairShareSubmissionQueue();
+		List<OOPBuildServiceSubmission> expected1 = new ArrayList<OOPBuildServiceSubmission>();
+		List<OOPBuildServiceSubmission> expected2 = new ArrayList<OOPBuildServiceSubmission>();
+		for (int i = 0; i < 20; i++) {
+			OOPBuildServiceSubmission s1 = create(1, 1, 1 + i % 3);
+			OOPBuildServiceSubmission s2 = create(3, 2, 2);
+			expected1.add(s1);
+			expected2.add(s2);
+			queue.put(s1);
+			queue.put(s2);
+		}
+		assertEquals(40, queue.size());
+
+		List<OOPBuildServiceSubmission> actual1 = new ArrayList<OOPBuildServiceSubmission>();
+		List<OOPBuildServiceSubmission> actual2 = new ArrayList<OOPBuildServiceSubmission>();
+		OOPBuildServiceSubmission next;
+		while ((next = poll(queue)) != null) {
+			(next.getUserId() == 1 ? actual1 : actual2).add(next);
+		}
+		assertEquals(expected1, actual1);
+		assertEquals(expected2, actual2);
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testPollTimesOut() throws Exception {
+		FairShareSubmissionQueue queue = new FairShareSubmissionQueue();
+		long start = System.currentTimeMillis();
+		assertNull(queue.poll(50L, TimeUnit.MILLISECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 40L);
+	}
+}
@@ -0,0 +1,147 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.junit.Test;
+
+public class OOPBuildServiceSubmissionTest {
+	private static class RecordingListener implements ISubmissionCompletionListener {
+		final List<IFutureSubmissionResult> completed = new ArrayList<IFutureSubmissionResult>();
+
+		@Override
+		public void onSubmissionComplete(IFutureSubmissionResult future) {
+			completed.add(future);
+		}
+	}
+
+	private static OOPBuildServiceSubmission create() {
+		return new OOPBuildServiceSubmission(new Submission(new Problem(), new ArrayList<TestCase>(), ""), 1);
+	}
+
+	@Test
+	public void testListenerNotifiedOnceWhenResultArrives() throws Exception {
+		OOPBuildServiceSubmission submission = create();
+		RecordingListener listener = new RecordingListener();
+		submission.addCompletionListener(listener);
+		assertEquals(0, listener.completed.size());
+
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+		submission.setSubmissionResult(result);
+		submission.setReady();
+		submission.setReady();
+		assertEquals(1, listener.completed.size());
+		assertSame(result, listener.completed.get(0).waitFor(0L));
+	}
+
+	@Test
+	public void testListenerNotifiedOnError() throws Exception {
+		OOPBuildServiceSubmission submission = create();
+		RecordingListener listener = new RecordingListener();
+		submission.addCompletionListener(listener);
+		submission.setError(new IOException("connection lost"));
+		assertEquals(1, listener.completed.size());
+		try {
+			listener.completed.get(0).waitFor(0L);
+			fail("Expected the error to be reported");
+		} catch (SubmissionException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testErrorWakesWaitingThread() throws Exception {
+		final OOPBuildServiceSubmission submission = create();
+		final AtomicReference<Exception> thrown = new AtomicReference<Exception>();
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					submission.waitFor(60000L);
+				} catch (Exception e) {
+					thrown.set(e);
+				}
+			}
+		};
+		waiter.start();
+		Thread.sleep(100L);
+
+		long start = System.currentTimeMillis();
+		submission.setError(new IOException("server busy"));
+		waiter.join(10000L);
+		assertFalse(waiter.isAlive());
+		assertTrue(System.currentTimeMillis() - start < 10000L);
+		assertTrue(thrown.get() instanceof SubmissionException);
+	}
+
+	@Test
+	public void testErrorReportedAfterSetReady() throws Exception {
+		OOPBuildServiceSubmission submission = create();
+		submission.setError(new IOException("connection lost"));
+		submission.setReady();
+		try {
+			submission.waitFor(0L);
+			fail("Expected the error to be reported");
+		} catch (SubmissionException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testListenerAddedAfterCompletionNotifiedImmediately() throws Exception {
+		OOPBuildServiceSubmission submission = create();
+		submission.setSubmissionResult(new SubmissionResult(new CompilationResult(CompilationOutcome.FAILURE)));
+		submission.setReady();
+
+		RecordingListener listener = new RecordingListener();
+		submission.addCompletionListener(listener);
+		assertEquals(1, listener.completed.size());
+	}
+
+	@Test
+	public void testFailingListenerDoesNotAffectOthers() throws Exception {
+		OOPBuildServiceSubmission submission = create();
+		submission.addCompletionListener(new ISubmissionCompletionListener() {
+			@Override
+			public void onSubmissionComplete(IFutureSubmissionResult future) {
+				throw new IllegalStateException("oops");
+			}
+		});
+		RecordingListener listener = new RecordingListener();
+		submission.addCompletionListener(listener);
+		submission.setSubmissionResult(new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS)));
+		submission.setReady();
+		assertEquals(1, listener.completed.size());
+	}
+
+	@Test
+	public void testCoalescedSubmissionNotifiesWithItself() throws Exception {
+		OOPBuildServiceSubmission submission = create();
+		CoalescedSubmission coalesced = new CoalescedSubmission(submission);
+		RecordingListener listener = new RecordingListener();
+		coalesced.addCompletionListener(listener);
+		submission.setSubmissionResult(new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS)));
+		submission.setReady();
+		assertEquals(1, listener.completed.size());
+		assertSame(coalesced, listener.completed.get(0));
+		assertNotNull(listener.completed.get(0).waitFor(0L));
+	}
+}
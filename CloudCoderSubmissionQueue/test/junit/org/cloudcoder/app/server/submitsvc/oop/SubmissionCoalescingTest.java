@@ -0,0 +1,124 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ServerBusyException;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.junit.Test;
+
+/**
+ * Test that identical submissions made while one is in flight
+ * result in a single submission being queued for a Builder.
+ */
+public class SubmissionCoalescingTest {
+	private static final int NUM_CALLERS = 16;
+	private static final String KEY = SubmissionResultCache.computeKey("problem", "print 'hello'");
+
+	private static OOPBuildServiceSubmission create() {
+		return new OOPBuildServiceSubmission(new Submission(new Problem(), new ArrayList<TestCase>(), "print 'hello'"), 1);
+	}
+
+	private static ServerTask createServerTask(ISubmissionQueue queue, int maxQueueDepth) {
+		return new ServerTask(queue, new AdmissionController(maxQueueDepth, 0), null, null, false, "localhost");
+	}
+
+	@Test
+	public void testConcurrentIdenticalSubmissionsAreCoalesced() throws Exception {
+		final OutOfProcessSubmitService service = new OutOfProcessSubmitService();
+		final FifoSubmissionQueue queue = new FifoSubmissionQueue();
+		final ServerTask serverTask = createServerTask(queue, 0);
+
+		// Many callers submit the same program at the same time
+		final CyclicBarrier barrier = new CyclicBarrier(NUM_CALLERS);
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_CALLERS);
+		List<Future<IFutureSubmissionResult>> submitted = new ArrayList<Future<IFutureSubmissionResult>>();
+		for (int i = 0; i < NUM_CALLERS; i++) {
+			submitted.add(executor.submit(new Callable<IFutureSubmissionResult>() {
+				@Override
+				public IFutureSubmissionResult call() throws Exception {
+					barrier.await();
+					return service.submit(KEY, create(), serverTask);
+				}
+			}));
+		}
+		List<IFutureSubmissionResult> futures = new ArrayList<IFutureSubmissionResult>();
+		for (Future<IFutureSubmissionResult> f : submitted) {
+			futures.add(f.get());
+		}
+		executor.shutdown();
+
+		// Only one submission is sent to the Builder
+		assertEquals(1, queue.size());
+		assertEquals(1, service.getNumInFlight());
+		OOPBuildServiceSubmission tested = queue.poll(0L, TimeUnit.MILLISECONDS);
+		for (IFutureSubmissionResult future : futures) {
+			assertNull(future.waitFor(0L));
+		}
+
+		// The Builder's result is delivered to every caller, each with its own copy
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.FAILURE));
+		tested.setSubmissionResult(result);
+		tested.setReady();
+		List<SubmissionResult> results = new ArrayList<SubmissionResult>();
+		for (IFutureSubmissionResult future : futures) {
+			SubmissionResult r = future.waitFor(1000L);
+			assertNotNull(r);
+			assertEquals(CompilationOutcome.FAILURE, r.getCompilationResult().getOutcome());
+			for (SubmissionResult other : results) {
+				assertNotSame(other, r);
+			}
+			results.add(r);
+		}
+
+		// Once complete, the submission is no longer in flight, so an
+		// identical submission is queued again
+		assertEquals(0, service.getNumInFlight());
+		OOPBuildServiceSubmission again = create();
+		assertSame(again, service.submit(KEY, again, serverTask));
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void testRejectedSubmissionIsNotInFlight() throws Exception {
+		OutOfProcessSubmitService service = new OutOfProcessSubmitService();
+		FifoSubmissionQueue queue = new FifoSubmissionQueue();
+		ServerTask serverTask = createServerTask(queue, 1);
+		queue.put(create());
+
+		OOPBuildServiceSubmission rejected = create();
+		try {
+			service.submit(KEY, rejected, serverTask);
+			fail("Submission should have been rejected");
+		} catch (ServerBusyException e) {
+			// expected
+		}
+		assertEquals(0, service.getNumInFlight());
+		try {
+			rejected.waitFor(0L);
+			fail("Rejected submission should have failed");
+		} catch (SubmissionException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.junit.Test;
+
+public class SubmissionResultCacheTest {
+	private static SubmissionResult create(TestOutcome outcome, String stdout) {
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+		result.setTestResults(new TestResult[]{ new TestResult(outcome, "in", "out", "out", stdout, "") });
+		return result;
+	}
+
+	@Test
+	public void testKeyDependsOnProblemAndProgramText() {
+		String key = SubmissionResultCache.computeKey("abc", "print 1");
+		assertEquals(key, SubmissionResultCache.computeKey("abc", "print 1"));
+		assertFalse(key.equals(SubmissionResultCache.computeKey("abd", "print 1")));
+		assertFalse(key.equals(SubmissionResultCache.computeKey("abc", "print 2")));
+	}
+
+	@Test
+	public void testHitReturnsCopy() {
+		SubmissionResultCache cache = new SubmissionResultCache(SubmissionResultCache.DEFAULT_MAX_BYTES);
+		SubmissionResult result = create(TestOutcome.PASSED, "hello");
+		cache.put("k", 1, result);
+
+		SubmissionResult hit1 = cache.get("k");
+		SubmissionResult hit2 = cache.get("k");
+		assertNotNull(hit1);
+		assertNotSame(hit1, hit2);
+		assertEquals(TestOutcome.PASSED, hit1.getTestResults()[0].getOutcome());
+		assertEquals("hello", hit1.getTestResults()[0].getStdout());
+		assertNull(cache.get("other"));
+	}
+
+	@Test
+	public void testNondeterministicResultsAreNotCached() {
+		SubmissionResultCache cache = new SubmissionResultCache(SubmissionResultCache.DEFAULT_MAX_BYTES);
+		cache.put("timeout", 1, create(TestOutcome.FAILED_FROM_TIMEOUT, ""));
+		cache.put("internal", 1, create(TestOutcome.INTERNAL_ERROR, ""));
+		cache.put("builder", 1, new SubmissionResult(new CompilationResult(CompilationOutcome.BUILDER_ERROR)));
+		assertEquals(0, cache.size());
+
+		// A compilation failure is deterministic
+		cache.put("failure", 1, new SubmissionResult(new CompilationResult(CompilationOutcome.FAILURE)));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testBoundedInBytes() {
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			big.append('x');
+		}
+		SubmissionResultCache cache = new SubmissionResultCache(4000L);
+		for (int i = 0; i < 10; i++) {
+			cache.put("k" + i, 1, create(TestOutcome.PASSED, big.toString()));
+			assertTrue(cache.getTotalBytes() <= 4000L);
+		}
+
+		// Only the most recently added results remain
+		assertTrue(cache.size() < 10);
+		assertNotNull(cache.get("k9"));
+		assertNull(cache.get("k0"));
+	}
+
+	@Test
+	public void testInvalidateProblem() {
+		SubmissionResultCache cache = new SubmissionResultCache(SubmissionResultCache.DEFAULT_MAX_BYTES);
+		cache.put("a", 1, create(TestOutcome.PASSED, ""));
+		cache.put("b", 2, create(TestOutcome.PASSED, ""));
+		cache.put("c", 1, create(TestOutcome.FAILED_ASSERTION, ""));
+
+		cache.invalidateProblem(1);
+		assertNull(cache.get("a"));
+		assertNotNull(cache.get("b"));
+		assertNull(cache.get("c"));
+		assertEquals(1, cache.size());
+	}
+}
@@ -0,0 +1,199 @@
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmissionCompletionListener;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.wire.BinaryConversion;
+import org.cloudcoder.app.shared.model.wire.Message;
+import org.cloudcoder.app.shared.model.wire.MessageChannel;
+import org.cloudcoder.app.shared.model.wire.MessageType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkerTaskTest {
+	/**
+	 * Webapp end of a connection whose writes can be made to fail,
+	 * simulating a connection that breaks while a submission is being sent.
+	 */
+	private static class FailingSocket extends Socket {
+		private final Socket socket;
+		private volatile boolean failWrites;
+		
+		public FailingSocket(Socket socket) {
+			this.socket = socket;
+		}
+		
+		public void setFailWrites(boolean failWrites) {
+			this.failWrites = failWrites;
+		}
+		
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return socket.getInputStream();
+		}
+		
+		@Override
+		public OutputStream getOutputStream() throws IOException {
+			return new FilterOutputStream(socket.getOutputStream()) {
+				@Override
+				public void write(int b) throws IOException {
+					checkFail();
+					out.write(b);
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					checkFail();
+					out.write(b, off, len);
+				}
+				
+				@Override
+				public void flush() throws IOException {
+					checkFail();
+					out.flush();
+				}
+			};
+		}
+		
+		private void checkFail() throws IOException {
+			if (failWrites) {
+				throw new IOException("Simulated send failure");
+			}
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			socket.close();
+		}
+	}
+	
+	private ServerSocket serverSocket;
+	private WorkerTaskSet workerTaskSet;
+	
+	@Before
+	public void setUp() throws IOException {
+		serverSocket = new ServerSocket(0);
+		workerTaskSet = new WorkerTaskSet(new AdmissionController(0, 0), null);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		workerTaskSet.shutdownAll();
+		serverSocket.close();
+	}
+	
+	private static Problem createProblem() {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.C_PROGRAM);
+		problem.setTestname("test");
+		problem.setBriefDescription("brief");
+		problem.setDescription("description");
+		problem.setSkeleton("");
+		return problem;
+	}
+	
+	private static OOPBuildServiceSubmission create() {
+		Problem problem = createProblem();
+		return new OOPBuildServiceSubmission(new Submission(problem, new ArrayList<TestCase>(), "int main() { return 0; }"), 1);
+	}
+	
+	/**
+	 * Connect to the test server socket, returning the Builder end
+	 * of the connection (with its protocol headers exchanged) and
+	 * the webapp end of the connection.
+	 */
+	private MessageChannel connectBuilder(Socket[] webappSocket) throws IOException {
+		Socket builderSocket = new Socket("localhost", serverSocket.getLocalPort());
+		webappSocket[0] = serverSocket.accept();
+		return new MessageChannel(builderSocket.getInputStream(), builderSocket.getOutputStream());
+	}
+	
+	private static void handshake(MessageChannel builder) throws IOException {
+		builder.exchangeHeaders();
+		builder.send(MessageType.CAPACITY, BinaryConversion.encodeInt(1));
+		builder.flush();
+	}
+	
+	@Test(timeout=30000)
+	public void testSubmissionIsRetriedAfterSendFailure() throws Exception {
+		FifoSubmissionQueue queue = new FifoSubmissionQueue();
+		OOPBuildServiceSubmission submission = create();
+		final AtomicInteger numCompletions = new AtomicInteger();
+		final CountDownLatch completed = new CountDownLatch(1);
+		submission.addCompletionListener(new ISubmissionCompletionListener() {
+			@Override
+			public void onSubmissionComplete(IFutureSubmissionResult future) {
+				numCompletions.incrementAndGet();
+				completed.countDown();
+			}
+		});
+		
+		// First connection: sending the submission fails
+		Socket[] webappSocket = new Socket[1];
+		MessageChannel builder1 = connectBuilder(webappSocket);
+		FailingSocket failing = new FailingSocket(webappSocket[0]);
+		workerTaskSet.createWorker(failing, queue);
+		handshake(builder1);
+		while (workerTaskSet.getTotalCapacity() == 0) {
+			Thread.sleep(10L);
+		}
+		failing.setFailWrites(true);
+		queue.put(submission);
+		
+		// The worker gives up on the connection and puts the
+		// submission back in the queue, without completing it
+		while (workerTaskSet.getNumWorkerTasks() > 0) {
+			Thread.sleep(10L);
+		}
+		builder1.close();
+		assertEquals(1, queue.size());
+		assertEquals(0, numCompletions.get());
+		assertEquals(null, submission.waitFor(0L));
+		
+		// Second connection: the submission is retried and its result delivered
+		MessageChannel builder2 = connectBuilder(webappSocket);
+		workerTaskSet.createWorker(webappSocket[0], queue);
+		handshake(builder2);
+		Message problemHash = builder2.receive();
+		assertEquals(MessageType.PROBLEM_HASH, problemHash.getType());
+		int correlationId = problemHash.getCorrelationId();
+		builder2.send(MessageType.HAVE_PROBLEM, correlationId, BinaryConversion.encodeBoolean(true));
+		builder2.flush();
+		assertEquals(MessageType.PROGRAM_TEXT, builder2.receive().getType());
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+		builder2.send(MessageType.SUBMISSION_RESULT, correlationId, BinaryConversion.encodeSubmissionResult(result));
+		builder2.flush();
+		
+		SubmissionResult received = submission.waitFor(10000L);
+		assertTrue(received != null);
+		assertSame(CompilationOutcome.SUCCESS, received.getCompilationResult().getOutcome());
+		
+		// Completion listeners run after waiting threads are woken
+		assertTrue(completed.await(10L, TimeUnit.SECONDS));
+		assertEquals(1, numCompletions.get());
+		assertEquals(2, submission.getNumAttempts());
+		builder2.close();
+	}
+}